@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.common;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the last message received on every topic.
+ *
+ * Reads are a plain ConcurrentHashMap lookup. Each read stamps the entry with
+ * the current value of a logical clock that only writes advance, so readers
+ * never contend with each other. When the number of topics or the bytes held
+ * go over their limit, a single thread evicts the least recently used entries
+ * until the cache is back below 90% of both limits.
+ */
+public class LastValueCache {
+
+    // Rough per-entry overhead of the map node, the value and the topic String
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    public static class Value {
+        private final String topic;
+        private final byte[] payload;
+        private final long timestamp;
+        private volatile long lastAccess;
+
+        private Value(String topic, byte[] payload, long timestamp, long lastAccess) {
+            this.topic = topic;
+            this.payload = payload;
+            this.timestamp = timestamp;
+            this.lastAccess = lastAccess;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        private long size() {
+            return ENTRY_OVERHEAD_BYTES + 2L * topic.length() + payload.length;
+        }
+    }
+
+    private static class Candidate {
+        private final Value value;
+        private final long lastAccess;
+
+        private Candidate(Value value) {
+            this.value = value;
+            this.lastAccess = value.lastAccess;
+        }
+    }
+
+    private final int maxTopics;
+    private final long maxBytes;
+
+    private final ConcurrentHashMap<String, Value> values = new ConcurrentHashMap<>();
+    private final AtomicLong numBytes = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong numEvicted = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    public LastValueCache(int maxTopics, long maxBytes) {
+        this.maxTopics = Math.max(1, maxTopics);
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    public Value get(String topic) {
+        Value value = values.get(topic);
+        if (value != null) {
+            value.lastAccess = clock.get();
+        }
+        return value;
+    }
+
+    public void put(String topic, byte[] payload, long timestamp) {
+        Value value = new Value(topic, payload, timestamp, clock.incrementAndGet());
+        Value replaced = values.put(topic, value);
+        numBytes.addAndGet(replaced != null ? value.size() - replaced.size() : value.size());
+
+        if (values.size() > maxTopics || numBytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    private void evict() {
+        // Whoever holds the lock is already evicting for everyone
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int targetTopics = (int) (maxTopics * 0.9);
+            long targetBytes = (long) (maxBytes * 0.9);
+            if (values.size() <= targetTopics && numBytes.get() <= targetBytes) {
+                return;
+            }
+
+            // Sort on a snapshot of the access times, readers keep updating them
+            List<Candidate> candidates = new ArrayList<>(values.size());
+            for (Value value : values.values()) {
+                candidates.add(new Candidate(value));
+            }
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+            for (Candidate candidate : candidates) {
+                if (values.size() <= targetTopics && numBytes.get() <= targetBytes) {
+                    break;
+                }
+                Value value = candidate.value;
+                // Leave entries that were replaced meanwhile, the newer value is not a candidate
+                if (values.remove(value.topic, value)) {
+                    numBytes.addAndGet(-value.size());
+                    numEvicted.incrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void clear() {
+        for (Value value : values.values()) {
+            if (values.remove(value.topic, value)) {
+                numBytes.addAndGet(-value.size());
+            }
+        }
+    }
+
+    public int getNumTopics() {
+        return values.size();
+    }
+
+    public long getNumBytes() {
+        return numBytes.get();
+    }
+
+    public long getNumEvicted() {
+        return numEvicted.get();
+    }
+}
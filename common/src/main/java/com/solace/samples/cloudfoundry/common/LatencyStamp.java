@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.common;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Stamps outgoing messages with the id of this instance and the time they were
+ * sent, and turns the stamp of a received message into an end-to-end latency.
+ *
+ * Every message carries two send times: System.nanoTime(), only meaningful to
+ * the instance that sent it, and the wall clock time in microseconds. The
+ * latency of a message that comes back to its sender uses the former, the
+ * latency of a message from another instance the latter.
+ *
+ * Protocols with message properties carry the stamp in the properties named
+ * below. Where there are none, it is appended to the payload as a trailer of
+ * TRAILER_BYTES: sender id (16), send nanos (8), send time micros (8), magic (4).
+ */
+public class LatencyStamp {
+
+    public static final String SENDER_ID_PROPERTY = "sampleSenderId";
+    public static final String SEND_NANOS_PROPERTY = "sampleSendNanos";
+    public static final String SEND_TIME_MICROS_PROPERTY = "sampleSendTimeMicros";
+
+    public static final int TRAILER_BYTES = 36;
+    // "SLT1", tells a stamped payload from one that happens to be long enough
+    private static final int TRAILER_MAGIC = 0x534c5431;
+
+    private final UUID senderId = UUID.randomUUID();
+    private final String senderIdString = senderId.toString();
+    private final MessageStats messageStats;
+
+    public LatencyStamp(MessageStats messageStats) {
+        this.messageStats = messageStats;
+    }
+
+    public String getSenderId() {
+        return senderIdString;
+    }
+
+    public static long currentTimeMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000 + now.getNano() / 1000;
+    }
+
+    // Records the latency of a message stamped through its properties
+    public void record(String sender, long sendNanos, long sendTimeMicros) {
+        record(senderIdString.equals(sender), sendNanos, sendTimeMicros);
+    }
+
+    public byte[] appendTrailer(byte[] payload) {
+        byte[] stamped = Arrays.copyOf(payload, payload.length + TRAILER_BYTES);
+        ByteBuffer trailer = ByteBuffer.wrap(stamped, payload.length, TRAILER_BYTES);
+        trailer.putLong(senderId.getMostSignificantBits());
+        trailer.putLong(senderId.getLeastSignificantBits());
+        trailer.putLong(System.nanoTime());
+        trailer.putLong(currentTimeMicros());
+        trailer.putInt(TRAILER_MAGIC);
+        return stamped;
+    }
+
+    // Records the latency of a message stamped with a trailer and returns the length of the
+    // payload without it, or the whole length when the payload carries no trailer.
+    public int recordTrailer(byte[] payload) {
+        int payloadLength = payload.length - TRAILER_BYTES;
+        if (payloadLength < 0 || ByteBuffer.wrap(payload).getInt(payload.length - 4) != TRAILER_MAGIC) {
+            return payload.length;
+        }
+        ByteBuffer trailer = ByteBuffer.wrap(payload, payloadLength, TRAILER_BYTES);
+        UUID sender = new UUID(trailer.getLong(), trailer.getLong());
+        long sendNanos = trailer.getLong();
+        long sendTimeMicros = trailer.getLong();
+        record(senderId.equals(sender), sendNanos, sendTimeMicros);
+        return payloadLength;
+    }
+
+    private void record(boolean loopback, long sendNanos, long sendTimeMicros) {
+        if (loopback) {
+            messageStats.recordEndToEndLatency(System.nanoTime() - sendNanos, true);
+        } else {
+            messageStats.recordEndToEndLatency((currentTimeMicros() - sendTimeMicros) * 1000, false);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.common;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.SDTException;
+import com.solacesystems.jcsmp.XMLMessage;
+
+/**
+ * An in-memory broker shared by the sessions it creates, so the controllers
+ * can run, be benchmarked and load tested without a Solace PubSub+ service.
+ * The LoopbackSessionFactory of each sample hands out its sessions.
+ *
+ * A message published on any of its sessions is delivered to every session
+ * with a started consumer and a matching subscription, once per session
+ * however many of its subscriptions match. Subscriptions follow the Solace
+ * wildcard rules: a level that ends with * matches any level starting with
+ * what precedes it, so * alone matches any single level, and > as the last
+ * level matches one or more levels.
+ *
+ * Messages are delivered after latencyMicros. Guaranteed messages are
+ * acknowledged after ackLatencyMicros, or rejected with a probability of
+ * ackFailureRate, in which case they are not delivered either. Adding or
+ * removing a subscription while waiting for its confirmation blocks the
+ * caller for ackLatencyMicros too.
+ */
+public class LoopbackBroker {
+
+    private final long latencyNanos;
+    private final long ackLatencyNanos;
+    private final double ackFailureRate;
+
+    private final Set<LoopbackSession> sessions = ConcurrentHashMap.newKeySet();
+
+    public LoopbackBroker(long latencyMicros, long ackLatencyMicros, double ackFailureRate) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, latencyMicros));
+        this.ackLatencyNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, ackLatencyMicros));
+        this.ackFailureRate = ackFailureRate;
+    }
+
+    // Loopback sessions never reconnect and have no I/O, they need no event handler nor Context
+    public JCSMPSession createSession() {
+        LoopbackSession session = new LoopbackSession(this);
+        sessions.add(session);
+        return session.getSession();
+    }
+
+    long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    long getAckLatencyNanos() {
+        return ackLatencyNanos;
+    }
+
+    boolean nextAckFails() {
+        return ackFailureRate > 0 && ThreadLocalRandom.current().nextDouble() < ackFailureRate;
+    }
+
+    void route(XMLMessage message, String topic) throws SDTException {
+        for (LoopbackSession session : sessions) {
+            if (session.isSubscribed(topic)) {
+                session.deliver(message, topic);
+            }
+        }
+    }
+
+    void remove(LoopbackSession session) {
+        sessions.remove(session);
+    }
+
+    public static boolean matches(String subscription, String topic) {
+        int subscriptionLevel = 0;
+        int topicLevel = 0;
+        while (true) {
+            int subscriptionEnd = levelEnd(subscription, subscriptionLevel);
+            int topicEnd = levelEnd(topic, topicLevel);
+            boolean lastSubscriptionLevel = subscriptionEnd == subscription.length();
+            boolean lastTopicLevel = topicEnd == topic.length();
+            int length = subscriptionEnd - subscriptionLevel;
+
+            if (lastSubscriptionLevel && length == 1 && subscription.charAt(subscriptionLevel) == '>') {
+                // The topic has at least this level left
+                return true;
+            }
+            if (length > 0 && subscription.charAt(subscriptionEnd - 1) == '*') {
+                if (topicEnd - topicLevel < length - 1
+                        || !topic.regionMatches(topicLevel, subscription, subscriptionLevel, length - 1)) {
+                    return false;
+                }
+            } else if (topicEnd - topicLevel != length
+                    || !topic.regionMatches(topicLevel, subscription, subscriptionLevel, length)) {
+                return false;
+            }
+
+            if (lastSubscriptionLevel || lastTopicLevel) {
+                return lastSubscriptionLevel && lastTopicLevel;
+            }
+            subscriptionLevel = subscriptionEnd + 1;
+            topicLevel = topicEnd + 1;
+        }
+    }
+
+    private static int levelEnd(String name, int levelStart) {
+        int end = name.indexOf('/', levelStart);
+        return end < 0 ? name.length() : end;
+    }
+}
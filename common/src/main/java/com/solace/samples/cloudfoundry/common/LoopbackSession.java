@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.common;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.solacesystems.jcsmp.BytesMessage;
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.Destination;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSendMultipleEntry;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPStreamingPublishCorrelatingEventHandler;
+import com.solacesystems.jcsmp.JCSMPStreamingPublishEventHandler;
+import com.solacesystems.jcsmp.SDTException;
+import com.solacesystems.jcsmp.SDTMap;
+import com.solacesystems.jcsmp.TextMessage;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessage;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+
+/**
+ * A session of a LoopbackBroker.
+ *
+ * The JCSMPSession, its producer and its consumer are dynamic proxies that
+ * implement the calls the controller makes and throw
+ * UnsupportedOperationException for the others, which keeps them working
+ * whatever the version of the JCSMP interfaces. Like the context thread of a
+ * real session, a single thread delivers the received messages and the
+ * publisher acknowledgements, in order.
+ *
+ * Only text and bytes messages are carried. Each session receives its own
+ * copy, taken when the message is sent since publishers reuse their messages.
+ */
+public class LoopbackSession {
+
+    private static final Log logger = LogFactory.getLog(LoopbackSession.class);
+
+    private static final AtomicInteger numSessions = new AtomicInteger();
+
+    private final LoopbackBroker broker;
+    private final JCSMPSession session;
+    private final ScheduledExecutorService dispatcher;
+
+    private final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+    private volatile XMLMessageListener listener;
+    private volatile boolean consumerStarted;
+    private volatile JCSMPStreamingPublishEventHandler publishEventHandler;
+    private volatile boolean closed;
+
+    LoopbackSession(LoopbackBroker broker) {
+        this.broker = broker;
+        String name = "loopback-session-" + numSessions.incrementAndGet();
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.session = proxy(JCSMPSession.class, this::invokeSession);
+    }
+
+    public JCSMPSession getSession() {
+        return session;
+    }
+
+    boolean isSubscribed(String topic) {
+        if (!consumerStarted || closed) {
+            return false;
+        }
+        if (subscriptions.contains(topic)) {
+            return true;
+        }
+        for (String subscription : subscriptions) {
+            if (LoopbackBroker.matches(getSharedTopic(subscription), topic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // What a shared subscription, #share/group/topic, subscribes to. There is only the one instance to share it
+    // with, it gets all the messages.
+    private static String getSharedTopic(String subscription) {
+        if (!subscription.startsWith("#share/")) {
+            return subscription;
+        }
+        int groupEnd = subscription.indexOf('/', "#share/".length());
+        return groupEnd < 0 ? subscription : subscription.substring(groupEnd + 1);
+    }
+
+    void deliver(XMLMessage message, String topic) throws SDTException {
+        BytesXMLMessage received = copy(message, JCSMPFactory.onlyInstance().createTopic(topic));
+        dispatch(broker.getLatencyNanos(), () -> {
+            XMLMessageListener messageListener = listener;
+            if (consumerStarted && messageListener != null) {
+                messageListener.onReceive(received);
+            }
+        });
+    }
+
+    private Object invokeSession(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+        case "connect":
+            return null;
+        case "isClosed":
+            return closed;
+        case "closeSession":
+            closed = true;
+            broker.remove(this);
+            dispatcher.shutdown();
+            return null;
+        case "getMessageConsumer":
+            if (args.length == 1 && args[0] instanceof XMLMessageListener) {
+                listener = (XMLMessageListener) args[0];
+                return proxy(XMLMessageConsumer.class, this::invokeConsumer);
+            }
+            break;
+        case "getMessageProducer":
+            if (args.length == 1 && args[0] instanceof JCSMPStreamingPublishEventHandler) {
+                publishEventHandler = (JCSMPStreamingPublishEventHandler) args[0];
+                return proxy(XMLMessageProducer.class, this::invokeProducer);
+            }
+            break;
+        case "addSubscription":
+            if (args[0] instanceof Topic) {
+                subscriptions.add(((Topic) args[0]).getName());
+                awaitConfirmation(args);
+                return null;
+            }
+            break;
+        case "removeSubscription":
+            if (args[0] instanceof Topic) {
+                subscriptions.remove(((Topic) args[0]).getName());
+                awaitConfirmation(args);
+                return null;
+            }
+            break;
+        }
+        return invokeObjectMethod(proxy, method, args);
+    }
+
+    // A subscription change the caller waits for is confirmed after a round trip, like an acknowledgement
+    private void awaitConfirmation(Object[] args) throws InterruptedException {
+        if (args.length > 1 && Boolean.TRUE.equals(args[1])) {
+            TimeUnit.NANOSECONDS.sleep(broker.getAckLatencyNanos());
+        }
+    }
+
+    private Object invokeConsumer(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+        case "start":
+            consumerStarted = true;
+            return null;
+        case "stop":
+        case "close":
+            consumerStarted = false;
+            return null;
+        case "isClosed":
+            return closed;
+        }
+        return invokeObjectMethod(proxy, method, args);
+    }
+
+    private Object invokeProducer(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+        case "send":
+            if (args.length == 2 && args[1] instanceof Destination) {
+                send((XMLMessage) args[0], (Destination) args[1]);
+                return null;
+            }
+            break;
+        case "sendMultiple":
+            JCSMPSendMultipleEntry[] entries = (JCSMPSendMultipleEntry[]) args[0];
+            int offset = (Integer) args[1];
+            int length = (Integer) args[2];
+            for (int i = offset; i < offset + length; i++) {
+                send(entries[i].getMessage(), entries[i].getDestination());
+            }
+            return length;
+        case "close":
+            return null;
+        case "isClosed":
+            return closed;
+        }
+        return invokeObjectMethod(proxy, method, args);
+    }
+
+    private void send(XMLMessage message, Destination destination) throws JCSMPException {
+        if (closed) {
+            throw new JCSMPException("The loopback session is closed");
+        }
+        if (!(destination instanceof Topic)) {
+            throw new JCSMPException("The loopback session only publishes to topics");
+        }
+        if (message.getDeliveryMode() != DeliveryMode.DIRECT) {
+            boolean rejected = broker.nextAckFails();
+            Object correlationKey = message.getCorrelationKey();
+            String messageId = message.getMessageId();
+            dispatch(broker.getAckLatencyNanos(), () -> acknowledge(correlationKey, messageId, rejected));
+            if (rejected) {
+                return;
+            }
+        }
+        broker.route(message, destination.getName());
+    }
+
+    private void acknowledge(Object correlationKey, String messageId, boolean rejected) {
+        JCSMPStreamingPublishEventHandler handler = publishEventHandler;
+        long timestamp = System.currentTimeMillis();
+        if (handler instanceof JCSMPStreamingPublishCorrelatingEventHandler) {
+            JCSMPStreamingPublishCorrelatingEventHandler correlatingHandler =
+                    (JCSMPStreamingPublishCorrelatingEventHandler) handler;
+            if (rejected) {
+                correlatingHandler.handleErrorEx(correlationKey,
+                        new JCSMPException("Rejected by the loopback session"), timestamp);
+            } else {
+                correlatingHandler.responseReceivedEx(correlationKey);
+            }
+        } else if (handler != null) {
+            if (rejected) {
+                handler.handleError(messageId, new JCSMPException("Rejected by the loopback session"), timestamp);
+            } else {
+                handler.responseReceived(messageId);
+            }
+        }
+    }
+
+    private void dispatch(long delayNanos, Runnable task) {
+        Runnable guardedTask = () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Loopback session callback failed.", e);
+            }
+        };
+        try {
+            dispatcher.schedule(guardedTask, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // The session was closed meanwhile
+        }
+    }
+
+    private static BytesXMLMessage copy(XMLMessage message, Topic topic) throws SDTException {
+        BytesXMLMessage copy;
+        Class<? extends BytesXMLMessage> type;
+        if (message instanceof TextMessage) {
+            TextMessage textMessage = JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
+            textMessage.setText(((TextMessage) message).getText());
+            copy = textMessage;
+            type = TextMessage.class;
+        } else if (message instanceof BytesMessage) {
+            BytesMessage bytesMessage = JCSMPFactory.onlyInstance().createMessage(BytesMessage.class);
+            bytesMessage.setData(((BytesMessage) message).getData());
+            copy = bytesMessage;
+            type = BytesMessage.class;
+        } else {
+            throw new IllegalArgumentException("The loopback session only carries text and bytes messages");
+        }
+        copy.setDeliveryMode(message.getDeliveryMode());
+        SDTMap properties = message.getProperties();
+        if (properties != null) {
+            SDTMap copiedProperties = JCSMPFactory.onlyInstance().createMap();
+            for (String key : properties.keySet()) {
+                copiedProperties.putObject(key, properties.get(key));
+            }
+            copy.setProperties(copiedProperties);
+        }
+
+        // Received messages carry the topic they were published to, the API has no setter for it
+        return proxy(type, (proxy, method, args) -> "getDestination".equals(method.getName())
+                ? topic : invoke(copy, method, args));
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(LoopbackSession.class.getClassLoader(), new Class<?>[] { type },
+                handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return proxy.getClass().getInterfaces()[0].getSimpleName() + "@loopback";
+            }
+        }
+        throw new UnsupportedOperationException(method.getName() + " is not supported by the loopback session");
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+
+/**
+ * Pushes every received message to the clients watching its topic, over
+ * server-sent events or a WebSocket.
+ *
+ * The receive path only appends the message to the bounded buffer of each
+ * matching client and never writes to a connection itself. Each client with
+ * something in its buffer is drained by one thread at a time, so a slow
+ * client only holds up its own messages. When a buffer is full its overflow
+ * policy either drops the oldest message, drops the new one, or disconnects
+ * the client.
+ */
+public class MessagePush {
+
+    private static final Log logger = LogFactory.getLog(MessagePush.class);
+
+    public enum OverflowPolicy {
+        DROP_OLDEST, DROP_NEWEST, DISCONNECT
+    }
+
+    // Writes to the connection of a client, never called by more than one thread at a time
+    public interface Sink {
+        void send(String messageJson) throws IOException;
+
+        void close();
+    }
+
+    public class Client {
+        private final String topicPrefix;
+        private final OverflowPolicy overflowPolicy;
+        private final Sink sink;
+
+        // Guarded by this
+        private final ArrayDeque<String> buffer = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closed;
+
+        private Client(String topicPrefix, OverflowPolicy overflowPolicy, Sink sink) {
+            this.topicPrefix = topicPrefix;
+            this.overflowPolicy = overflowPolicy;
+            this.sink = sink;
+        }
+
+        private void offer(String messageJson) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (buffer.size() >= bufferSize) {
+                    numDropped.increment();
+                    if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                        return;
+                    } else if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                        logger.info("Disconnecting a client that could not keep up with topic prefix: " + topicPrefix);
+                        close();
+                        return;
+                    }
+                    buffer.pollFirst();
+                }
+                buffer.addLast(messageJson);
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            executor.execute(this::drain);
+        }
+
+        private void drain() {
+            while (true) {
+                String messageJson;
+                synchronized (this) {
+                    if (closed) {
+                        break;
+                    }
+                    messageJson = buffer.pollFirst();
+                    if (messageJson == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    sink.send(messageJson);
+                    numPushed.increment();
+                } catch (IOException | RuntimeException e) {
+                    // The client went away
+                    close();
+                }
+            }
+            sink.close();
+        }
+
+        // The connection is closed by the thread draining the client, once it is done writing to it
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                buffer.clear();
+                if (draining) {
+                    clients.remove(this);
+                    return;
+                }
+                draining = true;
+            }
+            clients.remove(this);
+            executor.execute(this::drain);
+        }
+    }
+
+    private final int bufferSize;
+    private final OverflowPolicy defaultOverflowPolicy;
+    private final int maxClients;
+
+    // Read on every received message, written only when a client comes or goes
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+    private final LongAdder numPushed = new LongAdder();
+    private final LongAdder numDropped = new LongAdder();
+
+    private final AtomicInteger nextThreadId = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "message-push-" + nextThreadId.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MessagePush(int bufferSize, OverflowPolicy defaultOverflowPolicy, int maxClients) {
+        this.bufferSize = Math.max(1, bufferSize);
+        this.defaultOverflowPolicy = defaultOverflowPolicy;
+        this.maxClients = Math.max(1, maxClients);
+    }
+
+    // The policy named by a client, or the default one when it named none
+    public OverflowPolicy getOverflowPolicy(String name) {
+        if (name == null || name.isEmpty()) {
+            return defaultOverflowPolicy;
+        }
+        return OverflowPolicy.valueOf(name.toUpperCase());
+    }
+
+    // Returns null when there are too many clients already
+    public synchronized Client subscribe(String topicPrefix, OverflowPolicy overflowPolicy, Sink sink) {
+        if (clients.size() >= maxClients) {
+            return null;
+        }
+        Client client = new Client(topicPrefix != null ? topicPrefix : "", overflowPolicy, sink);
+        clients.add(client);
+        return client;
+    }
+
+    public void publish(long sequence, String topic, byte[] payload, long timestamp) {
+        // Only rendered when a client wants it, and then once for all of them
+        String messageJson = null;
+        for (Client client : clients) {
+            if (topic.startsWith(client.topicPrefix)) {
+                if (messageJson == null) {
+                    JSONObject json = new JSONObject();
+                    json.put("sequence", sequence);
+                    json.put("timestamp", timestamp);
+                    json.put("topic", topic);
+                    json.put("body", new String(payload, StandardCharsets.UTF_8));
+                    messageJson = json.toString();
+                }
+                client.offer(messageJson);
+            }
+        }
+    }
+
+    public int getNumClients() {
+        return clients.size();
+    }
+
+    public long getNumPushed() {
+        return numPushed.sum();
+    }
+
+    public long getNumDropped() {
+        return numDropped.sum();
+    }
+}
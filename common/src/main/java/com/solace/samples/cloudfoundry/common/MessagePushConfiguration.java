@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.common;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * Serves the WebSocket push of received messages. The samples import it, it is
+ * outside of the packages they scan.
+ */
+@Configuration
+@EnableWebSocket
+public class MessagePushConfiguration implements WebSocketConfigurer {
+
+    // Messages each client may have waiting before its overflow policy kicks in
+    @Value("${SOLACE_PUSH_BUFFER_SIZE:1000}")
+    private int bufferSize;
+
+    // One of DROP_OLDEST, DROP_NEWEST or DISCONNECT, clients may ask for another one
+    @Value("${SOLACE_PUSH_OVERFLOW_POLICY:DROP_OLDEST}")
+    private String overflowPolicy;
+
+    @Value("${SOLACE_PUSH_MAX_CLIENTS:100}")
+    private int maxClients;
+
+    // Origins of the web pages that may open the WebSocket, comma separated. None by default, which
+    // only lets in the pages the application serves itself.
+    @Value("${SOLACE_PUSH_ALLOWED_ORIGINS:}")
+    private String[] allowedOrigins;
+
+    @Bean
+    public MessagePush messagePush() {
+        return new MessagePush(bufferSize, MessagePush.OverflowPolicy.valueOf(overflowPolicy.toUpperCase()), maxClients);
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        // Not under /message/, GET /message/** of the controller would take it first
+        registry.addHandler(new MessagePushSocketHandler(messagePush()), "/messages/socket")
+                .setAllowedOrigins(allowedOrigins);
+    }
+}
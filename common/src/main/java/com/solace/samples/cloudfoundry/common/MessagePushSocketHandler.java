@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+/**
+ * Pushes received messages to WebSocket clients, each one as a text frame
+ * holding the same JSON as GET /messages. Clients pick what they watch with
+ * the topicPrefix and overflow query parameters of the URL they connect to,
+ * and never send anything.
+ */
+public class MessagePushSocketHandler extends TextWebSocketHandler {
+
+    private static final Log logger = LogFactory.getLog(MessagePushSocketHandler.class);
+
+    private static final String CLIENT_ATTRIBUTE = "messagePushClient";
+
+    private final MessagePush messagePush;
+
+    public MessagePushSocketHandler(MessagePush messagePush) {
+        this.messagePush = messagePush;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+        String topicPrefix = getParam(params, "topicPrefix");
+
+        MessagePush.OverflowPolicy overflowPolicy;
+        try {
+            overflowPolicy = messagePush.getOverflowPolicy(getParam(params, "overflow"));
+        } catch (IllegalArgumentException e) {
+            session.close(CloseStatus.BAD_DATA.withReason("overflow must be one of DROP_OLDEST, DROP_NEWEST or DISCONNECT"));
+            return;
+        }
+
+        MessagePush.Client client = messagePush.subscribe(topicPrefix, overflowPolicy, new MessagePush.Sink() {
+            @Override
+            public void send(String messageJson) throws IOException {
+                session.sendMessage(new TextMessage(messageJson));
+            }
+
+            @Override
+            public void close() {
+                try {
+                    session.close();
+                } catch (IOException e) {
+                    // Already gone
+                }
+            }
+        });
+        if (client == null) {
+            session.close(CloseStatus.SERVICE_OVERLOAD.withReason("Too many clients"));
+            return;
+        }
+        session.getAttributes().put(CLIENT_ATTRIBUTE, client);
+        logger.info("WebSocket client connected for topic prefix: " + topicPrefix);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        MessagePush.Client client = (MessagePush.Client) session.getAttributes().get(CLIENT_ATTRIBUTE);
+        if (client != null) {
+            client.close();
+        }
+    }
+
+    private static String getParam(MultiValueMap<String, String> params, String name) {
+        String value = params.getFirst(name);
+        return value != null ? UriUtils.decode(value, StandardCharsets.UTF_8) : "";
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Counts the messages sent and received, in total and per topic prefix, and
+ * records the publish latency and the end-to-end latency in HdrHistograms.
+ *
+ * The end-to-end latency of a message received by the instance that sent it
+ * is measured on the monotonic clock and kept apart from the one of messages
+ * sent by another instance, which relies on wall clocks that may be skewed.
+ *
+ * Updates only touch LongAdders and Recorders, so request threads and the
+ * receive path never contend on a shared counter. All the statistics live in
+ * a generation that reset() swaps for a fresh one in a single write: an update
+ * racing with a reset lands entirely before or after it, and a snapshot always
+ * comes from a single generation.
+ */
+public class MessageStats implements MeterBinder {
+
+    // Topics beyond the maximum number of prefixes are counted under this one
+    public static final String OTHER_TOPIC_PREFIX = "#other";
+
+    private static final long HIGHEST_TRACKABLE_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double[] PUBLISHED_PERCENTILES = { 50, 99, 99.9 };
+    // The percentile gauges of one scrape all read a snapshot taken at most this long ago
+    private static final long GAUGE_SNAPSHOT_MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static class Counters {
+        private final LongAdder numSent = new LongAdder();
+        private final LongAdder numReceived = new LongAdder();
+    }
+
+    private static class Latency {
+        private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_LATENCY_NANOS, SIGNIFICANT_DIGITS);
+
+        // Everything recorded so far, the Recorder only hands out what was added since the last call
+        private final Histogram total = new Histogram(HIGHEST_TRACKABLE_LATENCY_NANOS, SIGNIFICANT_DIGITS);
+        private Histogram interval;
+
+        // Shared by the percentile gauges, so a scrape copies the histogram once rather than per gauge
+        private LatencySnapshot gaugeSnapshot;
+        private long gaugeSnapshotNanos;
+
+        private void record(long latencyNanos) {
+            recorder.recordValue(Math.min(Math.max(0, latencyNanos), HIGHEST_TRACKABLE_LATENCY_NANOS));
+        }
+
+        private synchronized LatencySnapshot snapshot() {
+            interval = recorder.getIntervalHistogram(interval);
+            total.add(interval);
+            return new LatencySnapshot(total.copy());
+        }
+
+        private synchronized LatencySnapshot gaugeSnapshot() {
+            long now = System.nanoTime();
+            if (gaugeSnapshot == null || now - gaugeSnapshotNanos > GAUGE_SNAPSHOT_MAX_AGE_NANOS) {
+                gaugeSnapshot = snapshot();
+                gaugeSnapshotNanos = now;
+            }
+            return gaugeSnapshot;
+        }
+    }
+
+    private static class Generation {
+        private final Counters totals = new Counters();
+        private final ConcurrentHashMap<String, Counters> topicPrefixes = new ConcurrentHashMap<>();
+        private final Latency publishLatency = new Latency();
+        private final Latency loopbackLatency = new Latency();
+        private final Latency crossInstanceLatency = new Latency();
+        // Cross-instance messages that arrived before they were sent according to the local clock
+        private final LongAdder numClockSkewed = new LongAdder();
+    }
+
+    public static class LatencySnapshot {
+        private final Histogram histogram;
+
+        private LatencySnapshot(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        public long getCount() {
+            return histogram.getTotalCount();
+        }
+
+        public long getNanos(double percentile) {
+            return histogram.getValueAtPercentile(percentile);
+        }
+
+        public long getMaxNanos() {
+            return histogram.getMaxValue();
+        }
+    }
+
+    public static class Snapshot {
+        private final long numSent;
+        private final long numReceived;
+        private final Map<String, long[]> topicPrefixes;
+        private final LatencySnapshot publishLatency;
+        private final LatencySnapshot loopbackLatency;
+        private final LatencySnapshot crossInstanceLatency;
+        private final long numClockSkewed;
+
+        private Snapshot(Generation generation) {
+            this.numSent = generation.totals.numSent.sum();
+            this.numReceived = generation.totals.numReceived.sum();
+            this.topicPrefixes = new TreeMap<>();
+            generation.topicPrefixes.forEach((topicPrefix, counters) -> topicPrefixes.put(topicPrefix,
+                    new long[] { counters.numSent.sum(), counters.numReceived.sum() }));
+            this.publishLatency = generation.publishLatency.snapshot();
+            this.loopbackLatency = generation.loopbackLatency.snapshot();
+            this.crossInstanceLatency = generation.crossInstanceLatency.snapshot();
+            this.numClockSkewed = generation.numClockSkewed.sum();
+        }
+
+        public long getNumSent() {
+            return numSent;
+        }
+
+        public long getNumReceived() {
+            return numReceived;
+        }
+
+        // Topic prefixes in order, each with its number of messages sent and received
+        public Map<String, long[]> getTopicPrefixes() {
+            return topicPrefixes;
+        }
+
+        public LatencySnapshot getPublishLatency() {
+            return publishLatency;
+        }
+
+        // Messages sent and received by this instance
+        public LatencySnapshot getLoopbackLatency() {
+            return loopbackLatency;
+        }
+
+        // Messages sent by another instance, only as accurate as the clocks are in sync
+        public LatencySnapshot getCrossInstanceLatency() {
+            return crossInstanceLatency;
+        }
+
+        public long getNumClockSkewed() {
+            return numClockSkewed;
+        }
+    }
+
+    private final int topicPrefixLevels;
+    private final int maxTopicPrefixes;
+
+    private volatile Generation generation = new Generation();
+    private volatile MeterRegistry meterRegistry;
+    // Messages sent and received per topic prefix by the generations reset() replaced, guarded by
+    // this. The Micrometer counters add them up, so they never go down.
+    private final Map<String, long[]> resetTopicPrefixes = new HashMap<>();
+
+    public MessageStats(int topicPrefixLevels, int maxTopicPrefixes) {
+        this.topicPrefixLevels = Math.max(1, topicPrefixLevels);
+        this.maxTopicPrefixes = Math.max(1, maxTopicPrefixes);
+    }
+
+    public void recordSent(String topic, long publishLatencyNanos) {
+        Generation current = generation;
+        current.totals.numSent.increment();
+        topicPrefixCounters(current, topic).numSent.increment();
+        current.publishLatency.record(publishLatencyNanos);
+    }
+
+    public void recordEndToEndLatency(long latencyNanos, boolean loopback) {
+        Generation current = generation;
+        if (loopback) {
+            current.loopbackLatency.record(latencyNanos);
+        } else if (latencyNanos < 0) {
+            current.numClockSkewed.increment();
+        } else {
+            current.crossInstanceLatency.record(latencyNanos);
+        }
+    }
+
+    public void recordReceived(String topic) {
+        Generation current = generation;
+        current.totals.numReceived.increment();
+        topicPrefixCounters(current, topic).numReceived.increment();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(generation);
+    }
+
+    public synchronized void reset() {
+        Generation previous = generation;
+        generation = new Generation();
+        // An update that still lands in the previous generation is left out of the counters
+        previous.topicPrefixes.forEach((topicPrefix, counters) -> {
+            long[] counts = resetTopicPrefixes.computeIfAbsent(topicPrefix, key -> new long[2]);
+            counts[0] += counters.numSent.sum();
+            counts[1] += counters.numReceived.sum();
+        });
+    }
+
+    public String getTopicPrefix(String topic) {
+        if (topic == null) {
+            return OTHER_TOPIC_PREFIX;
+        }
+        int end = -1;
+        for (int level = 0; level < topicPrefixLevels; level++) {
+            end = topic.indexOf('/', end + 1);
+            if (end < 0) {
+                return topic;
+            }
+        }
+        return topic.substring(0, end);
+    }
+
+    private Counters topicPrefixCounters(Generation current, String topic) {
+        String topicPrefix = getTopicPrefix(topic);
+        Counters counters = current.topicPrefixes.get(topicPrefix);
+        if (counters != null) {
+            return counters;
+        }
+        // Keep the number of prefixes, and of meters, bounded whatever the topics look like
+        if (current.topicPrefixes.size() >= maxTopicPrefixes) {
+            topicPrefix = OTHER_TOPIC_PREFIX;
+        }
+        return current.topicPrefixes.computeIfAbsent(topicPrefix, this::newTopicPrefix);
+    }
+
+    private Counters newTopicPrefix(String topicPrefix) {
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            bindTopicPrefix(registry, topicPrefix);
+        }
+        return new Counters();
+    }
+
+    // Expose the same statistics through Micrometer. The latency percentiles start over on reset() like
+    // after a restart, the counters keep counting so their rates stay right.
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindLatency(registry, "solace.publish.latency", "Time taken to publish a message", "",
+                current -> current.publishLatency);
+        bindLatency(registry, "solace.endtoend.latency", "Time from publishing to receiving a message", "loopback",
+                current -> current.loopbackLatency);
+        bindLatency(registry, "solace.endtoend.latency", "Time from publishing to receiving a message", "crossInstance",
+                current -> current.crossInstanceLatency);
+        meterRegistry = registry;
+        generation.topicPrefixes.keySet().forEach(topicPrefix -> bindTopicPrefix(registry, topicPrefix));
+    }
+
+    private void bindLatency(MeterRegistry registry, String name, String description, String path,
+            Function<Generation, Latency> latency) {
+        for (double percentile : PUBLISHED_PERCENTILES) {
+            Gauge.Builder<MessageStats> builder = Gauge.builder(name, this,
+                    stats -> latency.apply(stats.generation).gaugeSnapshot().getNanos(percentile) / 1e9)
+                    .tags("percentile", Double.toString(percentile / 100))
+                    .baseUnit("seconds")
+                    .description(description);
+            if (!path.isEmpty()) {
+                builder.tags("path", path);
+            }
+            builder.register(registry);
+        }
+    }
+
+    private void bindTopicPrefix(MeterRegistry registry, String topicPrefix) {
+        FunctionCounter.builder("solace.messages.sent", this, stats -> stats.getNumSent(topicPrefix))
+                .tags("topicPrefix", topicPrefix)
+                .description("Messages sent")
+                .register(registry);
+        FunctionCounter.builder("solace.messages.received", this, stats -> stats.getNumReceived(topicPrefix))
+                .tags("topicPrefix", topicPrefix)
+                .description("Messages received")
+                .register(registry);
+    }
+
+    private synchronized double getNumSent(String topicPrefix) {
+        long[] counts = resetTopicPrefixes.get(topicPrefix);
+        Counters counters = generation.topicPrefixes.get(topicPrefix);
+        return (counts != null ? counts[0] : 0) + (counters != null ? counters.numSent.sum() : 0);
+    }
+
+    private synchronized double getNumReceived(String topicPrefix) {
+        long[] counts = resetTopicPrefixes.get(topicPrefix);
+        Counters counters = generation.topicPrefixes.get(topicPrefix);
+        return (counts != null ? counts[1] : 0) + (counters != null ? counters.numReceived.sum() : 0);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.common;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recently received messages in a fixed number of fixed-size
+ * slots of a single direct buffer, so memory use does not depend on the
+ * message rate or payload size. Payloads that do not fit in a slot are
+ * truncated, the original length is kept.
+ *
+ * Each message gets a sequence number, which clients use as a cursor to page
+ * through the history without missing messages.
+ *
+ * Slot layout: sequence (8), timestamp (8), topic length (4), payload length
+ * (4), stored payload length (4), topic bytes, payload bytes.
+ */
+public class ReceivedMessageHistory {
+
+    private static final int HEADER_BYTES = 28;
+    // Solace topics are at most 250 bytes, make sure one always fits
+    private static final int MIN_ENTRY_BYTES = HEADER_BYTES + 512;
+
+    public static class Entry {
+        private final long sequence;
+        private final long timestamp;
+        private final String topic;
+        private final byte[] payload;
+        private final int payloadLength;
+
+        private Entry(long sequence, long timestamp, String topic, byte[] payload, int payloadLength) {
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.topic = topic;
+            this.payload = payload;
+            this.payloadLength = payloadLength;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        // The stored payload, shorter than getPayloadLength() when it was truncated
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public int getPayloadLength() {
+            return payloadLength;
+        }
+
+        public boolean isTruncated() {
+            return payload.length < payloadLength;
+        }
+    }
+
+    public static class Page {
+        private final List<Entry> entries;
+        private final long nextSince;
+        private final long oldestSequence;
+
+        private Page(List<Entry> entries, long nextSince, long oldestSequence) {
+            this.entries = entries;
+            this.nextSince = nextSince;
+            this.oldestSequence = oldestSequence;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        // Cursor to pass as "since" to get the following page
+        public long getNextSince() {
+            return nextSince;
+        }
+
+        // Messages older than this were overwritten, a larger gap to "since" means some were missed
+        public long getOldestSequence() {
+            return oldestSequence;
+        }
+    }
+
+    private final int capacity;
+    private final int entryBytes;
+    private final ByteBuffer slots;
+
+    // Sequence number of the last message added, 0 when empty
+    private long lastSequence;
+
+    public ReceivedMessageHistory(int capacity, int maxEntryBytes) {
+        this.capacity = Math.max(1, capacity);
+        this.entryBytes = Math.max(MIN_ENTRY_BYTES, maxEntryBytes);
+        this.slots = ByteBuffer.allocateDirect(this.capacity * this.entryBytes);
+    }
+
+    public synchronized long add(String topic, ByteBuffer payload, long timestamp) {
+        long sequence = ++lastSequence;
+        int slot = slotOffset(sequence);
+
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int topicLength = Math.min(topicBytes.length, entryBytes - HEADER_BYTES);
+        int payloadLength = payload != null ? payload.remaining() : 0;
+        int storedPayloadLength = Math.min(payloadLength, entryBytes - HEADER_BYTES - topicLength);
+
+        slots.putLong(slot, sequence);
+        slots.putLong(slot + 8, timestamp);
+        slots.putInt(slot + 16, topicLength);
+        slots.putInt(slot + 20, payloadLength);
+        slots.putInt(slot + 24, storedPayloadLength);
+
+        // Cast to Buffer so the calls also link on a Java 8 runtime
+        ((Buffer) slots).position(slot + HEADER_BYTES);
+        slots.put(topicBytes, 0, topicLength);
+        if (storedPayloadLength > 0) {
+            ByteBuffer storedPayload = payload.duplicate();
+            ((Buffer) storedPayload).limit(storedPayload.position() + storedPayloadLength);
+            slots.put(storedPayload);
+        }
+        ((Buffer) slots).clear();
+        return sequence;
+    }
+
+    public long add(String topic, byte[] payload, long timestamp) {
+        return add(topic, ByteBuffer.wrap(payload), timestamp);
+    }
+
+    public synchronized Entry getLatest() {
+        return lastSequence > 0 ? read(lastSequence) : null;
+    }
+
+    // Messages with a sequence number above since, oldest first, whose topic starts with topicPrefix
+    public synchronized Page query(long since, String topicPrefix, int limit) {
+        long oldestSequence = Math.max(1, lastSequence - capacity + 1);
+        byte[] prefixBytes = topicPrefix != null ? topicPrefix.getBytes(StandardCharsets.UTF_8) : new byte[0];
+
+        List<Entry> entries = new ArrayList<>();
+        long sequence = Math.max(since + 1, oldestSequence);
+        for (; sequence <= lastSequence && entries.size() < limit; sequence++) {
+            if (topicStartsWith(slotOffset(sequence), prefixBytes)) {
+                entries.add(read(sequence));
+            }
+        }
+        return new Page(entries, sequence - 1, lastSequence > 0 ? oldestSequence : 0);
+    }
+
+    public synchronized void clear() {
+        // Sequence numbers keep increasing so cursors held by clients stay valid
+        for (long sequence = Math.max(1, lastSequence - capacity + 1); sequence <= lastSequence; sequence++) {
+            slots.putLong(slotOffset(sequence), 0);
+        }
+    }
+
+    private int slotOffset(long sequence) {
+        return (int) (sequence % capacity) * entryBytes;
+    }
+
+    private boolean topicStartsWith(int slot, byte[] prefixBytes) {
+        if (slots.getLong(slot) == 0 || slots.getInt(slot + 16) < prefixBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < prefixBytes.length; i++) {
+            if (slots.get(slot + HEADER_BYTES + i) != prefixBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Entry read(long sequence) {
+        int slot = slotOffset(sequence);
+        if (slots.getLong(slot) != sequence) {
+            // Cleared
+            return null;
+        }
+        long timestamp = slots.getLong(slot + 8);
+        byte[] topicBytes = new byte[slots.getInt(slot + 16)];
+        int payloadLength = slots.getInt(slot + 20);
+        byte[] payload = new byte[slots.getInt(slot + 24)];
+
+        ((Buffer) slots).position(slot + HEADER_BYTES);
+        slots.get(topicBytes);
+        slots.get(payload);
+        ((Buffer) slots).clear();
+        return new Entry(sequence, timestamp, new String(topicBytes, StandardCharsets.UTF_8), payload, payloadLength);
+    }
+}
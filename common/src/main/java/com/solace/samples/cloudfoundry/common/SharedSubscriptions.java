@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Spreads the messages of the subscriptions over the instances of the
+ * application, rather than every instance receiving every message.
+ *
+ * The subscriptions are made as shared subscriptions of a group, and the
+ * broker delivers each message to only one of the instances subscribed in the
+ * group. That is #share/group/topic over SMF, $share/group/filter over MQTT,
+ * and over JMS a shared consumer of a subscription named after the group and
+ * the topic. The group is named after the Cloud Foundry application, so the
+ * instances of an application share their subscriptions and other
+ * applications still receive all the messages.
+ *
+ * Each instance counts the messages it received, with its instance index as a
+ * tag: the counters of all the instances add up to the traffic of the group,
+ * and each one's part of that sum is the share of that instance.
+ */
+public class SharedSubscriptions implements MeterBinder {
+
+    private static final String SHARE_PREFIX = "#share/";
+    private static final String MQTT_SHARE_PREFIX = "$share/";
+    // When the application name is unknown, as when not running on Cloud Foundry
+    private static final String DEFAULT_GROUP = "solace-sample";
+
+    private final boolean enabled;
+    private final String group;
+    private final String instanceIndex;
+
+    private final LongAdder numReceived = new LongAdder();
+
+    public SharedSubscriptions(boolean enabled, String group, String instanceIndex) {
+        this.enabled = enabled;
+        this.group = getGroupName(group);
+        this.instanceIndex = instanceIndex;
+    }
+
+    // A share name is a single level without wildcards
+    private static String getGroupName(String name) {
+        if (name == null || name.isEmpty()) {
+            return DEFAULT_GROUP;
+        }
+        StringBuilder groupName = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            groupName.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.' ? c : '_');
+        }
+        return groupName.toString();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public String getInstanceIndex() {
+        return instanceIndex;
+    }
+
+    // The subscription to give the broker for a topic
+    public String getBrokerSubscription(String subscription) {
+        return enabled ? SHARE_PREFIX + group + "/" + subscription : subscription;
+    }
+
+    // The topic filter to subscribe with over MQTT, where a filter starting with # is not valid
+    public String getMqttSubscription(String filter) {
+        return enabled ? MQTT_SHARE_PREFIX + group + "/" + filter : filter;
+    }
+
+    // The name of the JMS shared subscription to a topic. It cannot hold the levels and wildcards of the topic,
+    // those are escaped, and so is the escape character to keep the names of two topics apart.
+    public String getSubscriptionName(String topic) {
+        StringBuilder name = new StringBuilder(group.length() + 1 + topic.length() * 2);
+        name.append(group).append('_');
+        for (int i = 0; i < topic.length(); i++) {
+            char c = topic.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '.') {
+                name.append(c);
+            } else {
+                name.append(String.format("_%04x", (int) c));
+            }
+        }
+        return name.toString();
+    }
+
+    public void recordReceived() {
+        if (enabled) {
+            numReceived.increment();
+        }
+    }
+
+    public long getNumReceived() {
+        return numReceived.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!enabled) {
+            return;
+        }
+        FunctionCounter.builder("solace.shared.messages.received", this, SharedSubscriptions::getNumReceived)
+                .tags("group", group, "instanceIndex", instanceIndex)
+                .description("Messages received by this instance on the subscriptions shared by the group")
+                .register(registry);
+    }
+}
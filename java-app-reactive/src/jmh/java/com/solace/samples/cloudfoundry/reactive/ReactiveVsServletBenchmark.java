@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.reactive;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Throughput of POST /message on the servlet java-app and on this reactive
+ * variant, with hundreds to thousands of requests in flight at once.
+ *
+ * Every trial starts the bootJar of one variant in a process of its own, so
+ * both run alone on the same JVM settings, connected to the loopback broker
+ * with a 1 ms acknowledgement latency: persistent messages then keep a thread
+ * of the servlet variant busy for that long, and none of the reactive one.
+ * The load comes from a non-blocking client keeping concurrency requests in
+ * flight over as many connections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReactiveVsServletBenchmark {
+
+    private static final int REQUESTS_PER_INVOCATION = 8192;
+    private static final String TOPIC = "benchmark/topic";
+    private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    @Param({ "servlet", "reactive" })
+    private String variant;
+
+    @Param({ "256", "2048" })
+    private int concurrency;
+
+    @Param({ "DIRECT", "PERSISTENT" })
+    private String deliveryMode;
+
+    private Process application;
+    private ConnectionProvider connectionProvider;
+    private HttpClient client;
+    private String messageJson;
+    private final AtomicLong numFailed = new AtomicLong();
+
+    @Setup
+    public void setup() throws Exception {
+        String jar = System.getProperty("benchmark." + variant + "Jar");
+        if (jar == null || !new File(jar).isFile()) {
+            throw new IllegalStateException("No jar for the " + variant + " variant, run through ./gradlew jmh");
+        }
+        int port = findFreePort();
+
+        ProcessBuilder builder = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(), "-jar", jar);
+        Map<String, String> environment = builder.environment();
+        environment.remove("VCAP_SERVICES");
+        environment.put("SERVER_PORT", Integer.toString(port));
+        environment.put("SOLACE_SESSION_FACTORY", "loopback");
+        environment.put("SOLACE_LOOPBACK_ACK_LATENCY_MICROS", "1000");
+        // The controllers log every request and every message received
+        environment.put("LOGGING_LEVEL_ROOT", "WARN");
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.appendTo(
+                new File(System.getProperty("java.io.tmpdir"), "benchmark-" + variant + ".log")));
+        application = builder.start();
+
+        String baseUrl = "http://localhost:" + port;
+        try {
+            // Ready once connected, /status answers before that
+            awaitStarted(baseUrl + "/actuator/health/readiness");
+        } catch (Exception e) {
+            // JMH skips the tear down of a trial that failed to set up
+            application.destroyForcibly();
+            throw e;
+        }
+
+        connectionProvider = ConnectionProvider.fixed("benchmark", concurrency);
+        client = HttpClient.create(connectionProvider)
+                .baseUrl(baseUrl)
+                .headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON));
+
+        JSONObject message = new JSONObject();
+        message.put("topic", TOPIC);
+        message.put("body", "benchmark");
+        message.put("deliveryMode", deliveryMode);
+        messageJson = message.toString();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+        if (application != null) {
+            application.destroy();
+            if (!application.waitFor(30, TimeUnit.SECONDS)) {
+                application.destroyForcibly();
+            }
+        }
+        if (numFailed.get() > 0) {
+            throw new IllegalStateException(numFailed.get() + " requests failed on the " + variant + " variant");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS_PER_INVOCATION)
+    public long sendMessages() {
+        return Flux.range(0, REQUESTS_PER_INVOCATION)
+                .flatMap(i -> sendMessage(), concurrency)
+                .count()
+                .block();
+    }
+
+    private Mono<Integer> sendMessage() {
+        return client.post()
+                .uri("/message")
+                .send(ByteBufFlux.fromString(Mono.just(messageJson)))
+                .responseSingle((response, body) -> body.asString()
+                        .defaultIfEmpty("")
+                        .thenReturn(response.status().code()))
+                .doOnNext(status -> {
+                    if (status != 200) {
+                        numFailed.incrementAndGet();
+                    }
+                });
+    }
+
+    private static void awaitStarted(String readinessUrl) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(readinessUrl).openConnection();
+                try {
+                    if (connection.getResponseCode() == 200) {
+                        return;
+                    }
+                } finally {
+                    connection.disconnect();
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(250);
+        }
+        throw new IllegalStateException("The application did not start within " + STARTUP_TIMEOUT_MILLIS + " ms");
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
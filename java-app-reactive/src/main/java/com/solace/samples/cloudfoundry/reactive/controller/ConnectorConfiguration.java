@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.reactive.controller;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.WebFilter;
+
+import reactor.core.publisher.Mono;
+
+@Configuration
+public class ConnectorConfiguration {
+
+    // Wait before the second connection attempt, doubled after each failed one up to the maximum
+    @Value("${SOLACE_CONNECT_RETRY_WAIT_IN_MILLIS:1000}")
+    private long retryWaitMillis;
+    @Value("${SOLACE_CONNECT_MAX_RETRY_WAIT_IN_MILLIS:30000}")
+    private long maxRetryWaitMillis;
+
+    // Shows up as "solaceConnector" in /actuator/health and in its readiness group
+    @Bean
+    public BackgroundConnector solaceConnector() {
+        return new BackgroundConnector(retryWaitMillis, maxRetryWaitMillis);
+    }
+
+    // Reads are served from what was received so far, only the rest needs the connection. Unlike
+    // interceptors, web filters also see the actuator endpoints, which must stay reachable.
+    @Bean
+    public WebFilter connectorReadinessFilter(BackgroundConnector solaceConnector) {
+        return (exchange, chain) -> {
+            String path = exchange.getRequest().getPath().pathWithinApplication().value();
+            if (solaceConnector.isConnected() || HttpMethod.GET.equals(exchange.getRequest().getMethod())
+                    || path.equals("/status") || path.startsWith("/actuator/")) {
+                return chain.filter(exchange);
+            }
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            if (solaceConnector.getState() != BackgroundConnector.State.FAILED) {
+                response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(solaceConnector.getRetryAfterSeconds()));
+            }
+            DataBuffer body = response.bufferFactory().wrap(("{'description': 'Not connected to Solace PubSub+, state "
+                    + solaceConnector.getState() + "'}").getBytes(StandardCharsets.UTF_8));
+            return response.writeWith(Mono.just(body));
+        };
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.reactive.controller;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPStreamingPublishCorrelatingEventHandler;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessage;
+import com.solacesystems.jcsmp.XMLMessageConsumer;
+import com.solacesystems.jcsmp.XMLMessageListener;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Bridges the callbacks of a JCSMP session to Reactor.
+ *
+ * publish() is a Mono that completes once the message is sent, or for a
+ * guaranteed message once the broker acknowledges it, matched to its sink by
+ * the correlation key. The sends run on a single thread of their own because
+ * the API may block while its socket buffers or its publish window are full,
+ * which must never happen on a Netty event loop.
+ *
+ * receive() is a single Flux of the messages the XMLMessageListener gets,
+ * shared by all its subscribers. The listener cannot be asked for a number of
+ * messages, so demand is signalled by starting the consumer while there is
+ * demand and stopping it when there is none left: the few messages already in
+ * flight at that point are buffered until the next request.
+ */
+public class ReactiveSession {
+
+    private static final Log logger = LogFactory.getLog(ReactiveSession.class);
+
+    private final JCSMPSession session;
+    private final XMLMessageProducer producer;
+    private final XMLMessageConsumer consumer;
+
+    private final ConcurrentHashMap<Long, MonoSink<Void>> awaitingAcknowledgement = new ConcurrentHashMap<>();
+    private final AtomicLong nextCorrelationKey = new AtomicLong();
+    private final Scheduler publishScheduler = Schedulers.newSingle("solace-publish", true);
+
+    private final Flux<BytesXMLMessage> received;
+    private volatile FluxSink<BytesXMLMessage> receiveSink;
+    // Starts and stops the consumer one change at a time, away from the API dispatch thread
+    private final Scheduler flowScheduler = Schedulers.newSingle("solace-receive-flow", true);
+    private volatile boolean consumerStarted;
+
+    public ReactiveSession(JCSMPSession session) throws JCSMPException {
+        this.session = session;
+        this.producer = session.getMessageProducer(new PublishEventHandler());
+        this.consumer = session.getMessageConsumer(new MessageListener());
+        this.received = Flux.<BytesXMLMessage>create(sink -> {
+            receiveSink = sink;
+            sink.onRequest(n -> updateFlow());
+            sink.onDispose(() -> {
+                receiveSink = null;
+                updateFlow();
+            });
+        }, FluxSink.OverflowStrategy.BUFFER).share();
+    }
+
+    private class PublishEventHandler implements JCSMPStreamingPublishCorrelatingEventHandler {
+        @Override
+        public void responseReceivedEx(Object correlationKey) {
+            MonoSink<Void> sink = awaitingAcknowledgement.remove(correlationKey);
+            if (sink != null) {
+                sink.success();
+            }
+        }
+
+        @Override
+        public void handleErrorEx(Object correlationKey, JCSMPException e, long timestamp) {
+            logger.error("Producer received error for msg: " + correlationKey + " - " + timestamp, e);
+            MonoSink<Void> sink = awaitingAcknowledgement.remove(correlationKey);
+            if (sink != null) {
+                sink.error(e);
+            }
+        }
+
+        // Superseded by the correlating callbacks above
+        @Override
+        public void responseReceived(String messageID) {
+        }
+
+        @Override
+        public void handleError(String messageID, JCSMPException e, long timestamp) {
+        }
+    }
+
+    private class MessageListener implements XMLMessageListener {
+        @Override
+        public void onReceive(BytesXMLMessage receivedMessage) {
+            FluxSink<BytesXMLMessage> sink = receiveSink;
+            if (sink == null) {
+                return;
+            }
+            sink.next(receivedMessage);
+            if (sink.requestedFromDownstream() == 0) {
+                updateFlow();
+            }
+        }
+
+        @Override
+        public void onException(JCSMPException e) {
+            logger.error("Consumer received exception: %s%n", e);
+        }
+    }
+
+    public Mono<Void> publish(XMLMessage message, Topic topic) {
+        if (message.getDeliveryMode() == DeliveryMode.DIRECT) {
+            return Mono.<Void>fromCallable(() -> {
+                producer.send(message, topic);
+                return null;
+            }).subscribeOn(publishScheduler);
+        }
+        return Mono.<Void>create(sink -> {
+            Long correlationKey = nextCorrelationKey.incrementAndGet();
+            awaitingAcknowledgement.put(correlationKey, sink);
+            // The broker may still acknowledge the message, there is just nobody left to tell
+            sink.onCancel(() -> awaitingAcknowledgement.remove(correlationKey));
+            message.setCorrelationKey(correlationKey);
+            try {
+                producer.send(message, topic);
+            } catch (JCSMPException e) {
+                awaitingAcknowledgement.remove(correlationKey);
+                sink.error(e);
+            }
+        }).subscribeOn(publishScheduler);
+    }
+
+    public Flux<BytesXMLMessage> receive() {
+        return received;
+    }
+
+    public Mono<Void> addSubscription(Topic topic) {
+        return Mono.<Void>fromCallable(() -> {
+            session.addSubscription(topic, true);
+            return null;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Mono<Void> removeSubscription(Topic topic) {
+        return Mono.<Void>fromCallable(() -> {
+            session.removeSubscription(topic, true);
+            return null;
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public boolean isClosed() {
+        return session.isClosed();
+    }
+
+    public int getNumAwaitingAcknowledgement() {
+        return awaitingAcknowledgement.size();
+    }
+
+    public boolean isConsumerStarted() {
+        return consumerStarted;
+    }
+
+    public void close() {
+        consumer.close();
+        producer.close();
+        session.closeSession();
+        publishScheduler.dispose();
+        flowScheduler.dispose();
+    }
+
+    private void updateFlow() {
+        try {
+            flowScheduler.schedule(this::startOrStopConsumer);
+        } catch (RejectedExecutionException e) {
+            // The session was closed meanwhile
+        }
+    }
+
+    private void startOrStopConsumer() {
+        FluxSink<BytesXMLMessage> sink = receiveSink;
+        boolean demand = sink != null && !sink.isCancelled() && sink.requestedFromDownstream() > 0;
+        if (demand == consumerStarted) {
+            return;
+        }
+        try {
+            if (demand) {
+                consumer.start();
+            } else {
+                consumer.stop();
+            }
+            consumerStarted = demand;
+        } catch (JCSMPException e) {
+            logger.error("Could not " + (demand ? "start" : "stop") + " the consumer.", e);
+        }
+    }
+}
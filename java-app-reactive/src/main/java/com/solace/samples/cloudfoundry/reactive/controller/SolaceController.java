@@ -0,0 +1,567 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.reactive.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.solace.samples.cloudfoundry.reactive.model.SimpleMessage;
+import com.solace.samples.cloudfoundry.reactive.model.SimpleSubscription;
+import com.solacesystems.jcsmp.BytesMessage;
+import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.DeliveryMode;
+import com.solacesystems.jcsmp.JCSMPChannelProperties;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPProperties;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.TextMessage;
+import com.solacesystems.jcsmp.Topic;
+
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The REST API of java-app on Spring WebFlux: no request ever holds a thread
+ * while its message is sent or acknowledged, the request body of a stream is
+ * only read as fast as its messages are published, and server-sent events
+ * are written as the clients take them.
+ */
+@RestController
+public class SolaceController {
+
+    private static final Log logger = LogFactory.getLog(SolaceController.class);
+
+    // The largest publisher acknowledgement window the API supports
+    private static final int MAX_PUB_ACK_WINDOW_SIZE = 255;
+
+    // Received messages the recorder asks for at a time, the consumer stops when it falls this far behind
+    private static final int RECEIVE_PREFETCH = 256;
+
+    // Set by the connector thread, before it reports the connection as ready
+    private volatile ReactiveSession reactiveSession;
+    private volatile Flux<ReceivedMessage> receivedMessages;
+    private final AtomicReference<ReceivedMessage> lastReceivedMessage = new AtomicReference<>();
+
+    @Autowired
+    private BackgroundConnector solaceConnector;
+
+    // Optionally provided LDAP_CLIENTUSERNAME
+    @Value("${ldap.clientUsername:}")
+    protected String ldap_clientUsername;
+
+    // Optionally provided LDAP_CLIENTPASSWORD
+    @Value("${ldap.clientPassword:}")
+    protected String ldap_clientPassword;
+
+    // Reconnect properties for High Availability
+    @Value("${SOLACE_CHANNEL_PROPERTIES_CONNECTION_RETRIES:1}")
+    private int connectRetries;
+    @Value("${SOLACE_CHANNEL_PROPERTIES_RECONNECT_RETRIES:5}")
+    private int reconnectRetries;
+    @Value("${SOLACE_CHANNEL_PROPERTIES_RECONNECT_RETRY_WAIT_IN_MILLIS:3000}")
+    private int reconnectRetryWaitInMillis;
+    @Value("${SOLACE_CHANNEL_PROPERTIES_CONNECT_RETRIES_PER_HOST:20}")
+    private int connectRetriesPerHost;
+
+    // Messages of a stream being published at the same time, the body is read no further ahead
+    @Value("${SOLACE_PUBLISH_CONCURRENCY:256}")
+    private int publishConcurrency;
+
+    // "loopback" connects to an in-memory broker instead of the Solace PubSub+ service
+    private static final String LOOPBACK_SESSION_FACTORY = "loopback";
+    @Value("${SOLACE_SESSION_FACTORY:solace}")
+    private String sessionFactoryType;
+    @Value("${SOLACE_LOOPBACK_LATENCY_MICROS:0}")
+    private long loopbackLatencyMicros;
+    @Value("${SOLACE_LOOPBACK_ACK_LATENCY_MICROS:0}")
+    private long loopbackAckLatencyMicros;
+    @Value("${SOLACE_LOOPBACK_ACK_FAILURE_RATE:0}")
+    private double loopbackAckFailureRate;
+
+    // Messages buffered for each server-sent events client, and what happens when it falls further behind
+    @Value("${SOLACE_PUSH_BUFFER_SIZE:1000}")
+    private int pushBufferSize;
+    @Value("${SOLACE_PUSH_OVERFLOW_POLICY:DROP_OLDEST}")
+    private String pushOverflowPolicy;
+    @Value("${SOLACE_PUSH_MAX_CLIENTS:100}")
+    private int pushMaxClients;
+
+    private final LongAdder numMsgsSent = new LongAdder();
+    private final LongAdder numMsgsFailed = new LongAdder();
+    private final LongAdder numMsgsReceived = new LongAdder();
+    private final AtomicInteger numPushClients = new AtomicInteger();
+    private final LongAdder numPushed = new LongAdder();
+    private final LongAdder numPushDropped = new LongAdder();
+
+    // A received message, rendered to JSON once for every client it is pushed to
+    private static class ReceivedMessage {
+        private final long sequence;
+        private final String topic;
+        private final String body;
+        private final String json;
+
+        private ReceivedMessage(long sequence, String topic, String body, long timestamp) {
+            this.sequence = sequence;
+            this.topic = topic;
+            this.body = body;
+            JSONObject messageJson = new JSONObject();
+            messageJson.put("sequence", sequence);
+            messageJson.put("timestamp", timestamp);
+            messageJson.put("topic", topic);
+            messageJson.put("body", body);
+            this.json = messageJson.toString();
+        }
+    }
+
+    // The counts of a stream, updated by one signal at a time
+    private static class StreamSummary {
+        private long numRecords;
+        private long numSent;
+        private long numFailed;
+        private volatile String lastError;
+    }
+
+    @PostConstruct
+    public void init() {
+
+        // Connect to Solace
+        logger.info("************* Init Called ************");
+
+        if (LOOPBACK_SESSION_FACTORY.equalsIgnoreCase(sessionFactoryType)) {
+            logger.info("Connecting to an in-memory loopback broker instead of Solace PubSub+");
+            SessionFactory loopbackSessionFactory = new LoopbackSessionFactory(loopbackLatencyMicros,
+                    loopbackAckLatencyMicros, loopbackAckFailureRate);
+            solaceConnector.start(() -> connect(loopbackSessionFactory));
+            return;
+        }
+
+        String vcapServices = System.getenv("VCAP_SERVICES");
+        logger.info(vcapServices);
+
+        // Need to parse the Solace HOST from VCAP Services
+        if (vcapServices == null || vcapServices.equals("") || vcapServices.equals("{}")) {
+            logger.error("The VCAP_SERVICES variable wasn't set in the environment. Aborting connection.");
+            logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("The VCAP_SERVICES variable wasn't set in the environment");
+            return;
+        }
+
+        JSONObject vcapServicesJson = new JSONObject(vcapServices);
+
+        JSONArray solMessagingArray = vcapServicesJson.getJSONArray("solace-pubsub");
+
+        if (solMessagingArray == null) {
+            logger.error("Did not find Solace provided messaging service \"solace-pubsub\"");
+            logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Did not find Solace provided messaging service \"solace-pubsub\"");
+            return;
+        }
+
+        logger.info("Number of provided bindings: " + solMessagingArray.length());
+
+        // Get the first Solace credentials from the array
+        JSONObject solaceCredentials = null;
+        if (solMessagingArray.length() > 0) {
+            solaceCredentials = solMessagingArray.getJSONObject(0);
+            if (solaceCredentials != null) {
+                solaceCredentials = solaceCredentials.getJSONObject("credentials");
+            }
+        }
+
+        if (solaceCredentials == null) {
+            logger.error("Did not find Solace PubSub+ service credentials");
+            logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Did not find Solace PubSub+ service credentials");
+            return;
+        }
+
+        logger.info("Solace client initializing and using Credentials: " + solaceCredentials.toString(2));
+
+        final JCSMPProperties properties = new JCSMPProperties();
+
+        // The host property is in a json array. Two hosts are provided in a
+        // High Availability environment,
+        // one for the primary router and one for the backup.
+        JSONArray hostsArray = solaceCredentials.getJSONArray("smfHosts");
+
+        // Make a host list (for HA and non HA)
+        String host = "";
+        for (int i = 0; i < hostsArray.length(); i++) {
+            String newHostEntry = hostsArray.getString(i);
+            if (i > 0)
+                host += ",";
+
+            host += newHostEntry;
+        }
+
+        logger.info("Using host                 " + host);
+        logger.info("connectRetries             " + connectRetries);
+        logger.info("reconnectRetries           " + reconnectRetries);
+        logger.info("reconnectRetryWaitInMillis " + reconnectRetryWaitInMillis);
+        logger.info("connectRetriesPerHost      " + connectRetriesPerHost);
+
+        properties.setProperty(JCSMPProperties.HOST, host);
+
+        // Let the API keep as many guaranteed messages unacknowledged as it can, the sends block beyond that
+        properties.setProperty(JCSMPProperties.PUB_ACK_WINDOW_SIZE, MAX_PUB_ACK_WINDOW_SIZE);
+
+        // Must be using HA to have more than 1 host.
+        if (hostsArray.length() > 1) {
+
+            // A Sample for High Availability automatic reconnects.
+            JCSMPChannelProperties channelProperties = (JCSMPChannelProperties) properties
+                    .getProperty(JCSMPProperties.CLIENT_CHANNEL_PROPERTIES);
+            channelProperties.setConnectRetries(connectRetries);
+            channelProperties.setReconnectRetries(reconnectRetries);
+            channelProperties.setReconnectRetryWaitInMillis(reconnectRetryWaitInMillis);
+            channelProperties.setConnectRetriesPerHost(connectRetriesPerHost);
+        }
+
+        properties.setProperty(JCSMPProperties.VPN_NAME, solaceCredentials.getString("msgVpnName"));
+
+	    // clientUsername and clientPassword will be missing when LDAP is in used with Application Access set to 'LDAP Server'
+        if( solaceCredentials.has("clientUsername") && solaceCredentials.has("clientPassword") ) {
+        	logger.info("Using vmr internal authentication " + solaceCredentials.getString("clientUsername") + " " + solaceCredentials.getString("clientPassword"));
+        	properties.setProperty(JCSMPProperties.USERNAME, solaceCredentials.getString("clientUsername"));
+        	properties.setProperty(JCSMPProperties.PASSWORD, solaceCredentials.getString("clientPassword"));
+        } else if( ldap_clientPassword != null && ! ldap_clientPassword.isEmpty() && ldap_clientPassword != null && ! ldap_clientPassword.isEmpty()) {
+        	// Use the LDAP provided clientUsername and clientPassword
+        	logger.info("Using ldap provided authentication " + ldap_clientUsername + " " + ldap_clientPassword);
+        	properties.setProperty(JCSMPProperties.USERNAME, ldap_clientUsername);
+        	properties.setProperty(JCSMPProperties.PASSWORD, ldap_clientPassword);
+        } else {
+            logger.error("Did not find credentials to use, Neither Solace PubSub+ provided credentials (clientUsername, clientPassword), nor LDAP provided credentials (LDAP_CLIENTUSERNAME , LDAP_CLIENTPASSWORD) ");
+            logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Did not find credentials to use");
+            return;
+        }
+
+        // Startup goes on while the connector thread connects, see BackgroundConnector
+        SessionFactory solaceSessionFactory = new SolaceSessionFactory(properties);
+        solaceConnector.start(() -> connect(solaceSessionFactory));
+    }
+
+    // Runs on the connector thread, which tries again when this throws
+    private void connect(SessionFactory sessionFactory) throws Exception {
+        JCSMPSession session = sessionFactory.createSession();
+        ReactiveSession newReactiveSession;
+        try {
+            session.connect();
+            newReactiveSession = new ReactiveSession(session);
+        } catch (Exception e) {
+            session.closeSession();
+            throw e;
+        }
+
+        // Decoded once and shared by the recorder and every server-sent events client
+        AtomicLong sequence = new AtomicLong();
+        Flux<ReceivedMessage> newReceivedMessages = newReactiveSession.receive()
+                .<ReceivedMessage>handle((receivedMessage, sink) -> decode(receivedMessage, sequence, sink))
+                .share();
+
+        // Always subscribed, so GET /message has the last message. It asks for a bounded number of
+        // messages at a time, and the consumer stops whenever it falls behind.
+        newReceivedMessages
+                .publishOn(Schedulers.newSingle("solace-receive", true), RECEIVE_PREFETCH)
+                .subscribe(this::processReceivedMessage,
+                        e -> logger.error("Receiving messages failed.", e));
+
+        reactiveSession = newReactiveSession;
+        receivedMessages = newReceivedMessages;
+        logger.info("************* Solace initialized correctly!! ************");
+    }
+
+    private void decode(BytesXMLMessage receivedMessage, AtomicLong sequence, SynchronousSink<ReceivedMessage> sink) {
+        String body;
+        if (receivedMessage instanceof TextMessage) {
+            body = ((TextMessage) receivedMessage).getText();
+        } else if (receivedMessage instanceof BytesMessage) {
+            byte[] data = ((BytesMessage) receivedMessage).getData();
+            body = data != null ? new String(data, StandardCharsets.UTF_8) : null;
+        } else {
+            logger.error("Received message that was neither a TextMessage nor a BytesMessage: " + receivedMessage.dump());
+            return;
+        }
+        sink.next(new ReceivedMessage(sequence.incrementAndGet(), receivedMessage.getDestination().getName(),
+                body != null ? body : "", System.currentTimeMillis()));
+    }
+
+    private void processReceivedMessage(ReceivedMessage receivedMessage) {
+        numMsgsReceived.increment();
+        lastReceivedMessage.set(receivedMessage);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Received message : " + receivedMessage.body);
+        }
+    }
+
+    private boolean isConnected() {
+        if (reactiveSession == null || reactiveSession.isClosed()) {
+            logger.error("Session was null or closed, Could not send message");
+            return false;
+        }
+        return true;
+    }
+
+    // Completes once the message is sent or, for a persistent one, acknowledged by the broker
+    private Mono<Void> publish(SimpleMessage message) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Sending " + message.getDeliveryMode() + " message on topic: " + message.getTopic()
+                    + " with body: " + message.getBody());
+        }
+        final Topic topic = JCSMPFactory.onlyInstance().createTopic(message.getTopic());
+
+        // Several messages are on their way at once, so none of them can be reused
+        TextMessage msg = JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
+        msg.setText(message.getBody());
+        if (SimpleMessage.PERSISTENT.equalsIgnoreCase(message.getDeliveryMode())) {
+            msg.setDeliveryMode(DeliveryMode.PERSISTENT);
+        }
+        return reactiveSession.publish(msg, topic)
+                .doOnSuccess(ignored -> numMsgsSent.increment())
+                .doOnError(e -> numMsgsFailed.increment());
+    }
+
+    @RequestMapping(value = "/message", method = RequestMethod.POST)
+    public Mono<ResponseEntity<String>> sendMessage(@RequestBody Mono<SimpleMessage> message) {
+
+        if (!isConnected()) {
+            return Mono.just(new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST));
+        }
+
+        return message.flatMap(this::publish)
+                .thenReturn(new ResponseEntity<>("{}", HttpStatus.OK))
+                .onErrorResume(e -> {
+                    logger.error("Sending message failed.", e);
+                    return Mono.just(new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST));
+                });
+    }
+
+    // Publishes the newline delimited messages of the body as they are decoded. At most
+    // SOLACE_PUBLISH_CONCURRENCY of them are on their way at once, the body is read no faster.
+    @RequestMapping(value = "/messages/stream", method = RequestMethod.POST, consumes = CodecConfiguration.NDJSON_MEDIA_TYPE)
+    public Mono<ResponseEntity<String>> sendMessageStream(@RequestBody Flux<SimpleMessage> messages) {
+
+        if (!isConnected()) {
+            return Mono.just(new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST));
+        }
+
+        logger.info("Sending a stream of messages");
+        StreamSummary summary = new StreamSummary();
+        return messages
+                .doOnNext(message -> summary.numRecords++)
+                // Waits for the messages on their way before reporting a record that could not be decoded
+                .flatMapDelayError(message -> publish(message)
+                        .thenReturn(true)
+                        .onErrorResume(e -> {
+                            summary.lastError = e.getMessage();
+                            return Mono.just(false);
+                        }), publishConcurrency, RECEIVE_PREFETCH)
+                .doOnNext(sent -> {
+                    if (sent) {
+                        summary.numSent++;
+                    } else {
+                        summary.numFailed++;
+                    }
+                })
+                .then(Mono.just(false))
+                .onErrorResume(e -> {
+                    // The rest of the stream cannot be decoded past a malformed record
+                    summary.lastError = e.getMessage();
+                    return Mono.just(true);
+                })
+                .map(truncated -> streamResult(summary, truncated));
+    }
+
+    private ResponseEntity<String> streamResult(StreamSummary summary, boolean truncated) {
+        JSONObject summaryJson = new JSONObject();
+        summaryJson.put("numRecords", summary.numRecords);
+        summaryJson.put("numMsgsSent", summary.numSent);
+        summaryJson.put("numMsgsFailed", summary.numFailed);
+        summaryJson.put("truncated", truncated);
+        if (summary.lastError != null) {
+            summaryJson.put("lastError", summary.lastError);
+        }
+        logger.info("Finished sending a stream of messages: " + summaryJson);
+
+        // Reported like a batch, a stream that was partially sent or cut short is not a success
+        HttpStatus status = HttpStatus.OK;
+        if (summary.numSent == 0 && (summary.numRecords > 0 || truncated)) {
+            status = HttpStatus.BAD_REQUEST;
+        } else if (summary.numSent < summary.numRecords || truncated) {
+            status = HttpStatus.MULTI_STATUS;
+        }
+        return new ResponseEntity<>(summaryJson.toString(), status);
+    }
+
+    @RequestMapping(value = "/message", method = RequestMethod.GET)
+    public ResponseEntity<SimpleMessage> getLastMessageReceived() {
+
+        ReceivedMessage lastReceived = lastReceivedMessage.get();
+        if (lastReceived != null) {
+            logger.info("Sending the lastReceivedMessage");
+
+            // Return the last received message if it exists.
+            SimpleMessage receivedMessage = new SimpleMessage();
+
+            receivedMessage.setTopic(lastReceived.topic);
+            receivedMessage.setBody(lastReceived.body);
+            return new ResponseEntity<>(receivedMessage, HttpStatus.OK);
+        } else {
+            logger.info("Sorry did not find a lastReceivedMessage");
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+    }
+
+    // Pushes every message received on a topic starting with topicPrefix as a server-sent event. A client
+    // that falls more than SOLACE_PUSH_BUFFER_SIZE messages behind loses the oldest or the newest
+    // messages, or is disconnected, so it never holds up the recorder or the other clients.
+    @RequestMapping(value = "/message/stream", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<String>>> streamReceivedMessages(
+            @RequestParam(value = "topicPrefix", defaultValue = "") String topicPrefix,
+            @RequestParam(value = "overflow", defaultValue = "") String overflow) {
+
+        BufferOverflowStrategy overflowStrategy;
+        try {
+            overflowStrategy = getOverflowStrategy(overflow.isEmpty() ? pushOverflowPolicy : overflow);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        if (receivedMessages == null || numPushClients.get() >= pushMaxClients) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        Flux<ServerSentEvent<String>> events = receivedMessages
+                .filter(receivedMessage -> receivedMessage.topic.startsWith(topicPrefix))
+                .onBackpressureBuffer(pushBufferSize, dropped -> numPushDropped.increment(), overflowStrategy)
+                .map(receivedMessage -> ServerSentEvent.builder(receivedMessage.json)
+                        .event("message")
+                        .id(Long.toString(receivedMessage.sequence))
+                        .build())
+                .doOnNext(event -> numPushed.increment())
+                .doOnSubscribe(subscription -> numPushClients.incrementAndGet())
+                .doFinally(signal -> numPushClients.decrementAndGet())
+                .onErrorResume(e -> {
+                    logger.info("Disconnecting a server-sent events client that fell behind: " + e.getMessage());
+                    return Flux.empty();
+                });
+        return new ResponseEntity<>(events, HttpStatus.OK);
+    }
+
+    private static BufferOverflowStrategy getOverflowStrategy(String overflowPolicy) {
+        switch (overflowPolicy.toUpperCase()) {
+        case "DROP_OLDEST":
+            return BufferOverflowStrategy.DROP_OLDEST;
+        case "DROP_NEWEST":
+            return BufferOverflowStrategy.DROP_LATEST;
+        case "DISCONNECT":
+            return BufferOverflowStrategy.ERROR;
+        default:
+            throw new IllegalArgumentException("Unknown overflow policy: " + overflowPolicy);
+        }
+    }
+
+    @RequestMapping(value = "/subscription", method = RequestMethod.POST)
+    public Mono<ResponseEntity<String>> addSubscription(@RequestBody SimpleSubscription subscription) {
+        String subscriptionTopic = subscription.getSubscription();
+        logger.info("Adding a subscription to topic: " + subscriptionTopic);
+
+        if (!isConnected()) {
+            return Mono.just(new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST));
+        }
+
+        final Topic topic = JCSMPFactory.onlyInstance().createTopic(subscriptionTopic);
+        return reactiveSession.addSubscription(topic)
+                .doOnSuccess(ignored -> logger.info("Finished Adding a subscription to topic: " + subscriptionTopic))
+                .thenReturn(new ResponseEntity<>("{}", HttpStatus.OK))
+                .onErrorResume(e -> {
+                    logger.error("Adding a subscription failed.", e);
+                    return Mono.just(new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST));
+                });
+    }
+
+    @RequestMapping(value = "/subscription/{subscriptionName}", method = RequestMethod.DELETE)
+    public Mono<ResponseEntity<String>> deleteSubscription(@PathVariable("subscriptionName") String subscriptionTopic) {
+        logger.info("Deleting a subscription to topic: " + subscriptionTopic);
+
+        if (!isConnected()) {
+            return Mono.just(new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST));
+        }
+
+        final Topic topic = JCSMPFactory.onlyInstance().createTopic(subscriptionTopic);
+        return reactiveSession.removeSubscription(topic)
+                .doOnSuccess(ignored -> logger.info("Finished Deleting a subscription to topic: " + subscriptionTopic))
+                .thenReturn(new ResponseEntity<>("{}", HttpStatus.OK))
+                .onErrorResume(e -> {
+                    logger.error("Deleting a subscription failed.", e);
+                    return Mono.just(new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST));
+                });
+    }
+
+    @RequestMapping(value = "/status", method = RequestMethod.GET)
+    public ResponseEntity<String> getStatus() {
+
+        JSONObject statusJson = new JSONObject();
+        statusJson.put("numMsgsSent", numMsgsSent.sum());
+        statusJson.put("numMsgsFailed", numMsgsFailed.sum());
+        statusJson.put("numMsgsReceived", numMsgsReceived.sum());
+        if (reactiveSession != null) {
+            statusJson.put("numMsgsAwaitingAcknowledgement", reactiveSession.getNumAwaitingAcknowledgement());
+            statusJson.put("consumerStarted", reactiveSession.isConsumerStarted());
+        }
+
+        JSONObject pushJson = new JSONObject();
+        pushJson.put("numClients", numPushClients.get());
+        pushJson.put("numPushed", numPushed.sum());
+        pushJson.put("numDropped", numPushDropped.sum());
+        statusJson.put("push", pushJson);
+        return new ResponseEntity<>(statusJson.toString(), HttpStatus.OK);
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Journaling a message the way a request thread does while the session
+ * reconnects: append it, wait until it is on disk, and confirm it as the
+ * outbox does once it was sent. With as many threads as the request handling
+ * has, the throughput shows what group commit sustains compared to the REST
+ * ingest rate, and the flushes and flushed counters how many messages shared
+ * each fsync.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class OutboxJournalBenchmark {
+
+    private static final String TOPIC = "benchmark/topic";
+
+    @Param({ "64", "1024" })
+    private int payloadSize;
+
+    private Path directory;
+    private OutboxJournal journal;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("outbox-journal-benchmark");
+        journal = OutboxJournal.open(directory, 16777216, Long.MAX_VALUE);
+        payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.out.println("Flushes: " + journal.getNumFlushes() + ", messages flushed: "
+                + journal.getNumFlushedEntries());
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            for (Path path : paths) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void appendAndConfirm() throws IOException, InterruptedException, ExecutionException {
+        PublishOutbox.Entry entry = new PublishOutbox.Entry(TOPIC, payload, false, false);
+        journal.append(entry).get();
+        journal.confirm(entry);
+    }
+}
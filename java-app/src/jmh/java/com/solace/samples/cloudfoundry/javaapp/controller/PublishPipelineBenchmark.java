@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.TextMessage;
+import com.solacesystems.jcsmp.Topic;
+
+/**
+ * Compares the allocations of preparing a message to publish the way the
+ * controller used to (new Topic and TextMessage per request) with the
+ * PublishPipeline. Look at gc.alloc.rate.norm in the gc profiler output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublishPipelineBenchmark {
+
+    @Param({ "1", "1000" })
+    private int numTopics;
+
+    private String[] topicNames;
+    private String body;
+    private PublishPipeline publishPipeline;
+    private int nextTopic;
+
+    @Setup
+    public void setup() {
+        topicNames = new String[numTopics];
+        for (int i = 0; i < numTopics; i++) {
+            topicNames[i] = "benchmark/topic/" + i;
+        }
+        body = "TEST_MESSAGE";
+        publishPipeline = new PublishPipeline(numTopics);
+    }
+
+    private String nextTopicName() {
+        String topicName = topicNames[nextTopic];
+        nextTopic = (nextTopic + 1) % numTopics;
+        return topicName;
+    }
+
+    @Benchmark
+    public void createPerPublish(Blackhole blackhole) {
+        final Topic topic = JCSMPFactory.onlyInstance().createTopic(nextTopicName());
+        TextMessage msg = JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
+        msg.setText(body);
+        blackhole.consume(topic);
+        blackhole.consume(msg);
+    }
+
+    @Benchmark
+    public void publishPipeline(Blackhole blackhole) {
+        final Topic topic = publishPipeline.getTopic(nextTopicName());
+        TextMessage msg = publishPipeline.getTextMessage(body);
+        blackhole.consume(topic);
+        blackhole.consume(msg);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solace.samples.cloudfoundry.common.LastValueCache;
+import com.solace.samples.cloudfoundry.common.LatencyStamp;
+import com.solace.samples.cloudfoundry.common.MessageStats;
+import com.solace.samples.cloudfoundry.common.ReceivedMessageHistory;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.SDTException;
+import com.solacesystems.jcsmp.SDTMap;
+import com.solacesystems.jcsmp.TextMessage;
+
+/**
+ * The receive path of the controller: onReceive, which only hands the message
+ * over to the receive workers, and the work processReceivedMessage then does
+ * for every message. The components are sized with the controller defaults.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceivePathBenchmark {
+
+    private static final String TOPIC = "benchmark/topic";
+
+    @Param({ "64", "1024" })
+    private int payloadSize;
+
+    private MessageStats messageStats;
+    private LatencyStamp latencyStamp;
+    private ReceivedMessageHistory receivedMessageHistory;
+    private LastValueCache lastValueCache;
+    private ReceiveStage<TextMessage> receiveStage;
+    private TextMessage receivedMessage;
+
+    @Setup
+    public void setup() throws SDTException {
+        messageStats = new MessageStats(1, 100);
+        latencyStamp = new LatencyStamp(messageStats);
+        receivedMessageHistory = new ReceivedMessageHistory(4096, 2048);
+        lastValueCache = new LastValueCache(50000, 33554432);
+        receiveStage = new ReceiveStage<>("benchmark-receive", 8192, 1, ReceiveStage.WaitStrategy.BUSY_SPIN,
+                message -> { });
+
+        char[] text = new char[payloadSize];
+        Arrays.fill(text, 'x');
+        receivedMessage = JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
+        receivedMessage.setText(new String(text));
+        SDTMap properties = JCSMPFactory.onlyInstance().createMap();
+        properties.putString(LatencyStamp.SENDER_ID_PROPERTY, latencyStamp.getSenderId());
+        properties.putLong(LatencyStamp.SEND_NANOS_PROPERTY, System.nanoTime());
+        properties.putLong(LatencyStamp.SEND_TIME_MICROS_PROPERTY, LatencyStamp.currentTimeMicros());
+        receivedMessage.setProperties(properties);
+    }
+
+    @TearDown
+    public void tearDown() {
+        receiveStage.stop();
+    }
+
+    @Benchmark
+    public boolean onReceive() {
+        return receiveStage.offer(receivedMessage);
+    }
+
+    // The controller takes the topic from the destination of the message
+    @Benchmark
+    public void processReceivedMessage() throws SDTException {
+        messageStats.recordReceived(TOPIC);
+        SDTMap properties = receivedMessage.getProperties();
+        if (properties != null && properties.containsKey(LatencyStamp.SENDER_ID_PROPERTY)) {
+            latencyStamp.record(properties.getString(LatencyStamp.SENDER_ID_PROPERTY),
+                    properties.getLong(LatencyStamp.SEND_NANOS_PROPERTY),
+                    properties.getLong(LatencyStamp.SEND_TIME_MICROS_PROPERTY));
+        }
+
+        byte[] payload = receivedMessage.getText().getBytes(StandardCharsets.UTF_8);
+        long timestamp = System.currentTimeMillis();
+        receivedMessageHistory.add(TOPIC, payload, timestamp);
+        lastValueCache.put(TOPIC, payload, timestamp);
+    }
+}
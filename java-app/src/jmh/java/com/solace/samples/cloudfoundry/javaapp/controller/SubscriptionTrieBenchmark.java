@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.solace.samples.cloudfoundry.common.LoopbackBroker;
+
+/**
+ * Dispatching a received topic to the handlers of its subscriptions with the
+ * SubscriptionTrie, compared to testing every subscription in turn the way
+ * the loopback broker does. A quarter of the subscriptions are literal, the
+ * others end with >, use * for a level or end a level with a prefix and *.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionTrieBenchmark {
+
+    private static final int NUM_TENANTS = 1000;
+    private static final int NUM_TOPICS = 1024;
+
+    @Param({ "1000", "100000" })
+    private int numSubscriptions;
+
+    private List<String> subscriptions;
+    private SubscriptionTrie<String> subscriptionTrie;
+    private String[] topics;
+    private int nextTopic;
+
+    @Setup
+    public void setup() {
+        subscriptions = new ArrayList<>(numSubscriptions);
+        for (int i = 0; i < numSubscriptions; i++) {
+            int tenant = i % NUM_TENANTS;
+            switch (i % 4) {
+            case 0:
+                subscriptions.add("tenant/" + tenant + "/orders/" + i);
+                break;
+            case 1:
+                subscriptions.add("tenant/" + tenant + "/orders/" + i + "/>");
+                break;
+            case 2:
+                subscriptions.add("tenant/" + tenant + "/*/" + i);
+                break;
+            default:
+                subscriptions.add("tenant/" + tenant + "/ord*/" + i);
+                break;
+            }
+        }
+        subscriptionTrie = new SubscriptionTrie<>();
+        subscriptionTrie.update(changes -> subscriptions.forEach(subscription -> changes.add(subscription, subscription)));
+
+        // Half of the topics match some subscriptions, the others none
+        topics = new String[NUM_TOPICS];
+        for (int i = 0; i < NUM_TOPICS; i++) {
+            int subscription = (int) ((i * 7919L) % numSubscriptions);
+            topics[i] = "tenant/" + (subscription % NUM_TENANTS) + "/orders/"
+                    + (i % 2 == 0 ? subscription : numSubscriptions + i);
+        }
+    }
+
+    private String nextTopic() {
+        String topic = topics[nextTopic];
+        nextTopic = (nextTopic + 1) % NUM_TOPICS;
+        return topic;
+    }
+
+    @Benchmark
+    public Set<String> trie() {
+        return subscriptionTrie.match(nextTopic());
+    }
+
+    @Benchmark
+    public void linearScan(Blackhole blackhole) {
+        String topic = nextTopic();
+        for (String subscription : subscriptions) {
+            if (LoopbackBroker.matches(subscription, topic)) {
+                blackhole.consume(subscription);
+            }
+        }
+    }
+}
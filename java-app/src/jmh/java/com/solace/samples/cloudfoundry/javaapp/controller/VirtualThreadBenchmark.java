@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the blocking endpoints of the application with Tomcat on its
+ * pool of 200 threads and on virtual threads, with more requests in flight
+ * than the pool has threads.
+ *
+ * Every trial starts the bootJar in a process of its own with
+ * SOLACE_VIRTUAL_THREADS set accordingly, connected to the loopback broker,
+ * which confirms subscriptions and acknowledges messages after 5 ms:
+ *
+ * - subscribe: POST /subscription holds its thread until the subscription is
+ *   confirmed.
+ * - publish: POST /message of persistent messages through a publish window of
+ *   64, so most requests hold their thread until an acknowledgement frees a
+ *   slot in the window.
+ *
+ * The virtual threads only exist in a build with -PmodernJdk, where the
+ * benchmarks also run on that JDK.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class VirtualThreadBenchmark {
+
+    private static final int REQUESTS_PER_INVOCATION = 16384;
+    private static final int NUM_TOPICS = 4096;
+    private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    @Param({ "platform", "virtual" })
+    private String threads;
+
+    @Param({ "subscribe", "publish" })
+    private String endpoint;
+
+    // Requests in flight, well over the 200 threads of the Tomcat pool
+    @Param({ "1000" })
+    private int concurrency;
+
+    private Process application;
+    private String baseUrl;
+    private ExecutorService clients;
+    private final AtomicLong numFailed = new AtomicLong();
+
+    @Setup
+    public void setup() throws Exception {
+        String jar = System.getProperty("benchmark.jar");
+        if (jar == null || !new File(jar).isFile()) {
+            throw new IllegalStateException("No application jar, run through ./gradlew jmh");
+        }
+        if ("virtual".equals(threads) && !isModernJdk()) {
+            throw new IllegalStateException("Virtual threads need a build with -PmodernJdk");
+        }
+        // Keep a connection open for every client thread instead of the default 5
+        System.setProperty("http.maxConnections", Integer.toString(concurrency));
+
+        int port = findFreePort();
+        ProcessBuilder builder = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(), "-jar", jar);
+        Map<String, String> environment = builder.environment();
+        environment.remove("VCAP_SERVICES");
+        environment.put("SERVER_PORT", Integer.toString(port));
+        environment.put("SOLACE_SESSION_FACTORY", "loopback");
+        environment.put("SOLACE_LOOPBACK_ACK_LATENCY_MICROS", "5000");
+        environment.put("SOLACE_PUBLISH_WINDOW_SIZE", "64");
+        environment.put("SOLACE_VIRTUAL_THREADS", Boolean.toString("virtual".equals(threads)));
+        // The controller logs every request and every message received
+        environment.put("LOGGING_LEVEL_ROOT", "WARN");
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.appendTo(
+                new File(System.getProperty("java.io.tmpdir"), "benchmark-" + threads + ".log")));
+        application = builder.start();
+
+        baseUrl = "http://localhost:" + port;
+        try {
+            // Ready once connected, /status answers before that
+            awaitStarted(baseUrl + "/actuator/health/readiness");
+        } catch (Exception e) {
+            // JMH skips the tear down of a trial that failed to set up
+            application.destroyForcibly();
+            throw e;
+        }
+        clients = Executors.newFixedThreadPool(concurrency);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (clients != null) {
+            clients.shutdownNow();
+        }
+        if (application != null) {
+            application.destroy();
+            if (!application.waitFor(30, TimeUnit.SECONDS)) {
+                application.destroyForcibly();
+            }
+        }
+        if (numFailed.get() > 0) {
+            throw new IllegalStateException(numFailed.get() + " requests failed on " + threads + " threads");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS_PER_INVOCATION)
+    public void sendRequests() throws InterruptedException {
+        List<Callable<Void>> tasks = new ArrayList<>(concurrency);
+        for (int client = 0; client < concurrency; client++) {
+            final int first = client;
+            tasks.add(() -> {
+                for (int i = first; i < REQUESTS_PER_INVOCATION; i += concurrency) {
+                    sendRequest(i);
+                }
+                return null;
+            });
+        }
+        clients.invokeAll(tasks);
+    }
+
+    private void sendRequest(int i) {
+        String path;
+        String body;
+        if ("subscribe".equals(endpoint)) {
+            path = "/subscription";
+            body = "{\"subscription\": \"benchmark/" + (i % NUM_TOPICS) + "\"}";
+        } else {
+            path = "/message";
+            body = "{\"topic\": \"benchmark/topic\", \"body\": \"benchmark\", \"deliveryMode\": \"PERSISTENT\"}";
+        }
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+            if (connection.getResponseCode() != 200) {
+                numFailed.incrementAndGet();
+            }
+            // Read to the end so the connection goes back to the keep-alive cache
+            drain(connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream());
+        } catch (IOException e) {
+            numFailed.incrementAndGet();
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try (InputStream body = in) {
+            byte[] buffer = new byte[1024];
+            while (body.read(buffer) >= 0) {
+                // Only the status matters
+            }
+        }
+    }
+
+    private static boolean isModernJdk() {
+        String version = System.getProperty("java.specification.version");
+        return !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+    }
+
+    private static void awaitStarted(String readinessUrl) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(readinessUrl).openConnection();
+                try {
+                    if (connection.getResponseCode() == 200) {
+                        return;
+                    }
+                } finally {
+                    connection.disconnect();
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(250);
+        }
+        throw new IllegalStateException("The application did not start within " + STARTUP_TIMEOUT_MILLIS + " ms");
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessage;
+
+/**
+ * Tracks the guaranteed messages that were sent but not yet acknowledged by
+ * the broker.
+ *
+ * Every message is stamped with a correlation key before it is sent. The
+ * JCSMPStreamingPublishCorrelatingEventHandler of the producer hands that key
+ * back to acknowledge() or reject(), which completes the future returned by
+ * send(). The number of messages in flight is bounded by the window size.
+ *
+ * A message the broker neither acknowledges nor rejects within the
+ * acknowledgement timeout gives its slot back, and its future fails with a
+ * TimeoutException.
+ */
+public class GuaranteedPublishWindow {
+
+    // Expires the messages awaiting acknowledgement for too long
+    private static final ScheduledThreadPoolExecutor expiryScheduler = new ScheduledThreadPoolExecutor(1,
+            runnable -> {
+                Thread thread = new Thread(runnable, "solace-publish-window-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    static {
+        // Most messages are acknowledged long before they expire
+        expiryScheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    private final Semaphore slots;
+    private final long ackTimeoutMillis;
+    private final ConcurrentHashMap<Long, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong nextCorrelationKey = new AtomicLong();
+
+    public GuaranteedPublishWindow(int windowSize, long ackTimeoutMillis) {
+        this.slots = new Semaphore(Math.max(1, windowSize));
+        this.ackTimeoutMillis = ackTimeoutMillis;
+    }
+
+    // Waits up to timeoutMillis for room in the window. A successful reservation
+    // must be followed by a call to send().
+    public boolean reserve(long timeoutMillis) throws InterruptedException {
+        return slots.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Like reserve(), without waiting when the window is full
+    public boolean tryReserve() {
+        return slots.tryAcquire();
+    }
+
+    // Sends the message using a slot obtained from reserve(). The returned future
+    // completes once the broker acknowledges or rejects the message, or once it
+    // has waited for that longer than the acknowledgement timeout.
+    public CompletableFuture<Void> send(ProducerPool producerPool, XMLMessage msg, Topic topic) {
+        final Long correlationKey = nextCorrelationKey.incrementAndGet();
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        inFlight.put(correlationKey, future);
+        if (ackTimeoutMillis > 0) {
+            ScheduledFuture<?> expiry = expiryScheduler.schedule(() -> expire(correlationKey), ackTimeoutMillis,
+                    TimeUnit.MILLISECONDS);
+            future.whenComplete((ignored, e) -> expiry.cancel(false));
+        }
+
+        msg.setCorrelationKey(correlationKey);
+        try {
+            producerPool.send(msg, topic);
+        } catch (JCSMPException e) {
+            reject(correlationKey, e);
+        }
+        return future;
+    }
+
+    public void acknowledge(Object correlationKey) {
+        CompletableFuture<Void> future = release(correlationKey);
+        if (future != null) {
+            future.complete(null);
+        }
+    }
+
+    public void reject(Object correlationKey, JCSMPException cause) {
+        CompletableFuture<Void> future = release(correlationKey);
+        if (future != null) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    // An acknowledgement that still comes in afterwards is ignored
+    private void expire(Long correlationKey) {
+        CompletableFuture<Void> future = release(correlationKey);
+        if (future != null) {
+            future.completeExceptionally(new TimeoutException(
+                    "The broker did not acknowledge the message within " + ackTimeoutMillis + " ms"));
+        }
+    }
+
+    public int getNumInFlight() {
+        return inFlight.size();
+    }
+
+    private CompletableFuture<Void> release(Object correlationKey) {
+        // Direct messages and messages of other producers carry no key of ours
+        if (!(correlationKey instanceof Long)) {
+            return null;
+        }
+        CompletableFuture<Void> future = inFlight.remove(correlationKey);
+        if (future != null) {
+            slots.release();
+        }
+        return future;
+    }
+}
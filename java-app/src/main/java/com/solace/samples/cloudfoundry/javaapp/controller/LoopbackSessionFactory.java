@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import com.solace.samples.cloudfoundry.common.LoopbackBroker;
+import com.solacesystems.jcsmp.Context;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.SessionEventHandler;
+
+/**
+ * Creates the sessions of a LoopbackBroker, a broker that never leaves the
+ * JVM, so the controller can run, be benchmarked and load tested without a
+ * Solace PubSub+ service.
+ */
+public class LoopbackSessionFactory implements SessionFactory {
+
+    private final LoopbackBroker broker;
+
+    public LoopbackSessionFactory(long latencyMicros, long ackLatencyMicros, double ackFailureRate) {
+        this.broker = new LoopbackBroker(latencyMicros, ackLatencyMicros, ackFailureRate);
+    }
+
+    // The loopback sessions never reconnect, there are no events to give the handler
+    @Override
+    public JCSMPSession createSession(SessionEventHandler eventHandler) {
+        return broker.createSession();
+    }
+
+    // The loopback sessions have no I/O, they ignore the Context
+    @Override
+    public JCSMPSession createSession(Context context, SessionEventHandler eventHandler) {
+        return broker.createSession();
+    }
+}
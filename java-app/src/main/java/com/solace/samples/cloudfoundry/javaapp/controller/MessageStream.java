@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.solace.samples.cloudfoundry.javaapp.model.SimpleMessage;
+
+/**
+ * Publishes the newline delimited SimpleMessages of a request body as they are
+ * read, so a bulk load takes a single connection and is never held in memory
+ * as a whole.
+ *
+ * Records are decoded one at a time by a streaming parser over the input
+ * stream and handed to the sender straight away. The sender blocks while the
+ * producer has no room for another message, which stops the reads until there
+ * is, and TCP flow control then slows the client down. The summary completes
+ * once every message was sent and every guaranteed one acknowledged.
+ */
+public class MessageStream {
+
+    private static final Log logger = LogFactory.getLog(MessageStream.class);
+
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    public interface Sender {
+        // The future completes once the message is sent or, for a guaranteed one, acknowledged
+        CompletableFuture<Void> send(SimpleMessage message) throws Exception;
+    }
+
+    private final ObjectReader reader;
+    private final Sender sender;
+
+    private long numRecords;
+    private final LongAdder numSent = new LongAdder();
+    private final LongAdder numFailed = new LongAdder();
+    private volatile String lastError;
+    // Set when the stream could not be read to its end
+    private volatile boolean truncated;
+
+    // Messages awaiting completion, plus one for the reading itself
+    private final AtomicInteger numPending = new AtomicInteger(1);
+    private final CompletableFuture<JSONObject> summary = new CompletableFuture<>();
+
+    public MessageStream(ObjectMapper objectMapper, Sender sender) {
+        this.reader = objectMapper.readerFor(SimpleMessage.class);
+        this.sender = sender;
+    }
+
+    // Reads and publishes until the end of the stream, returns the summary to come
+    public CompletableFuture<JSONObject> ingest(InputStream in) {
+        try (MappingIterator<SimpleMessage> records = reader.readValues(in)) {
+            while (records.hasNextValue()) {
+                long index = numRecords++;
+                SimpleMessage message;
+                try {
+                    message = records.nextValue();
+                } catch (JsonMappingException e) {
+                    // Well formed but not a SimpleMessage, the iterator skips to the next record
+                    fail(index, e.getOriginalMessage());
+                    continue;
+                }
+                send(index, message);
+            }
+        } catch (IOException e) {
+            // Malformed JSON or a broken connection, there is no telling where the next record starts
+            logger.error("Reading the message stream failed after " + numRecords + " records.", e);
+            truncated = true;
+            lastError = e.getMessage();
+        }
+        complete();
+        return summary;
+    }
+
+    private void send(long index, SimpleMessage message) {
+        if (message == null || message.getTopic() == null || message.getTopic().isEmpty()) {
+            fail(index, "topic is missing");
+            return;
+        }
+
+        CompletableFuture<Void> sent;
+        try {
+            sent = sender.send(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(index, "interrupted while waiting to send");
+            return;
+        } catch (Exception e) {
+            fail(index, e.getMessage());
+            return;
+        }
+
+        numPending.incrementAndGet();
+        sent.whenComplete((ignored, e) -> {
+            if (e == null) {
+                numSent.increment();
+            } else {
+                fail(index, e.getMessage());
+            }
+            complete();
+        });
+    }
+
+    private void fail(long index, String error) {
+        numFailed.increment();
+        lastError = "record " + index + ": " + error;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Could not send " + lastError);
+        }
+    }
+
+    private void complete() {
+        if (numPending.decrementAndGet() > 0) {
+            return;
+        }
+        JSONObject summaryJson = new JSONObject();
+        summaryJson.put("numRecords", numRecords);
+        summaryJson.put("numMsgsSent", numSent.sum());
+        summaryJson.put("numMsgsFailed", numFailed.sum());
+        summaryJson.put("truncated", truncated);
+        if (lastError != null) {
+            summaryJson.put("lastError", lastError);
+        }
+        summary.complete(summaryJson);
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Keeps the messages of the PublishOutbox on disk, so the ones a request was
+ * answered for are still sent if the application restarts before the session
+ * is back.
+ *
+ * The journal is a series of memory-mapped segment files that are only ever
+ * appended to. Every message queued in the outbox is appended as an entry with
+ * the next sequence number, and a message counts as journaled once a flush has
+ * forced its segment to disk. A single thread does the flushing: whatever was
+ * appended while one flush ran goes to disk with the next one, so under load
+ * many messages share each fsync (group commit).
+ *
+ * Once the broker has a message, the outbox gave up on it, or it expired in
+ * the outbox, it is confirmed. A message that the outbox dropped as the
+ * session went down stays unconfirmed to be sent again after a restart. The
+ * journal records the sequence up to which every entry is confirmed, and
+ * deletes a segment once all its entries are. On startup the entries past the
+ * last recorded sequence are read back to be queued again. A message may
+ * therefore be sent twice, never lost, when the application stops between
+ * sending it and recording its confirmation.
+ *
+ * An entry that is not confirmed yet holds back the segments and the entries
+ * behind it, so appending fails once the segments would take more than the
+ * maximum number of bytes, and the outbox counts as full until they are
+ * deleted.
+ *
+ * Record layout: body length (4), CRC32 of the body (4), body. The body of an
+ * entry is: type (1), sequence (8), enqueued time millis (8), flags (1), topic
+ * length (4), topic bytes, payload bytes. The body of a confirmation is: type
+ * (1), sequence (8). A length of 0 ends a segment, and a record with a bad
+ * checksum ends it too, as it was torn by a crash.
+ */
+public class OutboxJournal implements MeterBinder {
+
+    private static final Log logger = LogFactory.getLog(OutboxJournal.class);
+
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int ENTRY_HEADER_BYTES = 22;
+    private static final int CONFIRMED_BYTES = 9;
+    // The length 0 after the last record
+    private static final int END_BYTES = 4;
+
+    private static final byte ENTRY_RECORD = 1;
+    private static final byte CONFIRMED_RECORD = 2;
+
+    private static final byte TEXT_FLAG = 1;
+    private static final byte PERSISTENT_FLAG = 2;
+
+    private static class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        // Sequence of the last entry of the segment, -1 while it has none
+        private long lastSequence = -1;
+
+        private Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+
+    // Guarded by this, the last segment is the one appended to
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final Set<Segment> unflushedSegments = new LinkedHashSet<>();
+    private final List<CompletableFuture<Void>> unflushed = new ArrayList<>();
+    // Entries in sequence order, up to the first one that is not confirmed yet
+    private final ArrayDeque<PublishOutbox.Entry> unconfirmed = new ArrayDeque<>();
+    private long nextSegmentNumber;
+    private long nextSequence;
+    private long confirmedSequence = -1;
+    private long journaledConfirmedSequence = -1;
+    private List<PublishOutbox.Entry> restored;
+
+    private final LongAdder numFlushes = new LongAdder();
+    private final LongAdder numFlushedEntries = new LongAdder();
+    private int numRestored;
+
+    // Replays the segments a previous run left in the directory, see takeRestored(). Appending
+    // fails while the segments take maxBytes or more.
+    public static OutboxJournal open(Path directory, int segmentBytes, long maxBytes) throws IOException {
+        OutboxJournal journal = new OutboxJournal(directory, segmentBytes, maxBytes);
+        synchronized (journal) {
+            journal.replay();
+        }
+        Thread flushThread = new Thread(journal::flush, "solace-outbox-journal");
+        flushThread.setDaemon(true);
+        flushThread.start();
+        return journal;
+    }
+
+    private OutboxJournal(Path directory, int segmentBytes, long maxBytes) {
+        this.directory = directory;
+        this.segmentBytes = Math.max(4096, segmentBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    // The entries a previous run left unconfirmed, in order, to queue again before anything else
+    public synchronized List<PublishOutbox.Entry> takeRestored() {
+        List<PublishOutbox.Entry> entries = restored;
+        restored = new ArrayList<>();
+        return entries;
+    }
+
+    // Appends the entry and returns a future completed once it is on disk. Only copies the entry
+    // into the mapped segment, the flush thread does the writing.
+    public synchronized CompletableFuture<Void> append(PublishOutbox.Entry entry) throws IOException {
+        byte[] topic = entry.getTopic().getBytes(StandardCharsets.UTF_8);
+        byte[] payload = entry.getPayload();
+        int bodyBytes = ENTRY_HEADER_BYTES + topic.length + payload.length;
+        Segment segment = reserve(bodyBytes, true);
+
+        long sequence = nextSequence++;
+        byte flags = (byte) ((entry.isText() ? TEXT_FLAG : 0) | (entry.isPersistent() ? PERSISTENT_FLAG : 0));
+        ByteBuffer buffer = segment.buffer;
+        int start = buffer.position();
+        ((Buffer) buffer).position(start + RECORD_HEADER_BYTES);
+        buffer.put(ENTRY_RECORD).putLong(sequence).putLong(entry.getEnqueuedMillis()).put(flags)
+                .putInt(topic.length).put(topic).put(payload);
+        finishRecord(buffer, start, bodyBytes);
+
+        segment.lastSequence = sequence;
+        entry.setJournalSequence(sequence);
+        unconfirmed.addLast(entry);
+        CompletableFuture<Void> journaled = new CompletableFuture<>();
+        unflushed.add(journaled);
+        notifyAll();
+        return journaled;
+    }
+
+    // The broker has the message, the outbox gave up on it or it expired there, it is not to be
+    // replayed any more
+    public synchronized void confirm(PublishOutbox.Entry entry) {
+        if (entry.getJournalSequence() < 0) {
+            return;
+        }
+        entry.setJournalConfirmed();
+        long sequence = confirmedSequence;
+        PublishOutbox.Entry head;
+        while ((head = unconfirmed.peekFirst()) != null && head.isJournalConfirmed()) {
+            sequence = unconfirmed.removeFirst().getJournalSequence();
+        }
+        if (sequence != confirmedSequence) {
+            confirmedSequence = sequence;
+            notifyAll();
+        }
+    }
+
+    private void replay() throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : paths) {
+                String name = path.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring " + path + ", it is not a segment of the outbox journal");
+                }
+            }
+        }
+
+        TreeMap<Long, PublishOutbox.Entry> entries = new TreeMap<>();
+        for (Map.Entry<Long, Path> file : files.entrySet()) {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file.getValue(), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            Segment segment = new Segment(file.getValue(), buffer);
+            readSegment(segment, entries);
+            segments.addLast(segment);
+            nextSegmentNumber = file.getKey() + 1;
+            nextSequence = Math.max(nextSequence, segment.lastSequence + 1);
+        }
+        nextSequence = Math.max(nextSequence, confirmedSequence + 1);
+        journaledConfirmedSequence = confirmedSequence;
+
+        restored = new ArrayList<>(entries.tailMap(confirmedSequence, false).values());
+        unconfirmed.addAll(restored);
+        numRestored = restored.size();
+        if (!files.isEmpty()) {
+            logger.info("Read " + files.size() + " segment(s) of the outbox journal, " + numRestored
+                    + " message(s) were not confirmed");
+        }
+
+        // Segments of a previous run are only read, appending starts on a new one
+        newSegment(0);
+        deleteConfirmedSegments(journaledConfirmedSequence);
+    }
+
+    private void readSegment(Segment segment, TreeMap<Long, PublishOutbox.Entry> entries) {
+        ByteBuffer buffer = segment.buffer;
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+            int start = buffer.position();
+            int bodyBytes = buffer.getInt();
+            if (bodyBytes <= 0 || bodyBytes > buffer.remaining() - 4) {
+                break;
+            }
+            int checksum = buffer.getInt();
+            ByteBuffer body = buffer.slice();
+            ((Buffer) body).limit(bodyBytes);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                logger.warn("Torn record at " + start + " of " + segment.path + ", ignoring the rest of the segment");
+                break;
+            }
+            ((Buffer) body).rewind();
+
+            byte type = body.get();
+            long sequence = body.getLong();
+            if (type == CONFIRMED_RECORD) {
+                confirmedSequence = Math.max(confirmedSequence, sequence);
+            } else if (type == ENTRY_RECORD) {
+                long enqueuedMillis = body.getLong();
+                byte flags = body.get();
+                byte[] topic = new byte[body.getInt()];
+                body.get(topic);
+                byte[] payload = new byte[body.remaining()];
+                body.get(payload);
+                PublishOutbox.Entry entry = new PublishOutbox.Entry(new String(topic, StandardCharsets.UTF_8),
+                        payload, (flags & TEXT_FLAG) != 0, (flags & PERSISTENT_FLAG) != 0, enqueuedMillis);
+                entry.setJournalSequence(sequence);
+                entries.put(sequence, entry);
+                segment.lastSequence = sequence;
+            }
+            ((Buffer) buffer).position(start + RECORD_HEADER_BYTES + bodyBytes);
+        }
+    }
+
+    // Returns the segment to append a record with a body of bodyBytes to, positioned where it goes.
+    // Only an entry is limited by the maximum, a confirmation is what lets segments be deleted.
+    private Segment reserve(int bodyBytes, boolean limited) throws IOException {
+        int recordBytes = RECORD_HEADER_BYTES + bodyBytes;
+        Segment segment = segments.peekLast();
+        if (segment.buffer.remaining() < recordBytes + END_BYTES) {
+            if (limited && getNumBytes() + Math.max(segmentBytes, recordBytes) > maxBytes) {
+                throw new IOException("The outbox journal is full, " + segments.size()
+                        + " segment(s) wait for their messages to be confirmed");
+            }
+            segment = newSegment(recordBytes);
+        }
+        unflushedSegments.add(segment);
+        return segment;
+    }
+
+    // Starts a segment with room for at least recordBytes, larger than usual if need be. It opens
+    // with the confirmed sequence, which must always be found in the last segment.
+    private Segment newSegment(int recordBytes) throws IOException {
+        long number = nextSegmentNumber++;
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        int confirmedRecordBytes = RECORD_HEADER_BYTES + CONFIRMED_BYTES;
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // The mapping outlives the channel, and a new file reads as zeros, which ends the segment
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(segmentBytes, confirmedRecordBytes + recordBytes + END_BYTES));
+        }
+        Segment segment = new Segment(path, buffer);
+        segments.addLast(segment);
+        unflushedSegments.add(segment);
+        appendConfirmed(segment, confirmedSequence);
+        return segment;
+    }
+
+    private void appendConfirmed(Segment segment, long sequence) {
+        ByteBuffer buffer = segment.buffer;
+        int start = buffer.position();
+        ((Buffer) buffer).position(start + RECORD_HEADER_BYTES);
+        buffer.put(CONFIRMED_RECORD).putLong(sequence);
+        finishRecord(buffer, start, CONFIRMED_BYTES);
+        journaledConfirmedSequence = sequence;
+    }
+
+    // The length goes in last, so a record is only ever read whole
+    private void finishRecord(ByteBuffer buffer, int start, int bodyBytes) {
+        ByteBuffer body = buffer.duplicate();
+        ((Buffer) body).position(start + RECORD_HEADER_BYTES);
+        ((Buffer) body).limit(start + RECORD_HEADER_BYTES + bodyBytes);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        buffer.putInt(start, bodyBytes);
+    }
+
+    private void flush() {
+        try {
+            while (true) {
+                List<CompletableFuture<Void>> flushed;
+                List<Segment> toForce;
+                long flushedConfirmedSequence;
+                synchronized (this) {
+                    while (unflushed.isEmpty() && confirmedSequence == journaledConfirmedSequence) {
+                        wait();
+                    }
+                    if (confirmedSequence != journaledConfirmedSequence) {
+                        try {
+                            Segment segment = reserve(CONFIRMED_BYTES, false);
+                            appendConfirmed(segment, confirmedSequence);
+                        } catch (IOException e) {
+                            // Only costs sending the confirmed messages again after a restart
+                            logger.error("Could not journal the confirmed messages.", e);
+                            journaledConfirmedSequence = confirmedSequence;
+                        }
+                    }
+                    flushed = new ArrayList<>(unflushed);
+                    unflushed.clear();
+                    toForce = new ArrayList<>(unflushedSegments);
+                    unflushedSegments.clear();
+                    flushedConfirmedSequence = journaledConfirmedSequence;
+                }
+
+                // Appending goes on meanwhile, into the next flush
+                RuntimeException failure = null;
+                for (Segment segment : toForce) {
+                    try {
+                        segment.buffer.force();
+                    } catch (RuntimeException e) {
+                        logger.error("Flushing " + segment.path + " failed.", e);
+                        failure = e;
+                    }
+                }
+                numFlushes.increment();
+                numFlushedEntries.add(flushed.size());
+                for (CompletableFuture<Void> journaled : flushed) {
+                    if (failure == null) {
+                        journaled.complete(null);
+                    } else {
+                        journaled.completeExceptionally(failure);
+                    }
+                }
+
+                synchronized (this) {
+                    deleteConfirmedSegments(flushedConfirmedSequence);
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.info("Stopped flushing the outbox journal");
+        }
+    }
+
+    // Deletes the oldest segments as long as all their entries are confirmed, never the last one.
+    // The space of a deleted segment is only given back once its mapping is garbage collected.
+    private void deleteConfirmedSegments(long sequence) {
+        while (segments.size() > 1 && segments.peekFirst().lastSequence <= sequence) {
+            Segment segment = segments.removeFirst();
+            unflushedSegments.remove(segment);
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                logger.error("Could not delete " + segment.path, e);
+            }
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized int getNumSegments() {
+        return segments.size();
+    }
+
+    public synchronized long getNumBytes() {
+        long numBytes = 0;
+        for (Segment segment : segments) {
+            numBytes += segment.buffer.capacity();
+        }
+        return numBytes;
+    }
+
+    // Messages journaled and neither sent nor given up on yet
+    public synchronized int getNumUnconfirmed() {
+        int numUnconfirmed = 0;
+        for (PublishOutbox.Entry entry : unconfirmed) {
+            if (!entry.isJournalConfirmed()) {
+                numUnconfirmed++;
+            }
+        }
+        return numUnconfirmed;
+    }
+
+    public synchronized int getNumRestored() {
+        return numRestored;
+    }
+
+    public long getNumFlushes() {
+        return numFlushes.sum();
+    }
+
+    // Divided by the number of flushes, how many messages share an fsync
+    public long getNumFlushedEntries() {
+        return numFlushedEntries.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("solace.outbox.journal.size", this, OutboxJournal::getNumBytes)
+                .baseUnit("bytes")
+                .description("Disk space taken by the segments of the outbox journal")
+                .register(registry);
+        Gauge.builder("solace.outbox.journal.segments", this, OutboxJournal::getNumSegments)
+                .description("Segments of the outbox journal")
+                .register(registry);
+        FunctionCounter.builder("solace.outbox.journal.flushes", this, OutboxJournal::getNumFlushes)
+                .description("Times the outbox journal was forced to disk")
+                .register(registry);
+        FunctionCounter.builder("solace.outbox.journal.flushed", this, OutboxJournal::getNumFlushedEntries)
+                .description("Messages made durable by the flushes of the outbox journal")
+                .register(registry);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.solacesystems.jcsmp.Context;
+import com.solacesystems.jcsmp.ContextProperties;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPSendMultipleEntry;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.JCSMPStreamingPublishEventHandler;
+import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessage;
+import com.solacesystems.jcsmp.XMLMessageProducer;
+
+/**
+ * Spreads publishing over several sessions, each with its own producer and
+ * its own Context, so more than one API I/O thread carries the load.
+ *
+ * A message is always published on the stripe picked by the hash of its topic
+ * name, which keeps the messages of one topic in order. The first stripe is
+ * the session the controller created for its consumer.
+ */
+public class ProducerPool {
+
+    // The shortest time over which getSendRate measures the send rate
+    private static final long SEND_RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Creates the session of an additional stripe within the given Context
+    public interface StripeSessionFactory {
+        JCSMPSession createSession(Context context) throws JCSMPException;
+    }
+
+    private static class Stripe {
+        private final JCSMPSession session;
+        private final XMLMessageProducer producer;
+        // Null for the first stripe, which runs in the default Context
+        private final Context context;
+
+        // Calls to send or sendMultiple currently in progress on this stripe
+        private final AtomicInteger numInFlightSends = new AtomicInteger();
+        private final LongAdder numSent = new LongAdder();
+
+        // The send rate over the last complete window, guarded by the stripe
+        private long lastNumSent;
+        private long lastSampleNanos = System.nanoTime();
+        private double sendRate;
+
+        private Stripe(JCSMPSession session, XMLMessageProducer producer, Context context) {
+            this.session = session;
+            this.producer = producer;
+            this.context = context;
+        }
+    }
+
+    // Replaced as a whole when a stripe is added, so publishers never need a lock
+    private volatile Stripe[] stripes;
+
+    public ProducerPool(JCSMPSession session, XMLMessageProducer producer) {
+        this.stripes = new Stripe[] { new Stripe(session, producer, null) };
+    }
+
+    public synchronized void addStripe(StripeSessionFactory sessionFactory,
+            JCSMPStreamingPublishEventHandler eventHandler) throws JCSMPException {
+        Context context = JCSMPFactory.onlyInstance().createContext(new ContextProperties());
+        JCSMPSession session = sessionFactory.createSession(context);
+        try {
+            session.connect();
+            XMLMessageProducer producer = session.getMessageProducer(eventHandler);
+
+            Stripe[] newStripes = Arrays.copyOf(stripes, stripes.length + 1);
+            newStripes[stripes.length] = new Stripe(session, producer, context);
+            stripes = newStripes;
+        } catch (JCSMPException e) {
+            session.closeSession();
+            context.destroy();
+            throw e;
+        }
+    }
+
+    public int getSize() {
+        return stripes.length;
+    }
+
+    public int getStripeIndex(String topicName) {
+        return (topicName.hashCode() & Integer.MAX_VALUE) % stripes.length;
+    }
+
+    public void send(XMLMessage msg, Topic topic) throws JCSMPException {
+        Stripe stripe = stripes[getStripeIndex(topic.getName())];
+        stripe.numInFlightSends.incrementAndGet();
+        try {
+            stripe.producer.send(msg, topic);
+            stripe.numSent.increment();
+        } finally {
+            stripe.numInFlightSends.decrementAndGet();
+        }
+    }
+
+    // All entries must have been assigned to the stripe by getStripeIndex
+    public int sendMultiple(int stripeIndex, JCSMPSendMultipleEntry[] entries, int offset, int length)
+            throws JCSMPException {
+        Stripe stripe = stripes[stripeIndex];
+        stripe.numInFlightSends.incrementAndGet();
+        try {
+            int numSent = stripe.producer.sendMultiple(entries, offset, length, 0);
+            stripe.numSent.add(numSent);
+            return numSent;
+        } finally {
+            stripe.numInFlightSends.decrementAndGet();
+        }
+    }
+
+    public int getNumInFlightSends(int stripeIndex) {
+        return stripes[stripeIndex].numInFlightSends.get();
+    }
+
+    public long getNumSent(int stripeIndex) {
+        return stripes[stripeIndex].numSent.sum();
+    }
+
+    // Messages per second sent on the stripe over the last window of at least
+    // SEND_RATE_WINDOW_NANOS, the same for every caller within that window
+    public double getSendRate(int stripeIndex) {
+        Stripe stripe = stripes[stripeIndex];
+        synchronized (stripe) {
+            long now = System.nanoTime();
+            long elapsedNanos = now - stripe.lastSampleNanos;
+            if (elapsedNanos >= SEND_RATE_WINDOW_NANOS) {
+                long numSent = stripe.numSent.sum();
+                stripe.sendRate = (numSent - stripe.lastNumSent) * 1e9 / elapsedNanos;
+                stripe.lastNumSent = numSent;
+                stripe.lastSampleNanos = now;
+            }
+            return stripe.sendRate;
+        }
+    }
+
+    public boolean isClosed(int stripeIndex) {
+        return stripes[stripeIndex].session.isClosed();
+    }
+
+    // Closes the stripes added to the first one, whose session belongs to the caller
+    public synchronized void close() {
+        for (int i = 1; i < stripes.length; i++) {
+            stripes[i].session.closeSession();
+            stripes[i].context.destroy();
+        }
+        stripes = Arrays.copyOf(stripes, 1);
+    }
+}
@@ -0,0 +1,520 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.solacesystems.jcsmp.JCSMPTransportException;
+import com.solacesystems.jcsmp.SessionEventArgs;
+import com.solacesystems.jcsmp.SessionEventHandler;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Holds the messages published while the sessions reconnect, typically during
+ * an HA failover, and sends them in order once the sessions are back, instead
+ * of failing the requests and having every caller retry at the same time.
+ *
+ * Every session the controller creates gets a handler from
+ * newSessionEventHandler(). From the RECONNECTING event of any of them until
+ * all of them are RECONNECTED, offer() queues the messages instead of letting
+ * them be sent. A send that fails on the transport before the event arrives is
+ * queued as well. Messages keep going to the queue for as long as it is not
+ * empty, so none overtakes an earlier one.
+ *
+ * A single thread drains the queue as soon as the sessions are back, sending
+ * back to back with none of the request handling in between. The queue is
+ * bounded in bytes, and a message that waited longer than the maximum age is
+ * dropped instead of being sent late. When a session gives up reconnecting,
+ * the queued messages are dropped and nothing is queued any more.
+ *
+ * A message the broker does not take goes to the back of the queue to be sent
+ * again, and is dropped once it failed MAX_SEND_ATTEMPTS times.
+ *
+ * With an OutboxJournal, the queued messages are also kept on disk. The ones
+ * a previous run left behind are queued first and sent once connected. Those
+ * dropped as a session gave up stay on disk for the next run.
+ */
+public class PublishOutbox implements MeterBinder {
+
+    private static final Log logger = LogFactory.getLog(PublishOutbox.class);
+
+    // Wait before trying again when the sessions are back but sending still fails on the transport
+    private static final long DRAIN_RETRY_MILLIS = 1000;
+    // Counted for every entry on top of its payload and topic
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    // A message the broker keeps rejecting, for example one it does not allow, is dropped after that
+    private static final int MAX_SEND_ATTEMPTS = 3;
+
+    public enum Outcome {
+        // The outbox is not in use, the message is to be sent right away
+        SEND,
+        QUEUED,
+        // No room left for the message
+        FULL
+    }
+
+    // Sends a message taken from the outbox, on the drain thread. The future completes once the
+    // broker has the message.
+    public interface Sender {
+        CompletableFuture<Void> send(Entry entry) throws Exception;
+    }
+
+    private static final CompletableFuture<Void> NOT_JOURNALED = CompletableFuture.completedFuture(null);
+
+    public static class Entry {
+        private final String topic;
+        private final byte[] payload;
+        private final boolean text;
+        private final boolean persistent;
+        private final long enqueuedMillis;
+        private final long enqueuedNanos;
+        // Guarded by the outbox
+        private int numFailedAttempts;
+
+        // Set when the entry is journaled, the sequence and confirmation are guarded by the journal
+        private long journalSequence = -1;
+        private boolean journalConfirmed;
+        private CompletableFuture<Void> journaled = NOT_JOURNALED;
+
+        // A text payload is carried in UTF-8
+        public Entry(String topic, byte[] payload, boolean text, boolean persistent) {
+            this(topic, payload, text, persistent, System.currentTimeMillis());
+        }
+
+        // An entry read back from the journal keeps the time it was first queued at
+        Entry(String topic, byte[] payload, boolean text, boolean persistent, long enqueuedMillis) {
+            this.topic = topic;
+            this.payload = payload;
+            this.text = text;
+            this.persistent = persistent;
+            this.enqueuedMillis = enqueuedMillis;
+            this.enqueuedNanos = System.nanoTime()
+                    - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - enqueuedMillis);
+        }
+
+        public static Entry text(String topic, String text, boolean persistent) {
+            return new Entry(topic, text.getBytes(StandardCharsets.UTF_8), true, persistent);
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public String getText() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+
+        public boolean isText() {
+            return text;
+        }
+
+        public boolean isPersistent() {
+            return persistent;
+        }
+
+        public long getEnqueuedMillis() {
+            return enqueuedMillis;
+        }
+
+        // Only meaningful within this JVM, for the publish latency of the message
+        public long getEnqueuedNanos() {
+            return enqueuedNanos;
+        }
+
+        // Completes once the entry is on disk, right away without a journal
+        public CompletableFuture<Void> getJournaled() {
+            return journaled;
+        }
+
+        long getJournalSequence() {
+            return journalSequence;
+        }
+
+        void setJournalSequence(long journalSequence) {
+            this.journalSequence = journalSequence;
+        }
+
+        boolean isJournalConfirmed() {
+            return journalConfirmed;
+        }
+
+        void setJournalConfirmed() {
+            this.journalConfirmed = true;
+        }
+
+        private long getSize() {
+            return ENTRY_OVERHEAD_BYTES + payload.length + 2L * topic.length();
+        }
+    }
+
+    // Whether a session is reconnecting, changed under the lock of the outbox
+    private static class SessionState {
+        private boolean reconnecting;
+    }
+
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final OutboxJournal journal;
+
+    // Guarded by this
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private long numBytes;
+    private int numReconnecting;
+    private boolean down;
+    // Until then the messages a previous run left in the journal wait
+    private boolean connected;
+    private long reconnectStartNanos;
+    private long reconnectNanos;
+
+    // Set whenever messages have to go through the queue, read without the lock on every publish
+    private volatile boolean engaged;
+
+    private final LongAdder numQueued = new LongAdder();
+    private final LongAdder numDrained = new LongAdder();
+    private final LongAdder numExpired = new LongAdder();
+    private final LongAdder numRejected = new LongAdder();
+    private final LongAdder numFailed = new LongAdder();
+    private final LongAdder numReconnects = new LongAdder();
+
+    private Thread drainThread;
+
+    // A maximum of 0 bytes disables the outbox
+    public PublishOutbox(long maxBytes, long maxAgeMillis) {
+        this(maxBytes, maxAgeMillis, null);
+    }
+
+    // Queues what a previous run left in the journal first, even beyond the maximum
+    public PublishOutbox(long maxBytes, long maxAgeMillis, OutboxJournal journal) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxAgeMillis = Math.max(1, maxAgeMillis);
+        this.journal = journal;
+        if (journal != null) {
+            List<Entry> restored = journal.takeRestored();
+            for (Entry entry : restored) {
+                entries.addLast(entry);
+                numBytes += entry.getSize();
+            }
+            engaged = !entries.isEmpty();
+        }
+    }
+
+    public synchronized void start(Sender sender) {
+        if (drainThread != null) {
+            throw new IllegalStateException("The outbox was already started");
+        }
+        drainThread = new Thread(() -> drain(sender), "solace-outbox-drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    // A handler for one more session, the outbox holds the messages while any of them reconnects
+    public SessionEventHandler newSessionEventHandler() {
+        final SessionState state = new SessionState();
+        return (SessionEventArgs event) -> {
+            switch (event.getEvent()) {
+            case RECONNECTING:
+                setReconnecting(state, true);
+                break;
+            case RECONNECTED:
+                setReconnecting(state, false);
+                break;
+            case DOWN_ERROR:
+                setReconnecting(state, false);
+                setDown(event.getInfo());
+                break;
+            default:
+                break;
+            }
+        };
+    }
+
+    // The sessions are connected, the messages restored from the journal can go
+    public synchronized void setConnected() {
+        connected = true;
+        notifyAll();
+    }
+
+    // Cheap enough for every publish, a message goes to offer() first only when this is true
+    public boolean isEngaged() {
+        return engaged;
+    }
+
+    // Whether the failure of a send means the session is reconnecting, so the message can be queued
+    public static boolean isReconnectFailure(Throwable e) {
+        return e instanceof JCSMPTransportException;
+    }
+
+    // Queues the message if the outbox is in use, or if sending it just failed with a reconnect failure
+    public synchronized Outcome offer(Entry entry, boolean sendFailed) {
+        if (down || maxBytes == 0 || (!sendFailed && !engaged)) {
+            return Outcome.SEND;
+        }
+        expire();
+        long size = entry.getSize();
+        if (numBytes + size > maxBytes) {
+            numRejected.increment();
+            return Outcome.FULL;
+        }
+        if (journal != null) {
+            try {
+                entry.journaled = journal.append(entry);
+            } catch (IOException e) {
+                logger.error("Could not journal the message, the outbox counts as full.", e);
+                numRejected.increment();
+                return Outcome.FULL;
+            }
+        }
+        entries.addLast(entry);
+        numBytes += size;
+        numQueued.increment();
+        engaged = true;
+        notifyAll();
+        return Outcome.QUEUED;
+    }
+
+    private synchronized void setReconnecting(SessionState state, boolean reconnecting) {
+        if (state.reconnecting == reconnecting) {
+            return;
+        }
+        state.reconnecting = reconnecting;
+        if (reconnecting) {
+            if (numReconnecting++ == 0) {
+                reconnectStartNanos = System.nanoTime();
+                numReconnects.increment();
+                engaged = !down && maxBytes > 0;
+                logger.info("Session reconnecting, holding published messages in the outbox");
+            }
+        } else if (--numReconnecting == 0) {
+            reconnectNanos += System.nanoTime() - reconnectStartNanos;
+            engaged = !entries.isEmpty();
+            logger.info("Sessions reconnected after "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - reconnectStartNanos) + " ms, draining "
+                    + entries.size() + " message(s) from the outbox");
+            notifyAll();
+        }
+    }
+
+    private synchronized void setDown(String info) {
+        logger.error("Session gave up reconnecting (" + info + "), dropping the " + entries.size()
+                + " message(s) of the outbox");
+        down = true;
+        numFailed.add(entries.size());
+        // Only from memory, the journal replays them after a restart
+        entries.clear();
+        numBytes = 0;
+        engaged = false;
+    }
+
+    // Drops the messages at the head of the queue that are too old to be sent, they are the oldest ones
+    private void expire() {
+        long oldestAllowedMillis = System.currentTimeMillis() - maxAgeMillis;
+        Entry head;
+        while ((head = entries.peekFirst()) != null && head.enqueuedMillis < oldestAllowedMillis) {
+            release(removeFirst());
+            numExpired.increment();
+        }
+    }
+
+    private Entry removeFirst() {
+        Entry entry = entries.removeFirst();
+        numBytes -= entry.getSize();
+        if (entries.isEmpty() && numReconnecting == 0) {
+            engaged = false;
+        }
+        return entry;
+    }
+
+    // The broker has the entry, or it expired, the journal need not replay it any more
+    private void release(Entry entry) {
+        if (journal != null) {
+            journal.confirm(entry);
+        }
+    }
+
+    // The broker did not take the entry, it is queued again unless it failed too often. Giving up on
+    // it confirms it, so the journal does not hold back the entries behind it any longer.
+    private synchronized void retry(Entry entry, Throwable cause) {
+        if (down) {
+            // Only from memory, as in setDown()
+            numFailed.increment();
+            return;
+        }
+        if (++entry.numFailedAttempts < MAX_SEND_ATTEMPTS) {
+            logger.warn("Sending from the outbox failed (" + cause + "), queuing the message again");
+            entries.addLast(entry);
+            numBytes += entry.getSize();
+            engaged = true;
+            notifyAll();
+            return;
+        }
+        logger.error("Sending from the outbox failed " + MAX_SEND_ATTEMPTS + " times, dropping the message.", cause);
+        numFailed.increment();
+        release(entry);
+    }
+
+    private void drain(Sender sender) {
+        try {
+            while (true) {
+                Entry entry;
+                synchronized (this) {
+                    while (!connected || numReconnecting > 0 || entries.isEmpty()) {
+                        wait();
+                    }
+                    expire();
+                    entry = entries.peekFirst();
+                    if (entry == null) {
+                        continue;
+                    }
+                }
+
+                // Left at the head while it is sent, so messages offered meanwhile queue up behind it
+                CompletableFuture<Void> sent;
+                try {
+                    sent = sender.send(entry);
+                    numDrained.increment();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    if (isReconnectFailure(e)) {
+                        logger.error("Sending from the outbox failed, trying again in " + DRAIN_RETRY_MILLIS + " ms", e);
+                        synchronized (this) {
+                            wait(DRAIN_RETRY_MILLIS);
+                        }
+                        continue;
+                    }
+                    sent = new CompletableFuture<>();
+                    sent.completeExceptionally(e);
+                }
+                synchronized (this) {
+                    if (entries.peekFirst() == entry) {
+                        removeFirst();
+                    }
+                }
+                sent.whenComplete((ignored, e) -> {
+                    if (e == null) {
+                        release(entry);
+                    } else {
+                        retry(entry, e);
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            logger.info("Stopped draining the outbox");
+        }
+    }
+
+    // Null when the outbox is only kept in memory
+    public OutboxJournal getJournal() {
+        return journal;
+    }
+
+    public synchronized int getDepth() {
+        return entries.size();
+    }
+
+    public synchronized long getNumBytes() {
+        return numBytes;
+    }
+
+    public synchronized boolean isReconnecting() {
+        return numReconnecting > 0;
+    }
+
+    // Time spent reconnecting so far, including the reconnect in progress
+    public synchronized long getReconnectNanos() {
+        return reconnectNanos + (numReconnecting > 0 ? System.nanoTime() - reconnectStartNanos : 0);
+    }
+
+    public long getNumReconnects() {
+        return numReconnects.sum();
+    }
+
+    public long getNumQueued() {
+        return numQueued.sum();
+    }
+
+    public long getNumDrained() {
+        return numDrained.sum();
+    }
+
+    public long getNumExpired() {
+        return numExpired.sum();
+    }
+
+    public long getNumRejected() {
+        return numRejected.sum();
+    }
+
+    public long getNumFailed() {
+        return numFailed.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("solace.outbox.depth", this, PublishOutbox::getDepth)
+                .description("Messages waiting in the outbox")
+                .register(registry);
+        Gauge.builder("solace.outbox.size", this, PublishOutbox::getNumBytes)
+                .baseUnit("bytes")
+                .description("Memory taken by the messages waiting in the outbox")
+                .register(registry);
+        FunctionCounter.builder("solace.reconnect.time", this, outbox -> outbox.getReconnectNanos() / 1e9)
+                .baseUnit("seconds")
+                .description("Time spent with a session reconnecting")
+                .register(registry);
+        FunctionCounter.builder("solace.reconnects", this, PublishOutbox::getNumReconnects)
+                .description("Times the sessions started reconnecting")
+                .register(registry);
+        bindCounter(registry, "queued", "Messages queued in the outbox", PublishOutbox::getNumQueued);
+        bindCounter(registry, "drained", "Messages sent from the outbox", PublishOutbox::getNumDrained);
+        bindCounter(registry, "expired", "Messages dropped from the outbox for their age", PublishOutbox::getNumExpired);
+        bindCounter(registry, "rejected", "Messages refused by the full outbox", PublishOutbox::getNumRejected);
+        bindCounter(registry, "failed", "Messages of the outbox that could not be sent", PublishOutbox::getNumFailed);
+        if (journal != null) {
+            journal.bindTo(registry);
+        }
+    }
+
+    private void bindCounter(MeterRegistry registry, String outcome, String description,
+            ToDoubleFunction<PublishOutbox> count) {
+        FunctionCounter.builder("solace.outbox.messages", this, count)
+                .tags("outcome", outcome)
+                .description(description)
+                .register(registry);
+    }
+}
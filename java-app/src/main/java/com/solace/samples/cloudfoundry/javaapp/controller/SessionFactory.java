@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import com.solacesystems.jcsmp.Context;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.SessionEventHandler;
+
+/**
+ * Creates the sessions the controller connects with: SolaceSessionFactory for
+ * the Solace PubSub+ service, LoopbackSessionFactory for a broker that never
+ * leaves the JVM. SOLACE_SESSION_FACTORY picks one.
+ */
+public interface SessionFactory {
+
+    // The event handler is told when the session reconnects or goes down for good
+    JCSMPSession createSession(SessionEventHandler eventHandler) throws JCSMPException;
+
+    // A session within its own Context, for the additional producer stripes
+    JCSMPSession createSession(Context context, SessionEventHandler eventHandler) throws JCSMPException;
+}
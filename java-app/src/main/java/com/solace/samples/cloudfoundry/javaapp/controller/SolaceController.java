@@ -19,34 +19,76 @@
 
 package com.solace.samples.cloudfoundry.javaapp.controller;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.AntPathMatcher;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.solace.samples.cloudfoundry.common.LastValueCache;
+import com.solace.samples.cloudfoundry.common.LatencyStamp;
+import com.solace.samples.cloudfoundry.common.MessagePush;
+import com.solace.samples.cloudfoundry.common.MessageStats;
+import com.solace.samples.cloudfoundry.common.ReceivedMessageHistory;
+import com.solace.samples.cloudfoundry.common.SharedSubscriptions;
+import com.solace.samples.cloudfoundry.javaapp.model.LoadTestRequest;
 import com.solace.samples.cloudfoundry.javaapp.model.SimpleMessage;
 import com.solace.samples.cloudfoundry.javaapp.model.SimpleSubscription;
+import com.solacesystems.jcsmp.BytesMessage;
 import com.solacesystems.jcsmp.BytesXMLMessage;
+import com.solacesystems.jcsmp.DeliveryMode;
 import com.solacesystems.jcsmp.JCSMPChannelProperties;
 import com.solacesystems.jcsmp.JCSMPException;
 import com.solacesystems.jcsmp.JCSMPFactory;
 import com.solacesystems.jcsmp.JCSMPProperties;
+import com.solacesystems.jcsmp.JCSMPSendMultipleEntry;
 import com.solacesystems.jcsmp.JCSMPSession;
-import com.solacesystems.jcsmp.JCSMPStreamingPublishEventHandler;
+import com.solacesystems.jcsmp.JCSMPStreamingPublishCorrelatingEventHandler;
+import com.solacesystems.jcsmp.SDTException;
+import com.solacesystems.jcsmp.SDTMap;
 import com.solacesystems.jcsmp.TextMessage;
 import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessage;
 import com.solacesystems.jcsmp.XMLMessageConsumer;
 import com.solacesystems.jcsmp.XMLMessageListener;
 import com.solacesystems.jcsmp.XMLMessageProducer;
@@ -56,9 +98,53 @@ public class SolaceController {
 
     private static final Log logger = LogFactory.getLog(SolaceController.class);
 
-    private JCSMPSession session;
-    private XMLMessageProducer producer;
-    private TextMessage lastReceivedMessage;
+    // The most received messages returned by a single GET /messages
+    private static final int MAX_HISTORY_PAGE_SIZE = 1000;
+
+    // The most entries a single XMLMessageProducer.sendMultiple call accepts
+    private static final int MAX_SEND_MULTIPLE_ENTRIES = 50;
+
+    // The largest publisher acknowledgement window the API supports
+    private static final int MAX_PUB_ACK_WINDOW_SIZE = 255;
+
+    // How long a client is asked to wait when the outbox has no room for its message
+    private static final long OUTBOX_FULL_RETRY_AFTER_SECONDS = 1;
+    // And when the window of guaranteed messages awaiting acknowledgement is full
+    private static final long PUBLISH_WINDOW_FULL_RETRY_AFTER_SECONDS = 1;
+
+    // Set by the connector thread, before it reports the connection as ready
+    private volatile JCSMPSession session;
+    private volatile XMLMessageProducer producer;
+    private volatile ProducerPool producerPool;
+
+    @Autowired
+    private BackgroundConnector solaceConnector;
+
+    private ReceivedMessageHistory receivedMessageHistory;
+
+    // Number of received messages kept, and the space each of them may take
+    @Value("${SOLACE_MESSAGE_HISTORY_SIZE:4096}")
+    private int messageHistorySize;
+    @Value("${SOLACE_MESSAGE_HISTORY_ENTRY_MAX_BYTES:2048}")
+    private int messageHistoryEntryMaxBytes;
+
+    private LastValueCache lastValueCache;
+
+    // Bounds of the cache holding the last message received on each topic
+    @Value("${SOLACE_LAST_VALUE_CACHE_MAX_TOPICS:50000}")
+    private int lastValueCacheMaxTopics;
+    @Value("${SOLACE_LAST_VALUE_CACHE_MAX_BYTES:33554432}")
+    private long lastValueCacheMaxBytes;
+
+    private PublishPipeline publishPipeline;
+
+    // Upper bound of the number of Topics kept for reuse by the publish path
+    @Value("${SOLACE_TOPIC_CACHE_SIZE:10000}")
+    private int topicCacheSize;
+
+    // The largest body POST /message/{topic} accepts, the service rejects larger messages anyway
+    @Value("${SOLACE_MAX_BINARY_PAYLOAD_BYTES:31457280}")
+    private int maxBinaryPayloadBytes;
 
     // Optionally provided LDAP_CLIENTUSERNAME
     @Value("${ldap.clientUsername:}")
@@ -78,19 +164,161 @@ public class SolaceController {
     @Value("${SOLACE_CHANNEL_PROPERTIES_CONNECT_RETRIES_PER_HOST:20}")
     private int connectRetriesPerHost;
 
+    // Number of messages handed to each sendMultiple call by POST /messages
+    @Value("${SOLACE_SEND_MULTIPLE_CHUNK_SIZE:50}")
+    private int sendMultipleChunkSize;
+
+    // Guaranteed messages that may be awaiting a broker acknowledgement at once, and how long a
+    // message stream waits for room in that window. POST /message never waits, it is answered 503.
+    // A message not acknowledged within that time either gives its room back and fails.
+    @Value("${SOLACE_PUBLISH_WINDOW_SIZE:255}")
+    private int publishWindowSize;
+    @Value("${SOLACE_PUBLISH_WINDOW_TIMEOUT_IN_MILLIS:1000}")
+    private long publishWindowTimeoutInMillis;
+
+    private GuaranteedPublishWindow publishWindow;
+
+    // Memory the messages published while the session reconnects may take, 0 to fail them right
+    // away instead, and how long they may wait before they are dropped rather than sent late
+    @Value("${SOLACE_OUTBOX_MAX_BYTES:16777216}")
+    private long outboxMaxBytes;
+    @Value("${SOLACE_OUTBOX_MAX_AGE_IN_MILLIS:30000}")
+    private long outboxMaxAgeInMillis;
+
+    // Where to keep the outbox on disk so it survives a restart, empty to keep it in memory only,
+    // the size of each file of the journal and the disk space all of them may take
+    @Value("${SOLACE_OUTBOX_JOURNAL_DIR:}")
+    private String outboxJournalDir;
+    @Value("${SOLACE_OUTBOX_JOURNAL_SEGMENT_BYTES:16777216}")
+    private int outboxJournalSegmentBytes;
+    @Value("${SOLACE_OUTBOX_JOURNAL_MAX_BYTES:268435456}")
+    private long outboxJournalMaxBytes;
+
+    private PublishOutbox publishOutbox;
+
+    // Number of sessions publishing is spread over, each with its own producer and I/O thread
+    @Value("${SOLACE_PRODUCER_POOL_SIZE:1}")
+    private int producerPoolSize;
+
+    // "loopback" connects to an in-memory broker instead of the Solace PubSub+ service
+    private static final String LOOPBACK_SESSION_FACTORY = "loopback";
+    @Value("${SOLACE_SESSION_FACTORY:solace}")
+    private String sessionFactoryType;
+    @Value("${SOLACE_LOOPBACK_LATENCY_MICROS:0}")
+    private long loopbackLatencyMicros;
+    @Value("${SOLACE_LOOPBACK_ACK_LATENCY_MICROS:0}")
+    private long loopbackAckLatencyMicros;
+    @Value("${SOLACE_LOOPBACK_ACK_FAILURE_RATE:0}")
+    private double loopbackAckFailureRate;
+
+    private ReceiveStage<BytesXMLMessage> receiveStage;
+
+    // Only there on a modern JDK, where the receive workers run on virtual threads
+    @Autowired(required = false)
+    @Qualifier("receiveThreadFactory")
+    private ThreadFactory receiveThreadFactory;
+
+    // Ring buffer between the API dispatch thread and the workers processing received messages
+    @Value("${SOLACE_RECEIVE_BUFFER_SIZE:8192}")
+    private int receiveBufferSize;
+    @Value("${SOLACE_RECEIVE_WORKERS:1}")
+    private int receiveWorkers;
+    // One of BUSY_SPIN, YIELD or PARK
+    @Value("${SOLACE_RECEIVE_WAIT_STRATEGY:PARK}")
+    private String receiveWaitStrategy;
+
     // Stats
-    private final AtomicInteger numMessagesReceived = new AtomicInteger();
-    private final AtomicInteger numMessagesSent = new AtomicInteger();
+    private MessageStats messageStats;
+
+    // Topics are counted per prefix made of their first levels, up to a maximum number of prefixes
+    @Value("${SOLACE_STATS_TOPIC_PREFIX_LEVELS:1}")
+    private int statsTopicPrefixLevels;
+    @Value("${SOLACE_STATS_MAX_TOPIC_PREFIXES:100}")
+    private int statsMaxTopicPrefixes;
+
+    private LatencyStamp latencyStamp;
+
+    // Stamp sent messages so the receiver can measure their end-to-end latency. Off by default, the stamp is a
+    // map of properties allocated for every message, on publish paths that otherwise allocate nothing.
+    @Value("${SOLACE_STAMP_LATENCY:false}")
+    private boolean stampLatency;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MessagePush messagePush;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // The handler of each subscription added through the REST API, guarded by itself, and the
+    // trie the received messages are dispatched to them with
+    private final Map<String, SubscriptionHandler> subscriptionHandlers = new HashMap<>();
+    private final SubscriptionTrie<SubscriptionHandler> subscriptionDispatch = new SubscriptionTrie<>();
+    // Received messages that matched none of them, they only got through a wildcard the subscriptions were merged into
+    private final LongAdder numUnmatchedReceived = new LongAdder();
+
+    // Works out the subscriptions the broker needs for the ones added through the REST API, guarded by itself
+    // while its changes are applied to the broker
+    private SubscriptionAggregator subscriptionAggregator;
+    // Merge the subscriptions that only differ in their last level into a wildcard beyond this many, 0 never merges
+    @Value("${SOLACE_SUBSCRIPTION_MERGE_THRESHOLD:0}")
+    private int subscriptionMergeThreshold;
+
+    private SharedSubscriptions sharedSubscriptions;
+
+    // Share the subscriptions between the instances of the application, each message goes to only one of them.
+    // The group defaults to the Cloud Foundry application name.
+    @Value("${SOLACE_SHARED_SUBSCRIPTIONS:false}")
+    private boolean sharedSubscriptionsEnabled;
+    @Value("${SOLACE_SHARED_SUBSCRIPTION_GROUP:${vcap.application.name:}}")
+    private String sharedSubscriptionGroup;
+    @Value("${CF_INSTANCE_INDEX:0}")
+    private String instanceIndex;
+
+    // Load tests started by POST /loadtest, the oldest ones are forgotten
+    private static final int MAX_LOAD_TESTS = 20;
+    // How long a client may keep watching a load test after its end
+    private static final long LOAD_TEST_STREAM_GRACE_MILLIS = 30000;
+    private final Map<String, LoadTest> loadTests = Collections.synchronizedMap(new LinkedHashMap<String, LoadTest>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LoadTest> eldest) {
+            return size() > MAX_LOAD_TESTS;
+        }
+    });
+
+    // Handles the messages received on one subscription, whichever other subscriptions they match
+    private static class SubscriptionHandler {
+        private final LongAdder numReceived = new LongAdder();
+
+        private void handle(BytesXMLMessage receivedMessage) {
+            numReceived.increment();
+        }
+    }
+
+    private class SimplePublisherEventHandler implements JCSMPStreamingPublishCorrelatingEventHandler {
+        @Override
+        public void responseReceivedEx(Object correlationKey) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Producer received response for msg: " + correlationKey);
+            }
+            publishWindow.acknowledge(correlationKey);
+        }
 
-    private class SimplePublisherEventHandler implements JCSMPStreamingPublishEventHandler {
+        @Override
+        public void handleErrorEx(Object correlationKey, JCSMPException e, long timestamp) {
+            logger.error("Producer received error for msg: " + correlationKey + " - " + timestamp, e);
+            publishWindow.reject(correlationKey, e);
+        }
+
+        // Superseded by the correlating callbacks above
         @Override
         public void responseReceived(String messageID) {
-            logger.info("Producer received response for msg: " + messageID);
         }
 
         @Override
         public void handleError(String messageID, JCSMPException e, long timestamp) {
-            logger.error("Producer received error for msg: " + messageID + " - " + timestamp, e);
         }
 
     }
@@ -99,15 +327,8 @@ public class SolaceController {
 
         @Override
         public void onReceive(BytesXMLMessage receivedMessage) {
-
-            numMessagesReceived.incrementAndGet();
-
-            if (receivedMessage instanceof TextMessage) {
-                lastReceivedMessage = (TextMessage) receivedMessage;
-                logger.info("Received message : " + lastReceivedMessage.getText());
-            } else {
-                logger.error("Received message that was not a TextMessage: " + receivedMessage.dump());
-            }
+            // Only hand the message over, it is processed by the receive workers
+            receiveStage.offer(receivedMessage);
         }
 
         @Override
@@ -116,12 +337,116 @@ public class SolaceController {
         }
     }
 
+    // Runs on a receive worker for every message handed over by the SimpleMessageListener
+    private void processReceivedMessage(BytesXMLMessage receivedMessage) {
+
+        String topic = receivedMessage.getDestination().getName();
+        Set<SubscriptionHandler> handlers = subscriptionDispatch.match(topic);
+        if (handlers.isEmpty()) {
+            // Only let through by a wildcard the subscriptions were merged into, nobody subscribed to the topic
+            numUnmatchedReceived.increment();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Dropped the message received on " + topic + ", it matches none of the subscriptions");
+            }
+            return;
+        }
+
+        // Counted once it is known to be for one of the subscriptions, dropped messages only count as unmatched
+        messageStats.recordReceived(topic);
+        recordEndToEndLatency(receivedMessage);
+
+        byte[] payload;
+        if (receivedMessage instanceof TextMessage) {
+            String text = ((TextMessage) receivedMessage).getText();
+            payload = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            logger.info("Received message : " + text);
+        } else if (receivedMessage instanceof BytesMessage) {
+            // Kept as the bytes received, never decoded
+            byte[] data = ((BytesMessage) receivedMessage).getData();
+            payload = data != null ? data : new byte[0];
+            logger.info("Received binary message of " + payload.length + " bytes");
+        } else {
+            logger.error("Received message that was neither a TextMessage nor a BytesMessage: " + receivedMessage.dump());
+            return;
+        }
+        for (SubscriptionHandler handler : handlers) {
+            handler.handle(receivedMessage);
+        }
+        sharedSubscriptions.recordReceived();
+
+        long timestamp = System.currentTimeMillis();
+        long sequence = receivedMessageHistory.add(topic, payload, timestamp);
+        lastValueCache.put(topic, payload, timestamp);
+        messagePush.publish(sequence, topic, payload, timestamp);
+    }
+
+    private void stampLatency(XMLMessage msg) {
+        if (!stampLatency) {
+            return;
+        }
+        SDTMap properties = JCSMPFactory.onlyInstance().createMap();
+        try {
+            properties.putString(LatencyStamp.SENDER_ID_PROPERTY, latencyStamp.getSenderId());
+            properties.putLong(LatencyStamp.SEND_NANOS_PROPERTY, System.nanoTime());
+            properties.putLong(LatencyStamp.SEND_TIME_MICROS_PROPERTY, LatencyStamp.currentTimeMicros());
+        } catch (SDTException e) {
+            logger.error("Could not stamp the message with its send time.", e);
+            return;
+        }
+        msg.setProperties(properties);
+    }
+
+    private void recordEndToEndLatency(BytesXMLMessage receivedMessage) {
+        SDTMap properties = receivedMessage.getProperties();
+        if (properties == null || !properties.containsKey(LatencyStamp.SENDER_ID_PROPERTY)) {
+            return;
+        }
+        try {
+            latencyStamp.record(properties.getString(LatencyStamp.SENDER_ID_PROPERTY),
+                    properties.getLong(LatencyStamp.SEND_NANOS_PROPERTY),
+                    properties.getLong(LatencyStamp.SEND_TIME_MICROS_PROPERTY));
+        } catch (SDTException e) {
+            logger.error("Could not read the send time of the received message.", e);
+        }
+    }
+
     @PostConstruct
     public void init() {
 
         // Connect to Solace
         logger.info("************* Init Called ************");
 
+        receivedMessageHistory = new ReceivedMessageHistory(messageHistorySize, messageHistoryEntryMaxBytes);
+        lastValueCache = new LastValueCache(lastValueCacheMaxTopics, lastValueCacheMaxBytes);
+        messageStats = new MessageStats(statsTopicPrefixLevels, statsMaxTopicPrefixes);
+        messageStats.bindTo(meterRegistry);
+        latencyStamp = new LatencyStamp(messageStats);
+
+        publishPipeline = new PublishPipeline(topicCacheSize);
+        receiveStage = new ReceiveStage<>("solace-receive", receiveBufferSize, receiveWorkers,
+                ReceiveStage.WaitStrategy.valueOf(receiveWaitStrategy.toUpperCase()), this::processReceivedMessage,
+                receiveThreadFactory);
+        publishWindow = new GuaranteedPublishWindow(publishWindowSize, publishWindowTimeoutInMillis);
+        subscriptionAggregator = new SubscriptionAggregator(subscriptionMergeThreshold);
+        sharedSubscriptions = new SharedSubscriptions(sharedSubscriptionsEnabled, sharedSubscriptionGroup,
+                instanceIndex);
+        sharedSubscriptions.bindTo(meterRegistry);
+        if (sharedSubscriptions.isEnabled()) {
+            logger.info("Sharing the subscriptions in group " + sharedSubscriptions.getGroup() + " as instance "
+                    + sharedSubscriptions.getInstanceIndex());
+        }
+        publishOutbox = new PublishOutbox(outboxMaxBytes, outboxMaxAgeInMillis, openOutboxJournal());
+        publishOutbox.bindTo(meterRegistry);
+        publishOutbox.start(this::sendFromOutbox);
+
+        if (LOOPBACK_SESSION_FACTORY.equalsIgnoreCase(sessionFactoryType)) {
+            logger.info("Connecting to an in-memory loopback broker instead of Solace PubSub+");
+            SessionFactory loopbackSessionFactory = new LoopbackSessionFactory(loopbackLatencyMicros,
+                    loopbackAckLatencyMicros, loopbackAckFailureRate);
+            solaceConnector.start(() -> connect(loopbackSessionFactory));
+            return;
+        }
+
         String vcapServices = System.getenv("VCAP_SERVICES");
         logger.info(vcapServices);
 
@@ -129,6 +454,7 @@ public class SolaceController {
         if (vcapServices == null || vcapServices.equals("") || vcapServices.equals("{}")) {
             logger.error("The VCAP_SERVICES variable wasn't set in the environment. Aborting connection.");
             logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("The VCAP_SERVICES variable wasn't set in the environment");
             return;
         }
 
@@ -139,6 +465,7 @@ public class SolaceController {
         if (solMessagingArray == null) {
             logger.error("Did not find Solace provided messaging service \"solace-pubsub\"");
             logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Did not find Solace provided messaging service \"solace-pubsub\"");
             return;
         }
 
@@ -156,6 +483,7 @@ public class SolaceController {
         if (solaceCredentials == null) {
             logger.error("Did not find Solace PubSub+ service credentials");
             logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Did not find Solace PubSub+ service credentials");
             return;
         }
 
@@ -186,6 +514,10 @@ public class SolaceController {
 
         properties.setProperty(JCSMPProperties.HOST, host);
 
+        // Let the API keep as many guaranteed messages unacknowledged as the publish window allows
+        properties.setProperty(JCSMPProperties.PUB_ACK_WINDOW_SIZE,
+                Math.max(1, Math.min(publishWindowSize, MAX_PUB_ACK_WINDOW_SIZE)));
+
         // Must be using HA to have more than 1 host.
         if (hostsArray.length() > 1) {
 
@@ -213,66 +545,515 @@ public class SolaceController {
         } else {
             logger.error("Did not find credentials to use, Neither Solace PubSub+ provided credentials (clientUsername, clientPassword), nor LDAP provided credentials (LDAP_CLIENTUSERNAME , LDAP_CLIENTPASSWORD) ");
             logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Did not find credentials to use");
             return;
         }
 
+        // Startup goes on while the connector thread connects, see BackgroundConnector
+        SessionFactory solaceSessionFactory = new SolaceSessionFactory(properties);
+        solaceConnector.start(() -> connect(solaceSessionFactory));
+    }
+
+    // Replays what a previous run left in the journal, the outbox sends it once connected
+    private OutboxJournal openOutboxJournal() {
+        if (outboxJournalDir.isEmpty() || outboxMaxBytes <= 0) {
+            return null;
+        }
         try {
-            session = JCSMPFactory.onlyInstance().createSession(properties);
-            session.connect();
-        } catch (Exception e) {
-            logger.error("Error connecting and setting up session.", e);
-            logger.info("************* Aborting Solace initialization!! ************");
-            return;
+            OutboxJournal outboxJournal = OutboxJournal.open(Paths.get(outboxJournalDir), outboxJournalSegmentBytes,
+                    outboxJournalMaxBytes);
+            logger.info("Journaling the outbox in " + outboxJournal.getDirectory() + ", "
+                    + outboxJournal.getNumRestored() + " message(s) restored");
+            return outboxJournal;
+        } catch (IOException e) {
+            logger.error("Could not open the outbox journal in " + outboxJournalDir
+                    + ", the outbox is kept in memory only.", e);
+            return null;
         }
+    }
 
+    // Connects the session the controller consumes with and the producer stripes. Runs on the
+    // connector thread, which tries again when this throws, so nothing opened is left behind.
+    private void connect(SessionFactory sessionFactory) throws Exception {
+        JCSMPSession newSession = sessionFactory.createSession(publishOutbox.newSessionEventHandler());
+        ProducerPool newProducerPool = null;
         try {
-            final XMLMessageConsumer cons = session.getMessageConsumer(new SimpleMessageListener());
+            newSession.connect();
+
+            final XMLMessageConsumer cons = newSession.getMessageConsumer(new SimpleMessageListener());
             cons.start();
 
-            producer = session.getMessageProducer(new SimplePublisherEventHandler());
+            final SimplePublisherEventHandler publisherEventHandler = new SimplePublisherEventHandler();
+            XMLMessageProducer newProducer = newSession.getMessageProducer(publisherEventHandler);
 
-            logger.info("************* Solace initialized correctly!! ************");
+            // The session above is the first stripe, add the others the same way
+            newProducerPool = new ProducerPool(newSession, newProducer);
+            for (int i = 1; i < producerPoolSize; i++) {
+                newProducerPool.addStripe(
+                        context -> sessionFactory.createSession(context, publishOutbox.newSessionEventHandler()),
+                        publisherEventHandler);
+            }
+            logger.info("Publishing over " + newProducerPool.getSize() + " session(s)");
+
+            session = newSession;
+            producer = newProducer;
+            producerPool = newProducerPool;
+            publishOutbox.setConnected();
         } catch (Exception e) {
-            logger.error("Error creating the consumer and producer.", e);
+            if (newProducerPool != null) {
+                newProducerPool.close();
+            }
+            newSession.closeSession();
+            throw e;
         }
+        logger.info("************* Solace initialized correctly!! ************");
     }
 
     @RequestMapping(value = "/message", method = RequestMethod.POST)
-    public ResponseEntity<String> sendMessage(@RequestBody SimpleMessage message) {
+    public DeferredResult<ResponseEntity<String>> sendMessage(@RequestBody SimpleMessage message) {
+
+        // A guaranteed message is not waited on for longer than the publish window holds on to it
+        final boolean persistent = SimpleMessage.PERSISTENT.equalsIgnoreCase(message.getDeliveryMode());
+        final DeferredResult<ResponseEntity<String>> result = persistent
+                ? new DeferredResult<>(publishWindowTimeoutInMillis, ackTimeoutResponse())
+                : new DeferredResult<>();
+
+        // While the session reconnects the message waits in the outbox, even if the session looks closed
+        if (publishOutbox.isEngaged()) {
+            CompletableFuture<ResponseEntity<String>> queued = queueInOutbox(
+                    PublishOutbox.Entry.text(message.getTopic(), message.getBody(), persistent), false);
+            if (queued != null) {
+                queued.thenAccept(result::setResult);
+                return result;
+            }
+        }
 
         if (session == null || session.isClosed()) {
             logger.error("Session was null or closed, Could not send message");
+            result.setResult(new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST));
+            return result;
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Sending " + message.getDeliveryMode() + " message on topic: " + message.getTopic()
+                    + " with body: " + message.getBody());
+        }
+
+        final Topic topic = publishPipeline.getTopic(message.getTopic());
+
+        if (persistent) {
+            sendGuaranteedMessage(message, topic, result);
+            return result;
+        }
+
+        TextMessage msg = publishPipeline.getTextMessage(message.getBody());
+        stampLatency(msg);
+        try {
+            long publishStartNanos = System.nanoTime();
+            producerPool.send(msg, topic);
+            messageStats.recordSent(message.getTopic(), System.nanoTime() - publishStartNanos);
+
+        } catch (JCSMPException e) {
+            CompletableFuture<ResponseEntity<String>> queued = PublishOutbox.isReconnectFailure(e)
+                    ? queueInOutbox(PublishOutbox.Entry.text(message.getTopic(), message.getBody(), false), true)
+                    : null;
+            if (queued != null) {
+                queued.thenAccept(result::setResult);
+                return result;
+            }
+            logger.error("Sending message failed.", e);
+            result.setResult(new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST));
+            return result;
+        }
+        result.setResult(new ResponseEntity<>("{}", HttpStatus.OK));
+        return result;
+    }
+
+    // Queues the message in the outbox while the session reconnects, or when sending it just failed
+    // because of a reconnect. Returns the response to give, once the message is journaled if the
+    // outbox is, or null when it must be sent after all.
+    private CompletableFuture<ResponseEntity<String>> queueInOutbox(PublishOutbox.Entry entry, boolean sendFailed) {
+        switch (publishOutbox.offer(entry, sendFailed)) {
+        case QUEUED:
+            return entry.getJournaled().handle((ignored, e) -> {
+                if (e != null) {
+                    // Still sent once the session is back, unless the application restarts first
+                    logger.error("Journaling the message failed.", e);
+                    return new ResponseEntity<>("{'description': 'Queued until the session has reconnected, but not journaled'}",
+                            HttpStatus.ACCEPTED);
+                }
+                return new ResponseEntity<>("{'description': 'Queued until the session has reconnected'}",
+                        HttpStatus.ACCEPTED);
+            });
+        case FULL:
+            logger.error("The outbox is full while the session reconnects, Could not send message");
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(OUTBOX_FULL_RETRY_AFTER_SECONDS))
+                    .body("{'description': 'The session is reconnecting and the outbox is full, try again later'}"));
+        default:
+            return null;
+        }
+    }
+
+    // Runs on the drain thread of the outbox, for each of its messages in order. Returns a future
+    // completed once the broker has the message.
+    private CompletableFuture<Void> sendFromOutbox(PublishOutbox.Entry entry) throws Exception {
+        final Topic topic = publishPipeline.getTopic(entry.getTopic());
+        final long enqueuedNanos = entry.getEnqueuedNanos();
+
+        if (entry.isPersistent()) {
+            // Waits for room in the window as long as it takes, the messages behind this one wait too
+            while (!publishWindow.reserve(publishWindowTimeoutInMillis)) {
+                logger.info("Too many guaranteed messages awaiting acknowledgement, the outbox waits");
+            }
+            TextMessage msg = createGuaranteedMessage(entry.getText());
+            CompletableFuture<Void> sent = publishWindow.send(producerPool, msg, topic);
+            // Rejected right away when the send itself failed, which leaves the message in the outbox
+            try {
+                sent.getNow(null);
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            return sent.whenComplete((ignored, e) -> {
+                if (e == null) {
+                    messageStats.recordSent(entry.getTopic(), System.nanoTime() - enqueuedNanos);
+                } else {
+                    logger.error("Sending guaranteed message from the outbox failed.", e);
+                }
+            });
+        }
+
+        XMLMessage msg;
+        if (entry.isText()) {
+            msg = publishPipeline.getTextMessage(entry.getText());
+        } else {
+            BytesMessage bytesMessage = JCSMPFactory.onlyInstance().createMessage(BytesMessage.class);
+            bytesMessage.setData(entry.getPayload());
+            msg = bytesMessage;
+        }
+        stampLatency(msg);
+        producerPool.send(msg, topic);
+        // The publish latency of a message from the outbox includes the time it waited there
+        messageStats.recordSent(entry.getTopic(), System.nanoTime() - enqueuedNanos);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // Sends a persistent message and completes the result once the broker acknowledges it,
+    // without holding the request thread while waiting. A full window is answered right away.
+    private void sendGuaranteedMessage(SimpleMessage message, Topic topic,
+            final DeferredResult<ResponseEntity<String>> result) {
+
+        if (!publishWindow.tryReserve()) {
+            logger.error("Too many guaranteed messages awaiting acknowledgement, Could not send message");
+            result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(PUBLISH_WINDOW_FULL_RETRY_AFTER_SECONDS))
+                    .body("{'description': 'Too many messages awaiting acknowledgement, try again later'}"));
+            return;
+        }
+
+        TextMessage msg = createGuaranteedMessage(message.getBody());
+
+        // The publish latency of a guaranteed message runs until the broker acknowledges it
+        final long publishStartNanos = System.nanoTime();
+        publishWindow.send(producerPool, msg, topic).whenComplete((ignored, e) -> {
+            CompletableFuture<ResponseEntity<String>> queued = e != null && PublishOutbox.isReconnectFailure(e)
+                    ? queueInOutbox(PublishOutbox.Entry.text(message.getTopic(), message.getBody(), true), true)
+                    : null;
+            if (e == null) {
+                messageStats.recordSent(message.getTopic(), System.nanoTime() - publishStartNanos);
+                result.setResult(new ResponseEntity<>("{}", HttpStatus.OK));
+            } else if (queued != null) {
+                queued.thenAccept(result::setResult);
+            } else if (e instanceof TimeoutException) {
+                logger.error("Sending guaranteed message failed.", e);
+                result.setResult(ackTimeoutResponse());
+            } else {
+                logger.error("Sending guaranteed message failed.", e);
+                result.setResult(new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST));
+            }
+        });
+    }
+
+    private static ResponseEntity<String> ackTimeoutResponse() {
+        return new ResponseEntity<>("{'description': 'The message was not acknowledged in time'}",
+                HttpStatus.GATEWAY_TIMEOUT);
+    }
+
+    private TextMessage createGuaranteedMessage(String body) {
+        // The API holds on to a guaranteed message until it is acknowledged, so it cannot be reused
+        TextMessage msg = JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
+        msg.setText(body);
+        msg.setDeliveryMode(DeliveryMode.PERSISTENT);
+        stampLatency(msg);
+        return msg;
+    }
+
+    @RequestMapping(value = "/messages", method = RequestMethod.POST)
+    public ResponseEntity<String> sendMessages(@RequestBody List<SimpleMessage> messages) {
+
+        if (session == null || session.isClosed()) {
+            logger.error("Session was null or closed, Could not send messages");
             return new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
                     HttpStatus.BAD_REQUEST);
         }
 
-        logger.info("Sending message on topic: " + message.getTopic() + " with body: " + message.getBody());
+        logger.info("Sending a batch of " + messages.size() + " messages");
+
+        // Never hand sendMultiple more than it accepts in a single call
+        int chunkSize = Math.max(1, Math.min(sendMultipleChunkSize, MAX_SEND_MULTIPLE_ENTRIES));
+
+        // Entries are collected per producer stripe so the messages of a topic stay in order
+        int numStripes = producerPool.getSize();
+        JCSMPSendMultipleEntry[][] entries = new JCSMPSendMultipleEntry[numStripes][chunkSize];
+        // Position in the request of each entry waiting in a stripe's chunk
+        int[][] entryIndexes = new int[numStripes][chunkSize];
+        int[] numEntries = new int[numStripes];
+
+        JSONObject[] results = new JSONObject[messages.size()];
+        int numSent = 0;
+
+        for (int i = 0; i < messages.size(); i++) {
+            SimpleMessage message = messages.get(i);
+
+            // Reject entries that cannot be turned into a message
+            int stripeIndex;
+            try {
+                final Topic topic = publishPipeline.getTopic(message.getTopic());
+                // sendMultiple needs a distinct message per entry
+                TextMessage msg = JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
+                msg.setText(message.getBody());
+                stampLatency(msg);
+                stripeIndex = producerPool.getStripeIndex(topic.getName());
+                entries[stripeIndex][numEntries[stripeIndex]] = JCSMPFactory.onlyInstance().createSendMultipleEntry(msg, topic);
+                entryIndexes[stripeIndex][numEntries[stripeIndex]] = i;
+                numEntries[stripeIndex]++;
+            } catch (RuntimeException e) {
+                logger.error("Could not create a message for batch entry " + i, e);
+                results[i] = batchResult(i, message, e.getMessage());
+                continue;
+            }
 
-        final Topic topic = JCSMPFactory.onlyInstance().createTopic(message.getTopic());
-        TextMessage msg = JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
-        msg.setText(message.getBody());
+            if (numEntries[stripeIndex] == chunkSize) {
+                numSent += sendChunk(stripeIndex, entries[stripeIndex], entryIndexes[stripeIndex], chunkSize, messages, results);
+                numEntries[stripeIndex] = 0;
+            }
+        }
+
+        // Send what is left over on every stripe
+        for (int stripeIndex = 0; stripeIndex < numStripes; stripeIndex++) {
+            if (numEntries[stripeIndex] > 0) {
+                numSent += sendChunk(stripeIndex, entries[stripeIndex], entryIndexes[stripeIndex], numEntries[stripeIndex],
+                        messages, results);
+            }
+        }
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("numMsgsSent", numSent);
+        responseJson.put("numMsgsFailed", messages.size() - numSent);
+        responseJson.put("results", new JSONArray(results));
+
+        // A partially sent batch is reported as such, the results tell which entries failed
+        HttpStatus status = HttpStatus.OK;
+        if (numSent == 0 && !messages.isEmpty()) {
+            status = HttpStatus.BAD_REQUEST;
+        } else if (numSent < messages.size()) {
+            status = HttpStatus.MULTI_STATUS;
+        }
+        return new ResponseEntity<>(responseJson.toString(), status);
+    }
+
+    // Sends one chunk of a batch on a producer stripe and records the result of each of its entries
+    private int sendChunk(int stripeIndex, JCSMPSendMultipleEntry[] entries, int[] entryIndexes, int numEntries,
+            List<SimpleMessage> messages, JSONObject[] results) {
+
+        // sendMultiple reports how many entries were accepted, send the remainder until done
+        int numEntriesSent = 0;
+        String error = null;
+        long publishStartNanos = System.nanoTime();
+        try {
+            while (numEntriesSent < numEntries) {
+                int accepted = producerPool.sendMultiple(stripeIndex, entries, numEntriesSent, numEntries - numEntriesSent);
+                if (accepted <= 0) {
+                    error = "The producer did not accept any more messages";
+                    break;
+                }
+                numEntriesSent += accepted;
+            }
+        } catch (JCSMPException e) {
+            logger.error("Sending a batch of messages failed.", e);
+            error = e.getMessage();
+        }
+
+        // Every message of the chunk waited for the whole chunk to be sent
+        long publishLatencyNanos = System.nanoTime() - publishStartNanos;
+        for (int n = 0; n < numEntries; n++) {
+            int i = entryIndexes[n];
+            results[i] = batchResult(i, messages.get(i), n < numEntriesSent ? null : error);
+            if (n < numEntriesSent) {
+                messageStats.recordSent(messages.get(i).getTopic(), publishLatencyNanos);
+            }
+        }
+        return numEntriesSent;
+    }
+
+    private JSONObject batchResult(int index, SimpleMessage message, String error) {
+        JSONObject resultJson = new JSONObject();
+        resultJson.put("index", index);
+        resultJson.put("topic", message.getTopic());
+        resultJson.put("sent", error == null);
+        if (error != null) {
+            resultJson.put("description", error);
+        }
+        return resultJson;
+    }
+
+    // Publishes newline delimited messages as they are read from a single long-lived request
+    @RequestMapping(value = "/messages/stream", method = RequestMethod.POST, consumes = MessageStream.MEDIA_TYPE)
+    public DeferredResult<ResponseEntity<String>> sendMessageStream(HttpServletRequest request) {
+
+        final DeferredResult<ResponseEntity<String>> result = new DeferredResult<>();
+
+        if (session == null || session.isClosed()) {
+            logger.error("Session was null or closed, Could not send messages");
+            result.setResult(new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST));
+            return result;
+        }
+
+        InputStream in;
+        try {
+            in = request.getInputStream();
+        } catch (IOException e) {
+            logger.error("Reading the message stream failed.", e);
+            result.setResult(new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST));
+            return result;
+        }
+
+        logger.info("Sending a stream of messages");
+        new MessageStream(objectMapper, this::sendStreamedMessage).ingest(in).thenAccept(summaryJson -> {
+            logger.info("Finished sending a stream of messages: " + summaryJson);
+
+            // Reported like a batch, a stream that was partially sent or cut short is not a success
+            long numRecords = summaryJson.getLong("numRecords");
+            long numSent = summaryJson.getLong("numMsgsSent");
+            HttpStatus status = HttpStatus.OK;
+            if (numSent == 0 && (numRecords > 0 || summaryJson.getBoolean("truncated"))) {
+                status = HttpStatus.BAD_REQUEST;
+            } else if (numSent < numRecords || summaryJson.getBoolean("truncated")) {
+                status = HttpStatus.MULTI_STATUS;
+            }
+            result.setResult(new ResponseEntity<>(summaryJson.toString(), status));
+        });
+        return result;
+    }
+
+    // Blocks while the producer, or the window of guaranteed messages, has no room for the message,
+    // which stops the stream from being read any further until there is.
+    private CompletableFuture<Void> sendStreamedMessage(SimpleMessage message) throws Exception {
+        final Topic topic = publishPipeline.getTopic(message.getTopic());
+
+        if (SimpleMessage.PERSISTENT.equalsIgnoreCase(message.getDeliveryMode())) {
+            if (!publishWindow.reserve(publishWindowTimeoutInMillis)) {
+                throw new IllegalStateException("Too many messages awaiting acknowledgement");
+            }
+            TextMessage msg = createGuaranteedMessage(message.getBody());
+            final long publishStartNanos = System.nanoTime();
+            return publishWindow.send(producerPool, msg, topic).thenRun(
+                    () -> messageStats.recordSent(message.getTopic(), System.nanoTime() - publishStartNanos));
+        }
+
+        TextMessage msg = publishPipeline.getTextMessage(message.getBody());
+        stampLatency(msg);
+        long publishStartNanos = System.nanoTime();
+        producerPool.send(msg, topic);
+        messageStats.recordSent(message.getTopic(), System.nanoTime() - publishStartNanos);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // Publishes the request body as is in a BytesMessage, without going through a String
+    @RequestMapping(value = "/message/**", method = RequestMethod.POST, consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public DeferredResult<ResponseEntity<String>> sendBinaryMessage(HttpServletRequest request) {
+
+        final DeferredResult<ResponseEntity<String>> result = new DeferredResult<>();
+
+        String topicName = getTopicFromPath(request);
+        if (topicName.isEmpty()) {
+            result.setResult(new ResponseEntity<>("{'description': 'The topic is missing from the path'}",
+                    HttpStatus.BAD_REQUEST));
+            return result;
+        }
+
+        BytesMessage msg;
+        try {
+            msg = publishPipeline.getBytesMessage(request.getInputStream(), request.getContentLengthLong(),
+                    maxBinaryPayloadBytes);
+        } catch (IOException e) {
+            logger.error("Reading the message body failed.", e);
+            result.setResult(new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST));
+            return result;
+        }
+        if (msg == null) {
+            result.setResult(new ResponseEntity<>("{'description': 'The message body is larger than "
+                    + maxBinaryPayloadBytes + " bytes'}", HttpStatus.PAYLOAD_TOO_LARGE));
+            return result;
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Sending binary message on topic: " + topicName);
+        }
+
+        // While the session reconnects the message waits in the outbox, even if the session looks closed
+        if (publishOutbox.isEngaged()) {
+            CompletableFuture<ResponseEntity<String>> queued = queueInOutbox(
+                    new PublishOutbox.Entry(topicName, msg.getData(), false, false), false);
+            if (queued != null) {
+                queued.thenAccept(result::setResult);
+                return result;
+            }
+        }
+
+        if (session == null || session.isClosed()) {
+            logger.error("Session was null or closed, Could not send message");
+            result.setResult(new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST));
+            return result;
+        }
+
+        stampLatency(msg);
         try {
-            producer.send(msg, topic);
-            numMessagesSent.incrementAndGet();
+            long publishStartNanos = System.nanoTime();
+            producerPool.send(msg, publishPipeline.getTopic(topicName));
+            messageStats.recordSent(topicName, System.nanoTime() - publishStartNanos);
 
         } catch (JCSMPException e) {
+            CompletableFuture<ResponseEntity<String>> queued = PublishOutbox.isReconnectFailure(e)
+                    ? queueInOutbox(new PublishOutbox.Entry(topicName, msg.getData(), false, false), true)
+                    : null;
+            if (queued != null) {
+                queued.thenAccept(result::setResult);
+                return result;
+            }
             logger.error("Sending message failed.", e);
-            return new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST);
+            result.setResult(new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST));
+            return result;
         }
-        return new ResponseEntity<>("{}", HttpStatus.OK);
+        result.setResult(new ResponseEntity<>("{}", HttpStatus.OK));
+        return result;
     }
 
     @RequestMapping(value = "/message", method = RequestMethod.GET)
     public ResponseEntity<SimpleMessage> getLastMessageReceived() {
 
+        ReceivedMessageHistory.Entry lastReceivedMessage = receivedMessageHistory.getLatest();
         if (lastReceivedMessage != null) {
             logger.info("Sending the lastReceivedMessage");
 
             // Return the last received message if it exists.
             SimpleMessage receivedMessage = new SimpleMessage();
 
-            receivedMessage.setTopic(lastReceivedMessage.getDestination().getName());
-            receivedMessage.setBody(lastReceivedMessage.getText());
+            receivedMessage.setTopic(lastReceivedMessage.getTopic());
+            receivedMessage.setBody(new String(lastReceivedMessage.getPayload(), StandardCharsets.UTF_8));
             return new ResponseEntity<>(receivedMessage, HttpStatus.OK);
         } else {
             logger.info("Sorry did not find a lastReceivedMessage");
@@ -281,19 +1062,120 @@ public class SolaceController {
 
     }
 
+    // Pushes every message received on a topic starting with topicPrefix as a server-sent event
+    @RequestMapping(value = "/message/stream", method = RequestMethod.GET)
+    public ResponseEntity<SseEmitter> streamReceivedMessages(
+            @RequestParam(value = "topicPrefix", defaultValue = "") String topicPrefix,
+            @RequestParam(value = "overflow", defaultValue = "") String overflow) {
+
+        MessagePush.OverflowPolicy overflowPolicy;
+        try {
+            overflowPolicy = messagePush.getOverflowPolicy(overflow);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        // Kept open until the client goes away
+        SseEmitter emitter = new SseEmitter(0L);
+        MessagePush.Client client = messagePush.subscribe(topicPrefix, overflowPolicy, new MessagePush.Sink() {
+            @Override
+            public void send(String messageJson) throws IOException {
+                emitter.send(SseEmitter.event().name("message").data(messageJson, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        });
+        if (client == null) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        emitter.onCompletion(client::close);
+        emitter.onTimeout(client::close);
+        emitter.onError(e -> client.close());
+        return new ResponseEntity<>(emitter, HttpStatus.OK);
+    }
+
+    // Topics contain '/', so the topic is everything in the path after /message/
+    @RequestMapping(value = "/message/**", method = RequestMethod.GET)
+    public ResponseEntity<SimpleMessage> getLastMessageReceivedOnTopic(HttpServletRequest request) {
+
+        LastValueCache.Value lastValue = lastValueCache.get(getTopicFromPath(request));
+        if (lastValue == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        SimpleMessage receivedMessage = new SimpleMessage();
+        receivedMessage.setTopic(lastValue.getTopic());
+        receivedMessage.setBody(new String(lastValue.getPayload(), StandardCharsets.UTF_8));
+        return new ResponseEntity<>(receivedMessage, HttpStatus.OK);
+    }
+
+    // The topic is the rest of the path, it may contain slashes
+    private String getTopicFromPath(HttpServletRequest request) {
+        return new AntPathMatcher().extractPathWithinPattern(
+                (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE),
+                (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE));
+    }
+
+    @RequestMapping(value = "/messages", method = RequestMethod.GET)
+    public ResponseEntity<String> getReceivedMessages(@RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "topicPrefix", defaultValue = "") String topicPrefix,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+
+        ReceivedMessageHistory.Page page = receivedMessageHistory.query(since, topicPrefix,
+                Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE)));
+
+        JSONArray messagesJson = new JSONArray();
+        for (ReceivedMessageHistory.Entry entry : page.getEntries()) {
+            JSONObject messageJson = new JSONObject();
+            messageJson.put("sequence", entry.getSequence());
+            messageJson.put("timestamp", entry.getTimestamp());
+            messageJson.put("topic", entry.getTopic());
+            messageJson.put("body", new String(entry.getPayload(), StandardCharsets.UTF_8));
+            messageJson.put("truncated", entry.isTruncated());
+            messagesJson.put(messageJson);
+        }
+
+        // Pass nextSince back as since to get the following page
+        JSONObject pageJson = new JSONObject();
+        pageJson.put("messages", messagesJson);
+        pageJson.put("nextSince", page.getNextSince());
+        pageJson.put("oldestSequence", page.getOldestSequence());
+        return new ResponseEntity<>(pageJson.toString(), HttpStatus.OK);
+    }
+
     @RequestMapping(value = "/subscription", method = RequestMethod.POST)
     public ResponseEntity<String> addSubscription(@RequestBody SimpleSubscription subscription) {
         String subscriptionTopic = subscription.getSubscription();
         logger.info("Adding a subscription to topic: " + subscriptionTopic);
 
-        final Topic topic = JCSMPFactory.onlyInstance().createTopic(subscriptionTopic);
+        if (session == null || session.isClosed()) {
+            logger.error("Session was null or closed, Could not add a subscription");
+            return new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST);
+        }
+
         try {
-            boolean waitForConfirm = true;
-            session.addSubscription(topic, waitForConfirm);
-        } catch (JCSMPException e) {
+            // Only to validate the subscription, the broker is given the ones of the aggregator
+            JCSMPFactory.onlyInstance().createTopic(subscriptionTopic);
+        } catch (RuntimeException e) {
             logger.error("Adding a subscription failed.", e);
             return new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST);
         }
+        // Handed over as soon as the broker sends them, dropped again if it refuses the subscription
+        updateSubscriptionHandlers(Collections.singletonList(subscriptionTopic), true);
+        Map<String, String> rejected = new HashMap<>();
+        synchronized (subscriptionAggregator) {
+            applySubscriptionChanges(subscriptionAggregator.add(Collections.singletonList(subscriptionTopic)),
+                    rejected);
+        }
+        if (rejected.containsKey(subscriptionTopic)) {
+            logger.error("Adding a subscription failed: " + rejected.get(subscriptionTopic));
+            return new ResponseEntity<>("{'description': '" + rejected.get(subscriptionTopic) + "'}",
+                    HttpStatus.BAD_REQUEST);
+        }
         logger.info("Finished Adding a subscription to topic: " + subscriptionTopic);
         return new ResponseEntity<>("{}", HttpStatus.OK);
     }
@@ -306,36 +1188,409 @@ public class SolaceController {
 
 	@RequestMapping(value = "/subscription/{subscriptionName}", method = RequestMethod.DELETE)
 	public ResponseEntity<String> deleteSubscription(@PathVariable("subscriptionName") String subscriptionTopic) {
-        final Topic topic = JCSMPFactory.onlyInstance().createTopic(subscriptionTopic);
         logger.info("Deleting a subscription to topic: " + subscriptionTopic);
 
-        try {
-            boolean waitForConfirm = true;
-            session.removeSubscription(topic, waitForConfirm);
-        } catch (JCSMPException e) {
-            logger.error("Deleting a subscription failed.", e);
-            return new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST);
+        if (session == null || session.isClosed()) {
+            logger.error("Session was null or closed, Could not delete a subscription");
+            return new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST);
+        }
+
+        // The messages stop being handed over before the broker stops sending them
+        updateSubscriptionHandlers(Collections.singletonList(subscriptionTopic), false);
+        synchronized (subscriptionAggregator) {
+            applySubscriptionChanges(subscriptionAggregator.remove(Collections.singletonList(subscriptionTopic)),
+                    new HashMap<>());
         }
         logger.info("Finished Deleting a subscription to topic: " + subscriptionTopic);
         return new ResponseEntity<>("{}", HttpStatus.OK);
     }
 
+    @RequestMapping(value = "/subscriptions", method = RequestMethod.POST)
+    public ResponseEntity<String> addSubscriptions(@RequestBody List<SimpleSubscription> subscriptions) {
+        return updateSubscriptions(subscriptions, true);
+    }
+
+    @RequestMapping(value = "/subscriptions", method = RequestMethod.DELETE)
+    public ResponseEntity<String> deleteSubscriptions(@RequestBody List<SimpleSubscription> subscriptions) {
+        return updateSubscriptions(subscriptions, false);
+    }
+
+    // The subscriptions added through the REST API, with the number of messages received on each
+    @RequestMapping(value = "/subscriptions", method = RequestMethod.GET)
+    public ResponseEntity<String> getSubscriptions() {
+        Map<String, Long> numReceived = new TreeMap<>();
+        synchronized (subscriptionHandlers) {
+            subscriptionHandlers.forEach((subscription, handler) ->
+                    numReceived.put(subscription, handler.numReceived.sum()));
+        }
+
+        JSONArray subscriptionsJson = new JSONArray();
+        numReceived.forEach((subscription, count) -> {
+            JSONObject subscriptionJson = new JSONObject();
+            subscriptionJson.put("subscription", subscription);
+            subscriptionJson.put("numMsgsReceived", count);
+            subscriptionsJson.put(subscriptionJson);
+        });
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("subscriptions", subscriptionsJson);
+        responseJson.put("numMsgsUnmatched", numUnmatchedReceived.sum());
+        // What the broker was actually given for them
+        JSONArray brokerSubscriptionsJson = new JSONArray();
+        for (String brokerSubscription : subscriptionAggregator.getBrokerSubscriptions()) {
+            brokerSubscriptionsJson.put(sharedSubscriptions.getBrokerSubscription(brokerSubscription));
+        }
+        responseJson.put("brokerSubscriptions", brokerSubscriptionsJson);
+        return new ResponseEntity<>(responseJson.toString(), HttpStatus.OK);
+    }
+
+    // Hands the changes of the subscription aggregator over to the broker, the additions before the removals
+    // so that no topic goes uncovered in between. Only the last one waits for a confirm. The subscriptions the
+    // broker refused to add are put in rejected with their error, and taken out of the aggregator, which may
+    // have to cover what they would have covered in another way. Returns whether the broker confirmed it all.
+    private boolean applySubscriptionChanges(SubscriptionAggregator.Changes changes, Map<String, String> rejected) {
+        List<String> added = new ArrayList<>(changes.getAdded());
+        Set<String> removed = new LinkedHashSet<>(changes.getRemoved());
+        boolean confirmed = true;
+        while (!added.isEmpty()) {
+            List<String> failed = new ArrayList<>();
+            for (int i = 0; i < added.size(); i++) {
+                boolean waitForConfirm = i == added.size() - 1 && removed.isEmpty();
+                try {
+                    session.addSubscription(createSubscriptionTopic(added.get(i)), waitForConfirm);
+                } catch (JCSMPException | RuntimeException e) {
+                    logger.error("Adding a subscription to topic " + added.get(i) + " failed.", e);
+                    rejected.put(added.get(i), e.getMessage());
+                    failed.add(added.get(i));
+                    confirmed &= !waitForConfirm;
+                }
+            }
+            if (failed.isEmpty()) {
+                break;
+            }
+            // Also when it was added before and only had to go back on the broker
+            updateSubscriptionHandlers(failed, false);
+            SubscriptionAggregator.Changes recovered = subscriptionAggregator.reject(failed);
+            added = new ArrayList<>();
+            for (String subscription : recovered.getAdded()) {
+                // Still on the broker when it was about to be removed
+                if (!removed.remove(subscription)) {
+                    added.add(subscription);
+                }
+            }
+            removed.addAll(recovered.getRemoved());
+        }
+        int i = 0;
+        for (String subscription : removed) {
+            boolean waitForConfirm = ++i == removed.size();
+            try {
+                session.removeSubscription(createSubscriptionTopic(subscription), waitForConfirm);
+            } catch (JCSMPException e) {
+                // Left on the broker, what it lets through is filtered out when received
+                logger.error("Deleting a subscription to topic " + subscription + " failed.", e);
+                confirmed &= !waitForConfirm;
+            }
+        }
+        return confirmed;
+    }
+
+    private Topic createSubscriptionTopic(String subscription) {
+        return JCSMPFactory.onlyInstance().createTopic(sharedSubscriptions.getBrokerSubscription(subscription));
+    }
+
+    // Gives each subscription a handler of its own, or drops it, in a single update of the trie the
+    // received messages are dispatched with
+    private void updateSubscriptionHandlers(List<String> subscriptions, boolean add) {
+        synchronized (subscriptionHandlers) {
+            subscriptionDispatch.update(changes -> {
+                for (String subscription : subscriptions) {
+                    if (add && !subscriptionHandlers.containsKey(subscription)) {
+                        SubscriptionHandler handler = new SubscriptionHandler();
+                        subscriptionHandlers.put(subscription, handler);
+                        changes.add(subscription, handler);
+                    } else if (!add) {
+                        SubscriptionHandler handler = subscriptionHandlers.remove(subscription);
+                        if (handler != null) {
+                            changes.remove(subscription, handler);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    // Adds or removes many subscriptions for the cost of a single round trip to the broker. Only the
+    // last one waits for a confirm, and as the broker handles them in order that confirms the batch.
+    // The results hold what the API rejected, the broker reports its own failures of unconfirmed
+    // subscriptions to the session event handler.
+    private ResponseEntity<String> updateSubscriptions(List<SimpleSubscription> subscriptions, boolean add) {
+
+        if (session == null || session.isClosed()) {
+            logger.error("Session was null or closed, Could not update subscriptions");
+            return new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST);
+        }
+
+        List<String> topics = getSubscriptionTopics(subscriptions);
+        logger.info((add ? "Adding " : "Deleting ") + topics.size() + " subscriptions");
+
+        String[] errors = new String[topics.size()];
+        for (int i = 0; i < topics.size(); i++) {
+            if (topics.get(i) == null || topics.get(i).isEmpty()) {
+                errors[i] = "subscription is missing";
+            }
+        }
+
+        List<String> valid = new ArrayList<>();
+        for (int i = 0; i < topics.size(); i++) {
+            if (errors[i] != null) {
+                continue;
+            }
+            try {
+                JCSMPFactory.onlyInstance().createTopic(topics.get(i));
+                valid.add(topics.get(i));
+            } catch (RuntimeException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+
+        Map<String, String> rejected = new HashMap<>();
+        boolean confirmed;
+        if (add) {
+            // Handed over as soon as the broker sends them, the ones it refuses are dropped again
+            updateSubscriptionHandlers(valid, true);
+            synchronized (subscriptionAggregator) {
+                confirmed = applySubscriptionChanges(subscriptionAggregator.add(valid), rejected);
+            }
+        } else {
+            // The messages stop being handed over before the broker stops sending them
+            updateSubscriptionHandlers(valid, false);
+            synchronized (subscriptionAggregator) {
+                confirmed = applySubscriptionChanges(subscriptionAggregator.remove(valid), rejected);
+            }
+        }
+
+        for (int i = 0; i < topics.size(); i++) {
+            if (errors[i] == null && rejected.containsKey(topics.get(i))) {
+                errors[i] = rejected.get(topics.get(i));
+            }
+        }
+
+        confirmed &= !valid.isEmpty();
+        logger.info("Finished " + (add ? "Adding " : "Deleting ") + topics.size() + " subscriptions, confirmed: " + confirmed);
+        return subscriptionsResult(topics, errors, confirmed);
+    }
+
+    private List<String> getSubscriptionTopics(List<SimpleSubscription> subscriptions) {
+        List<String> topics = new ArrayList<>(subscriptions.size());
+        for (SimpleSubscription subscription : subscriptions) {
+            topics.add(subscription.getSubscription());
+        }
+        return topics;
+    }
+
+    // Reported like a batch of messages, the results tell which subscriptions failed
+    private ResponseEntity<String> subscriptionsResult(List<String> topics, String[] errors, boolean confirmed) {
+        JSONArray resultsJson = new JSONArray();
+        int numSucceeded = 0;
+        for (int i = 0; i < topics.size(); i++) {
+            JSONObject resultJson = new JSONObject();
+            resultJson.put("index", i);
+            resultJson.put("subscription", topics.get(i));
+            resultJson.put("succeeded", errors[i] == null);
+            if (errors[i] != null) {
+                resultJson.put("description", errors[i]);
+            } else {
+                numSucceeded++;
+            }
+            resultsJson.put(resultJson);
+        }
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("numSucceeded", numSucceeded);
+        responseJson.put("numFailed", topics.size() - numSucceeded);
+        // Whether the broker confirmed the batch, the subscriptions before a failed confirm may or may not be in place
+        responseJson.put("confirmed", confirmed);
+        responseJson.put("results", resultsJson);
+
+        HttpStatus status = HttpStatus.OK;
+        if (numSucceeded == 0 && !topics.isEmpty()) {
+            status = HttpStatus.BAD_REQUEST;
+        } else if (numSucceeded < topics.size()) {
+            status = HttpStatus.MULTI_STATUS;
+        }
+        return new ResponseEntity<>(responseJson.toString(), status);
+    }
+
+    @RequestMapping(value = "/loadtest", method = RequestMethod.POST)
+    public ResponseEntity<String> startLoadTest(@RequestBody LoadTestRequest request) {
+
+        String error = LoadTest.validate(request);
+        if (error != null) {
+            return new ResponseEntity<>("{'description': '" + error + "'}", HttpStatus.BAD_REQUEST);
+        }
+
+        if (session == null || session.isClosed()) {
+            logger.error("Session was null or closed, Could not start the load test");
+            return new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST);
+        }
+
+        LoadTest loadTest = new LoadTest(request, this::publishLoadTestMessage);
+        loadTests.put(loadTest.getId(), loadTest);
+        logger.info("Starting load test " + loadTest.getId() + " at " + request.getRate() + " msgs/s for "
+                + request.getDurationInSeconds() + "s over " + request.getConcurrency() + " thread(s)");
+        loadTest.start();
+        return new ResponseEntity<>(loadTest.getStatus().toString(), HttpStatus.ACCEPTED);
+    }
+
+    // Streams the progress of the load test as server-sent events, the last one holds the result
+    @RequestMapping(value = "/loadtest/{id}", method = RequestMethod.GET)
+    public ResponseEntity<SseEmitter> getLoadTest(@PathVariable("id") String id) {
+
+        LoadTest loadTest = loadTests.get(id);
+        if (loadTest == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        SseEmitter emitter = new SseEmitter(loadTest.getRemainingMillis() + LOAD_TEST_STREAM_GRACE_MILLIS);
+        loadTest.stream(emitter);
+        return new ResponseEntity<>(emitter, HttpStatus.OK);
+    }
+
+    // Publishes like sendMessage does, on behalf of a load test thread
+    private void publishLoadTestMessage(String topicName, String body) throws JCSMPException {
+        final Topic topic = publishPipeline.getTopic(topicName);
+        TextMessage msg = publishPipeline.getTextMessage(body);
+        stampLatency(msg);
+        long publishStartNanos = System.nanoTime();
+        producerPool.send(msg, topic);
+        messageStats.recordSent(topicName, System.nanoTime() - publishStartNanos);
+    }
+
     @RequestMapping(value = "/status", method = RequestMethod.GET)
     public ResponseEntity<String> getStatus() {
 
         logger.info("Received request for getStatus");
 
         JSONObject statusJson = new JSONObject();
-        statusJson.put("numMsgsSent", numMessagesSent.get());
-        statusJson.put("numMsgsReceived", numMessagesReceived.get());
+        // Taken from a single generation of the statistics, never half reset
+        MessageStats.Snapshot stats = messageStats.snapshot();
+        statusJson.put("numMsgsSent", stats.getNumSent());
+        statusJson.put("numMsgsReceived", stats.getNumReceived());
+        statusJson.put("publishLatencyMicros", latencyStatus(stats.getPublishLatency()));
+        JSONObject endToEndLatencyJson = new JSONObject();
+        endToEndLatencyJson.put("loopback", latencyStatus(stats.getLoopbackLatency()));
+        endToEndLatencyJson.put("crossInstance", latencyStatus(stats.getCrossInstanceLatency()));
+        endToEndLatencyJson.put("numClockSkewed", stats.getNumClockSkewed());
+        statusJson.put("endToEndLatencyMicros", endToEndLatencyJson);
+        statusJson.put("topicPrefixes", topicPrefixesStatus(stats));
+        JSONObject lastValueCacheJson = new JSONObject();
+        lastValueCacheJson.put("numTopics", lastValueCache.getNumTopics());
+        lastValueCacheJson.put("numBytes", lastValueCache.getNumBytes());
+        lastValueCacheJson.put("numEvicted", lastValueCache.getNumEvicted());
+        statusJson.put("lastValueCache", lastValueCacheJson);
+
+        JSONObject pushJson = new JSONObject();
+        pushJson.put("numClients", messagePush.getNumClients());
+        pushJson.put("numPushed", messagePush.getNumPushed());
+        pushJson.put("numDropped", messagePush.getNumDropped());
+        statusJson.put("push", pushJson);
+        statusJson.put("numMsgsInFlight", publishWindow != null ? publishWindow.getNumInFlight() : 0);
+        statusJson.put("outbox", outboxStatus());
+        if (producerPool != null) {
+            statusJson.put("producerPool", producerPoolStatus());
+        }
+        if (receiveStage != null) {
+            JSONObject receiveStageJson = new JSONObject();
+            receiveStageJson.put("capacity", receiveStage.getCapacity());
+            receiveStageJson.put("occupancy", receiveStage.getOccupancy());
+            receiveStageJson.put("numMsgsDropped", receiveStage.getNumDropped());
+            statusJson.put("receiveStage", receiveStageJson);
+        }
+        if (sharedSubscriptions.isEnabled()) {
+            // This instance's part of the messages of the group, since it started
+            JSONObject sharedSubscriptionsJson = new JSONObject();
+            sharedSubscriptionsJson.put("group", sharedSubscriptions.getGroup());
+            sharedSubscriptionsJson.put("instanceIndex", sharedSubscriptions.getInstanceIndex());
+            sharedSubscriptionsJson.put("numMsgsReceived", sharedSubscriptions.getNumReceived());
+            statusJson.put("sharedSubscriptions", sharedSubscriptionsJson);
+        }
         return new ResponseEntity<>(statusJson.toString(), HttpStatus.OK);
     }
 
+    private JSONObject outboxStatus() {
+        JSONObject outboxJson = new JSONObject();
+        outboxJson.put("reconnecting", publishOutbox.isReconnecting());
+        outboxJson.put("numReconnects", publishOutbox.getNumReconnects());
+        outboxJson.put("reconnectMillis", publishOutbox.getReconnectNanos() / 1_000_000);
+        outboxJson.put("depth", publishOutbox.getDepth());
+        outboxJson.put("numBytes", publishOutbox.getNumBytes());
+        outboxJson.put("numMsgsQueued", publishOutbox.getNumQueued());
+        outboxJson.put("numMsgsDrained", publishOutbox.getNumDrained());
+        outboxJson.put("numMsgsExpired", publishOutbox.getNumExpired());
+        outboxJson.put("numMsgsRejected", publishOutbox.getNumRejected());
+        outboxJson.put("numMsgsFailed", publishOutbox.getNumFailed());
+        OutboxJournal outboxJournal = publishOutbox.getJournal();
+        if (outboxJournal != null) {
+            JSONObject journalJson = new JSONObject();
+            journalJson.put("directory", outboxJournal.getDirectory().toString());
+            journalJson.put("numSegments", outboxJournal.getNumSegments());
+            journalJson.put("numBytes", outboxJournal.getNumBytes());
+            journalJson.put("numMsgsUnconfirmed", outboxJournal.getNumUnconfirmed());
+            journalJson.put("numMsgsRestored", outboxJournal.getNumRestored());
+            journalJson.put("numFlushes", outboxJournal.getNumFlushes());
+            journalJson.put("numMsgsFlushed", outboxJournal.getNumFlushedEntries());
+            outboxJson.put("journal", journalJson);
+        }
+        return outboxJson;
+    }
+
+    private JSONArray producerPoolStatus() {
+        JSONArray stripesJson = new JSONArray();
+        for (int i = 0; i < producerPool.getSize(); i++) {
+            JSONObject stripeJson = new JSONObject();
+            stripeJson.put("stripe", i);
+            stripeJson.put("closed", producerPool.isClosed(i));
+            stripeJson.put("numInFlightSends", producerPool.getNumInFlightSends(i));
+            stripeJson.put("numMsgsSent", producerPool.getNumSent(i));
+            stripeJson.put("sendRatePerSecond", producerPool.getSendRate(i));
+            stripesJson.put(stripeJson);
+        }
+        return stripesJson;
+    }
+
+    private JSONObject latencyStatus(MessageStats.LatencySnapshot latency) {
+        JSONObject latencyJson = new JSONObject();
+        latencyJson.put("count", latency.getCount());
+        latencyJson.put("p50", latency.getNanos(50) / 1000.0);
+        latencyJson.put("p99", latency.getNanos(99) / 1000.0);
+        latencyJson.put("p99.9", latency.getNanos(99.9) / 1000.0);
+        latencyJson.put("max", latency.getMaxNanos() / 1000.0);
+        return latencyJson;
+    }
+
+    private JSONArray topicPrefixesStatus(MessageStats.Snapshot stats) {
+        JSONArray topicPrefixesJson = new JSONArray();
+        stats.getTopicPrefixes().forEach((topicPrefix, counts) -> {
+            JSONObject topicPrefixJson = new JSONObject();
+            topicPrefixJson.put("topicPrefix", topicPrefix);
+            topicPrefixJson.put("numMsgsSent", counts[0]);
+            topicPrefixJson.put("numMsgsReceived", counts[1]);
+            topicPrefixesJson.put(topicPrefixJson);
+        });
+        return topicPrefixesJson;
+    }
+
     @RequestMapping(value = "/status", method = RequestMethod.DELETE)
     public ResponseEntity<String> resetStats() {
-        numMessagesReceived.set(0);
-        numMessagesSent.set(0);
-        lastReceivedMessage = null;
+        messageStats.reset();
+        if (receiveStage != null) {
+            receiveStage.resetStats();
+        }
+        receivedMessageHistory.clear();
+        lastValueCache.clear();
         return new ResponseEntity<>("{}", HttpStatus.OK);
     }
 
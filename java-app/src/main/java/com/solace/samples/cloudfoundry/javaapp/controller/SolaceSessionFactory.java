@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import com.solacesystems.jcsmp.Context;
+import com.solacesystems.jcsmp.JCSMPException;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.JCSMPProperties;
+import com.solacesystems.jcsmp.JCSMPSession;
+import com.solacesystems.jcsmp.SessionEventHandler;
+
+/**
+ * Creates sessions to the Solace PubSub+ service described by the properties.
+ */
+public class SolaceSessionFactory implements SessionFactory {
+
+    private final JCSMPProperties properties;
+
+    public SolaceSessionFactory(JCSMPProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public JCSMPSession createSession(SessionEventHandler eventHandler) throws JCSMPException {
+        return JCSMPFactory.onlyInstance().createSession(properties, null, eventHandler);
+    }
+
+    @Override
+    public JCSMPSession createSession(Context context, SessionEventHandler eventHandler) throws JCSMPException {
+        return JCSMPFactory.onlyInstance().createSession(properties, context, eventHandler);
+    }
+}
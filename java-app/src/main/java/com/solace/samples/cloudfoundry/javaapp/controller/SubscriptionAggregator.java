@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the subscriptions the application asked for, and works out a smaller
+ * set of subscriptions that covers them for the broker, so its subscription
+ * table holds fewer entries to evaluate for every message.
+ *
+ * A subscription is left off the broker while another one matches every topic
+ * it matches, orders/eu/1 while there is orders/eu/>, and goes back on as soon
+ * as that one is removed. With a merge threshold, once more than that many of
+ * the subscriptions differ only in their last level, the broker gets a single
+ * wildcard for that level instead, orders/eu/* for orders/eu/1 to orders/eu/n.
+ * The wildcard is replaced by the subscriptions again when no more than half
+ * the threshold are left. A merged wildcard lets through messages on topics
+ * nobody asked for, the receiver has to filter them out.
+ *
+ * Changes are incremental: each one only looks at the subscriptions it covers
+ * or is covered by, and returns what to add to and remove from the broker.
+ */
+public class SubscriptionAggregator {
+
+    // What to change on the broker, in that order so that nothing is left uncovered in between
+    public static class Changes {
+        private final Set<String> added = new LinkedHashSet<>();
+        private final Set<String> removed = new LinkedHashSet<>();
+
+        private void add(String subscription) {
+            if (!removed.remove(subscription)) {
+                added.add(subscription);
+            }
+        }
+
+        private void remove(String subscription) {
+            if (!added.remove(subscription)) {
+                removed.add(subscription);
+            }
+        }
+
+        public Collection<String> getAdded() {
+            return added;
+        }
+
+        public Collection<String> getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private static final String LEVEL_WILDCARD = "*";
+    private static final String SUFFIX_WILDCARD = ">";
+
+    private final int mergeThreshold;
+
+    // Guarded by this
+    private final Set<String> subscriptions = new HashSet<>();
+    private final SubscriptionTrie<String> subscriptionTrie = new SubscriptionTrie<>();
+    private final Set<String> brokerSubscriptions = new HashSet<>();
+    private final SubscriptionTrie<String> brokerSubscriptionTrie = new SubscriptionTrie<>();
+    // Subscriptions below each level that differ only in their last level, and could be merged
+    private final Map<String, Integer> numSiblings = new HashMap<>();
+    // Levels whose wildcard the broker refused, they are not merged again
+    private final Set<String> unmergeable = new HashSet<>();
+    private Changes changes;
+
+    // A threshold of 0 never merges, only the subscriptions covered by another one are left off
+    public SubscriptionAggregator(int mergeThreshold) {
+        this.mergeThreshold = Math.max(0, mergeThreshold);
+    }
+
+    public synchronized Changes add(Collection<String> added) {
+        changes = new Changes();
+        for (String subscription : added) {
+            if (!subscriptions.add(subscription)) {
+                continue;
+            }
+            subscriptionTrie.add(subscription, subscription);
+            cover(subscription);
+            String parent = getMergeParent(subscription);
+            if (parent != null) {
+                numSiblings.merge(parent, 1, Integer::sum);
+                if (isMergeable(parent)) {
+                    cover(parent + "/" + LEVEL_WILDCARD);
+                }
+            }
+        }
+        return takeChanges();
+    }
+
+    public synchronized Changes remove(Collection<String> removed) {
+        changes = new Changes();
+        for (String subscription : removed) {
+            if (!subscriptions.remove(subscription)) {
+                continue;
+            }
+            subscriptionTrie.remove(subscription, subscription);
+            String parent = getMergeParent(subscription);
+            if (parent != null) {
+                numSiblings.computeIfPresent(parent, (level, count) -> count > 1 ? count - 1 : null);
+            }
+            // A wildcard that was also asked for stays when it would be merged anyway
+            String wildcardParent = getWildcardParent(subscription);
+            if (brokerSubscriptions.contains(subscription)
+                    && !(wildcardParent != null && isMergeable(wildcardParent))) {
+                removeFromBroker(subscription);
+                uncover(subscription);
+            }
+            if (parent != null && isMerged(parent) && getNumSiblings(parent) <= mergeThreshold / 2) {
+                removeFromBroker(parent + "/" + LEVEL_WILDCARD);
+                uncover(parent + "/" + LEVEL_WILDCARD);
+            }
+        }
+        return takeChanges();
+    }
+
+    // The broker refused to add these subscriptions, they are forgotten along with the ones asked for
+    // by the application. What they would have covered goes back on the broker by other means.
+    public synchronized Changes reject(Collection<String> rejected) {
+        changes = new Changes();
+        for (String subscription : rejected) {
+            if (!brokerSubscriptions.remove(subscription)) {
+                continue;
+            }
+            brokerSubscriptionTrie.remove(subscription, subscription);
+            if (subscriptions.remove(subscription)) {
+                subscriptionTrie.remove(subscription, subscription);
+                String parent = getMergeParent(subscription);
+                if (parent != null) {
+                    numSiblings.computeIfPresent(parent, (level, count) -> count > 1 ? count - 1 : null);
+                }
+            } else {
+                unmergeable.add(getWildcardParent(subscription));
+            }
+            uncover(subscription);
+        }
+        return takeChanges();
+    }
+
+    // Puts the subscription on the broker unless it is covered there already, in place of the ones it covers
+    private void cover(String subscription) {
+        if (!brokerSubscriptionTrie.covering(subscription).isEmpty()) {
+            return;
+        }
+        for (String covered : brokerSubscriptionTrie.coveredBy(subscription)) {
+            removeFromBroker(covered);
+        }
+        brokerSubscriptions.add(subscription);
+        brokerSubscriptionTrie.add(subscription, subscription);
+        changes.add(subscription);
+    }
+
+    // The subscription just left the broker, covers what it covered by other means
+    private void uncover(String subscription) {
+        Set<String> parents = new HashSet<>();
+        for (String covered : subscriptionTrie.coveredBy(subscription)) {
+            cover(covered);
+            String parent = getMergeParent(covered);
+            if (parent != null) {
+                parents.add(parent);
+            }
+        }
+        for (String parent : parents) {
+            if (isMergeable(parent)) {
+                cover(parent + "/" + LEVEL_WILDCARD);
+            }
+        }
+    }
+
+    private boolean isMergeable(String parent) {
+        return mergeThreshold > 0 && getNumSiblings(parent) > mergeThreshold && !unmergeable.contains(parent);
+    }
+
+    // Whether the broker has the wildcard of the level for the subscriptions below it, rather than because
+    // it was asked for
+    private boolean isMerged(String parent) {
+        String wildcard = parent + "/" + LEVEL_WILDCARD;
+        return brokerSubscriptions.contains(wildcard) && !subscriptions.contains(wildcard);
+    }
+
+    private void removeFromBroker(String subscription) {
+        brokerSubscriptions.remove(subscription);
+        brokerSubscriptionTrie.remove(subscription, subscription);
+        changes.remove(subscription);
+    }
+
+    private Changes takeChanges() {
+        Changes taken = changes;
+        changes = null;
+        return taken;
+    }
+
+    private int getNumSiblings(String parent) {
+        return numSiblings.getOrDefault(parent, 0);
+    }
+
+    // The levels before the last one, when a wildcard there would cover the subscription
+    private static String getMergeParent(String subscription) {
+        int lastLevel = subscription.lastIndexOf('/');
+        if (lastLevel < 0) {
+            return null;
+        }
+        String level = subscription.substring(lastLevel + 1);
+        if (level.equals(LEVEL_WILDCARD) || level.equals(SUFFIX_WILDCARD)) {
+            return null;
+        }
+        return subscription.substring(0, lastLevel);
+    }
+
+    // The levels before the last one of a level wildcard
+    private static String getWildcardParent(String subscription) {
+        if (!subscription.endsWith("/" + LEVEL_WILDCARD)) {
+            return null;
+        }
+        return subscription.substring(0, subscription.length() - LEVEL_WILDCARD.length() - 1);
+    }
+
+    public synchronized int getNumSubscriptions() {
+        return subscriptions.size();
+    }
+
+    public synchronized List<String> getBrokerSubscriptions() {
+        List<String> sorted = new ArrayList<>(brokerSubscriptions);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Finds the handlers registered for the subscriptions a topic matches, in a
+ * number of steps that depends on the levels of the topic rather than on the
+ * number of subscriptions.
+ *
+ * Subscriptions follow the Solace wildcard rules, like the loopback broker: a
+ * level that ends with * matches any level starting with what precedes it, so
+ * * alone matches any single level, and > as the last level matches one or
+ * more levels. Every level of a subscription is a node of the trie. A literal
+ * level is found with a single lookup, the levels ending with * with a lookup
+ * per length of prefix in use at that node.
+ *
+ * covering() and coveredBy() compare subscriptions rather than match a topic,
+ * they find the subscriptions that match every topic a given one matches, or
+ * only topics it matches, walking the trie the same way.
+ *
+ * Nodes are copied on write: an update copies the nodes on the path to the
+ * subscriptions it changes, once however many changes it makes, and publishes
+ * the new root in a single write. match() takes no lock and sees the trie
+ * either before or after an update, never in between. Updates are serialized.
+ */
+public class SubscriptionTrie<H> {
+
+    // Changes applied together by update()
+    public interface Changes<H> {
+        // Returns false when the handler was already registered for the subscription
+        boolean add(String subscription, H handler);
+
+        // Returns false when the handler was not registered for the subscription
+        boolean remove(String subscription, H handler);
+    }
+
+    private static class Node<H> {
+        // The update that may still modify the node, a node is never modified once published
+        private final Object owner;
+        // Next levels of the subscriptions, by literal level
+        private Map<String, Node<H>> literals;
+        // Next levels that end with *, by what precedes the *
+        private Map<String, Node<H>> prefixes;
+        // Lengths of the keys of prefixes, in increasing order
+        private int[] prefixLengths;
+        // Handlers of the subscriptions ending at this level
+        private List<H> handlers;
+        // Handlers of the subscriptions with a > after this level
+        private List<H> suffixHandlers;
+
+        private Node(Object owner) {
+            this.owner = owner;
+        }
+
+        private Node<H> copy(Object newOwner) {
+            Node<H> node = new Node<>(newOwner);
+            node.literals = literals != null ? new HashMap<>(literals) : null;
+            node.prefixes = prefixes != null ? new HashMap<>(prefixes) : null;
+            node.prefixLengths = prefixLengths;
+            node.handlers = handlers != null ? new ArrayList<>(handlers) : null;
+            node.suffixHandlers = suffixHandlers != null ? new ArrayList<>(suffixHandlers) : null;
+            return node;
+        }
+
+        private boolean isEmpty() {
+            return literals == null && prefixes == null && handlers == null && suffixHandlers == null;
+        }
+    }
+
+    private volatile Node<H> root = new Node<>(null);
+
+    // Guarded by this
+    private int size;
+    private Object editor;
+    private Node<H> editedRoot;
+
+    private final Changes<H> changes = new Changes<H>() {
+        @Override
+        public boolean add(String subscription, H handler) {
+            return addLocked(subscription, handler);
+        }
+
+        @Override
+        public boolean remove(String subscription, H handler) {
+            return removeLocked(subscription, handler);
+        }
+    };
+
+    public boolean add(String subscription, H handler) {
+        boolean[] added = new boolean[1];
+        update(trie -> added[0] = trie.add(subscription, handler));
+        return added[0];
+    }
+
+    public boolean remove(String subscription, H handler) {
+        boolean[] removed = new boolean[1];
+        update(trie -> removed[0] = trie.remove(subscription, handler));
+        return removed[0];
+    }
+
+    // Applies all the changes at once, copying each node they touch a single time
+    public synchronized void update(Consumer<Changes<H>> update) {
+        editor = new Object();
+        editedRoot = root;
+        try {
+            update.accept(changes);
+            root = editedRoot;
+        } finally {
+            editor = null;
+            editedRoot = null;
+        }
+    }
+
+    // Number of handlers registered, counting a handler once for each of its subscriptions
+    public synchronized int size() {
+        return size;
+    }
+
+    // The handlers of all the subscriptions the topic matches, each of them once
+    public Set<H> match(String topic) {
+        Set<H> matched = match(root, topic, 0, null);
+        return matched != null ? matched : Collections.emptySet();
+    }
+
+    private Set<H> match(Node<H> node, String topic, int start, Set<H> matched) {
+        // There is at least the level starting at start left
+        matched = addAll(matched, node.suffixHandlers);
+        int end = levelEnd(topic, start);
+        boolean last = end == topic.length();
+        if (node.literals != null) {
+            Node<H> child = node.literals.get(topic.substring(start, end));
+            if (child != null) {
+                matched = last ? addAll(matched, child.handlers) : match(child, topic, end + 1, matched);
+            }
+        }
+        if (node.prefixes != null) {
+            for (int length : node.prefixLengths) {
+                if (length > end - start) {
+                    break;
+                }
+                Node<H> child = node.prefixes.get(topic.substring(start, start + length));
+                if (child != null) {
+                    matched = last ? addAll(matched, child.handlers) : match(child, topic, end + 1, matched);
+                }
+            }
+        }
+        return matched;
+    }
+
+    // The handlers of the subscriptions that match every topic the subscription matches, its own included
+    public Set<H> covering(String subscription) {
+        Set<H> covering = covering(root, subscription, 0, null);
+        return covering != null ? covering : Collections.emptySet();
+    }
+
+    private Set<H> covering(Node<H> node, String subscription, int start, Set<H> covering) {
+        // A > after this node covers the one level or more left, whatever they are
+        covering = addAll(covering, node.suffixHandlers);
+        int end = levelEnd(subscription, start);
+        boolean last = end == subscription.length();
+        if (last && isSuffixWildcard(subscription, start, end)) {
+            return covering;
+        }
+        String level = subscription.substring(start, end);
+        // A literal level is only covered by itself, and by the prefixes it starts with like any prefix is
+        String key = key(level);
+        if (!isPrefixWildcard(level) && node.literals != null) {
+            Node<H> child = node.literals.get(level);
+            if (child != null) {
+                covering = last ? addAll(covering, child.handlers) : covering(child, subscription, end + 1, covering);
+            }
+        }
+        if (node.prefixes != null) {
+            for (int length : node.prefixLengths) {
+                if (length > key.length()) {
+                    break;
+                }
+                Node<H> child = node.prefixes.get(key.substring(0, length));
+                if (child != null) {
+                    covering = last ? addAll(covering, child.handlers) : covering(child, subscription, end + 1, covering);
+                }
+            }
+        }
+        return covering;
+    }
+
+    // The handlers of the subscriptions that only match topics the subscription matches, its own included
+    public Set<H> coveredBy(String subscription) {
+        Set<H> covered = coveredBy(root, subscription, 0, null);
+        return covered != null ? covered : Collections.emptySet();
+    }
+
+    private Set<H> coveredBy(Node<H> node, String subscription, int start, Set<H> covered) {
+        int end = levelEnd(subscription, start);
+        boolean last = end == subscription.length();
+        if (last && isSuffixWildcard(subscription, start, end)) {
+            // Everything with one level or more after this node
+            covered = addAll(covered, node.suffixHandlers);
+            covered = addChildren(node.literals, covered);
+            return addChildren(node.prefixes, covered);
+        }
+        String level = subscription.substring(start, end);
+        if (!isPrefixWildcard(level)) {
+            Node<H> child = node.literals != null ? node.literals.get(level) : null;
+            if (child != null) {
+                covered = last ? addAll(covered, child.handlers) : coveredBy(child, subscription, end + 1, covered);
+            }
+            return covered;
+        }
+        // Only levels starting with the prefix, there is no index for them
+        String prefix = key(level);
+        for (Map<String, Node<H>> children : Arrays.asList(node.literals, node.prefixes)) {
+            if (children == null) {
+                continue;
+            }
+            for (Map.Entry<String, Node<H>> child : children.entrySet()) {
+                if (child.getKey().startsWith(prefix)) {
+                    covered = last ? addAll(covered, child.getValue().handlers)
+                            : coveredBy(child.getValue(), subscription, end + 1, covered);
+                }
+            }
+        }
+        return covered;
+    }
+
+    private static <H> Set<H> addChildren(Map<String, Node<H>> children, Set<H> handlers) {
+        if (children != null) {
+            for (Node<H> child : children.values()) {
+                handlers = addAll(handlers, child.handlers);
+                handlers = addAll(handlers, child.suffixHandlers);
+                handlers = addChildren(child.literals, handlers);
+                handlers = addChildren(child.prefixes, handlers);
+            }
+        }
+        return handlers;
+    }
+
+    private static <H> Set<H> addAll(Set<H> matched, List<H> handlers) {
+        if (handlers == null) {
+            return matched;
+        }
+        if (matched == null) {
+            matched = new HashSet<>();
+        }
+        matched.addAll(handlers);
+        return matched;
+    }
+
+    private boolean addLocked(String subscription, H handler) {
+        List<H> handlers = find(editedRoot, subscription);
+        if (handlers != null && handlers.contains(handler)) {
+            return false;
+        }
+
+        Node<H> node = editable(editedRoot);
+        editedRoot = node;
+        int start = 0;
+        while (true) {
+            int end = levelEnd(subscription, start);
+            boolean last = end == subscription.length();
+            if (last && isSuffixWildcard(subscription, start, end)) {
+                node.suffixHandlers = added(node.suffixHandlers, handler);
+                break;
+            }
+            node = editableChild(node, subscription.substring(start, end));
+            if (last) {
+                node.handlers = added(node.handlers, handler);
+                break;
+            }
+            start = end + 1;
+        }
+        size++;
+        return true;
+    }
+
+    private boolean removeLocked(String subscription, H handler) {
+        List<H> handlers = find(editedRoot, subscription);
+        if (handlers == null || !handlers.contains(handler)) {
+            return false;
+        }
+
+        // The nodes down to the last level, to remove the ones left empty on the way back
+        List<Node<H>> path = new ArrayList<>();
+        List<String> levels = new ArrayList<>();
+        Node<H> node = editable(editedRoot);
+        editedRoot = node;
+        int start = 0;
+        while (true) {
+            path.add(node);
+            int end = levelEnd(subscription, start);
+            boolean last = end == subscription.length();
+            if (last && isSuffixWildcard(subscription, start, end)) {
+                node.suffixHandlers = removed(node.suffixHandlers, handler);
+                break;
+            }
+            String level = subscription.substring(start, end);
+            node = editableChild(node, level);
+            levels.add(level);
+            if (last) {
+                path.add(node);
+                node.handlers = removed(node.handlers, handler);
+                break;
+            }
+            start = end + 1;
+        }
+        for (int i = levels.size(); i > 0 && path.get(i).isEmpty(); i--) {
+            removeChild(path.get(i - 1), levels.get(i - 1));
+        }
+        size--;
+        return true;
+    }
+
+    // The handlers of exactly this subscription, null when it has none
+    private List<H> find(Node<H> node, String subscription) {
+        int start = 0;
+        while (true) {
+            int end = levelEnd(subscription, start);
+            boolean last = end == subscription.length();
+            if (last && isSuffixWildcard(subscription, start, end)) {
+                return node.suffixHandlers;
+            }
+            String level = subscription.substring(start, end);
+            Map<String, Node<H>> children = isPrefixWildcard(level) ? node.prefixes : node.literals;
+            node = children != null ? children.get(key(level)) : null;
+            if (node == null) {
+                return null;
+            }
+            if (last) {
+                return node.handlers;
+            }
+            start = end + 1;
+        }
+    }
+
+    private Node<H> editable(Node<H> node) {
+        return node.owner == editor ? node : node.copy(editor);
+    }
+
+    // The child for the level, created or copied if need be, with the node pointing to it
+    private Node<H> editableChild(Node<H> node, String level) {
+        boolean prefix = isPrefixWildcard(level);
+        String key = key(level);
+        Map<String, Node<H>> children = prefix ? node.prefixes : node.literals;
+        Node<H> child = children != null ? children.get(key) : null;
+        if (child != null && child.owner == editor) {
+            return child;
+        }
+        child = child != null ? child.copy(editor) : new Node<>(editor);
+        if (children == null) {
+            children = new HashMap<>();
+            if (prefix) {
+                node.prefixes = children;
+            } else {
+                node.literals = children;
+            }
+        }
+        if (children.put(key, child) == null && prefix) {
+            node.prefixLengths = prefixLengths(children);
+        }
+        return child;
+    }
+
+    private void removeChild(Node<H> node, String level) {
+        String key = key(level);
+        if (isPrefixWildcard(level)) {
+            node.prefixes.remove(key);
+            if (node.prefixes.isEmpty()) {
+                node.prefixes = null;
+                node.prefixLengths = null;
+            } else {
+                node.prefixLengths = prefixLengths(node.prefixes);
+            }
+        } else {
+            node.literals.remove(key);
+            if (node.literals.isEmpty()) {
+                node.literals = null;
+            }
+        }
+    }
+
+    private static int[] prefixLengths(Map<String, ?> prefixes) {
+        return prefixes.keySet().stream().mapToInt(String::length).distinct().sorted().toArray();
+    }
+
+    private static <H> List<H> added(List<H> handlers, H handler) {
+        if (handlers == null) {
+            handlers = new ArrayList<>(1);
+        }
+        handlers.add(handler);
+        return handlers;
+    }
+
+    private static <H> List<H> removed(List<H> handlers, H handler) {
+        handlers.remove(handler);
+        return handlers.isEmpty() ? null : handlers;
+    }
+
+    private static boolean isSuffixWildcard(String subscription, int start, int end) {
+        return end - start == 1 && subscription.charAt(start) == '>';
+    }
+
+    private static boolean isPrefixWildcard(String level) {
+        return level.endsWith("*");
+    }
+
+    // What a level is looked up by, without the * of a prefix
+    private static String key(String level) {
+        return isPrefixWildcard(level) ? level.substring(0, level.length() - 1) : level;
+    }
+
+    private static int levelEnd(String name, int levelStart) {
+        int end = name.indexOf('/', levelStart);
+        return end < 0 ? name.length() : end;
+    }
+}
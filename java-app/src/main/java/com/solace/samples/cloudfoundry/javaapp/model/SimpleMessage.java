@@ -21,12 +21,17 @@ package com.solace.samples.cloudfoundry.javaapp.model;
 
 public class SimpleMessage {
 
+    public static final String DIRECT = "DIRECT";
+    public static final String PERSISTENT = "PERSISTENT";
+
     private String topic;
     private String body;
+    private String deliveryMode;
 
     public SimpleMessage() {
         this.topic = "";
         this.body = "";
+        this.deliveryMode = DIRECT;
     }
 
     public String getTopic() {
@@ -44,4 +49,12 @@ public class SimpleMessage {
     public void setBody(String body) {
         this.body = body;
     }
+
+    public String getDeliveryMode() {
+        return deliveryMode;
+    }
+
+    public void setDeliveryMode(String deliveryMode) {
+        this.deliveryMode = deliveryMode;
+    }
 }
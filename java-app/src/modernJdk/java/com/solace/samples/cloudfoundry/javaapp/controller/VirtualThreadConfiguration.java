@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Only built with -PmodernJdk: Tomcat handles every request on a virtual
+ * thread of its own, and so do the workers processing received messages. A
+ * request blocked in addSubscription(topic, true) or waiting for room in the
+ * publish window then parks its virtual thread instead of holding one of the
+ * threads of the Tomcat pool.
+ *
+ * SOLACE_VIRTUAL_THREADS=false goes back to the thread pools on the same build,
+ * to compare the two.
+ */
+@Configuration
+@ConditionalOnProperty(name = "SOLACE_VIRTUAL_THREADS", havingValue = "true", matchIfMissing = true)
+public class VirtualThreadConfiguration {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    // Taken by the controller for the workers of its ReceiveStage
+    @Bean
+    public ThreadFactory receiveThreadFactory() {
+        return Thread.ofVirtual().name("solace-receive-", 0).factory();
+    }
+}
@@ -21,8 +21,13 @@ package com.solace.samples.cloudfoundry.securesession;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+
+import com.solace.samples.cloudfoundry.common.MessagePushConfiguration;
 
 @SpringBootApplication
+// The WebSocket push is configured outside of the packages the application scans
+@Import(MessagePushConfiguration.class)
 public class Application {
 
     public static void main(String[] args) {
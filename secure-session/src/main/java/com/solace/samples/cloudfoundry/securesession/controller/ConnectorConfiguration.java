@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.securesession.controller;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class ConnectorConfiguration implements WebMvcConfigurer {
+
+    // Wait before the second connection attempt, doubled after each failed one up to the maximum
+    @Value("${SOLACE_CONNECT_RETRY_WAIT_IN_MILLIS:1000}")
+    private long retryWaitMillis;
+    @Value("${SOLACE_CONNECT_MAX_RETRY_WAIT_IN_MILLIS:30000}")
+    private long maxRetryWaitMillis;
+
+    // Shows up as "solaceConnector" in /actuator/health and in its readiness group
+    @Bean
+    public BackgroundConnector solaceConnector() {
+        return new BackgroundConnector(retryWaitMillis, maxRetryWaitMillis);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        BackgroundConnector connector = solaceConnector();
+        // Reads are served from what was received so far, only the rest needs the connection
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+                    throws Exception {
+                if (connector.isConnected() || HttpMethod.GET.matches(request.getMethod())) {
+                    return true;
+                }
+                response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+                if (connector.getState() != BackgroundConnector.State.FAILED) {
+                    response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(connector.getRetryAfterSeconds()));
+                }
+                response.getWriter().write("{'description': 'Not connected to Solace PubSub+, state "
+                        + connector.getState() + "'}");
+                return false;
+            }
+        }).excludePathPatterns("/status");
+    }
+}
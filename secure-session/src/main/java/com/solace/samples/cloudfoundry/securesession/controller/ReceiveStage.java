@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.securesession.controller;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Hands received messages from the API dispatch thread over to a pool of
+ * worker threads through a pre-allocated ring buffer.
+ *
+ * There is a single producer, the thread calling offer(), and any number of
+ * workers. offer() never blocks: when the ring is full the message is dropped
+ * and counted, so a slow worker can never stall the thread reading the socket.
+ * Each slot carries a sequence number telling whether it is free to be written
+ * or ready to be taken, which lets the workers claim slots without a lock.
+ *
+ * The workers are platform threads unless a ThreadFactory is given, which is
+ * how they run on virtual threads on a modern JDK. An idle virtual worker
+ * should PARK: spinning or yielding keeps its carrier thread busy.
+ */
+public class ReceiveStage<T> {
+
+    private static final Log logger = LogFactory.getLog(ReceiveStage.class);
+
+    // How long an idle worker parks before looking at the ring again with the PARK strategy
+    private static final long PARK_NANOS = 50_000;
+
+    public interface Handler<T> {
+        void handle(T message);
+    }
+
+    // What an idle worker does while the ring is empty
+    public enum WaitStrategy {
+        BUSY_SPIN, YIELD, PARK
+    }
+
+    private final Object[] slots;
+    private final AtomicLongArray slotSequences;
+    private final int mask;
+
+    // Next sequence to write, only ever updated by the producer thread
+    private volatile long tail;
+    // Next sequence to take, claimed by the workers
+    private final AtomicLong head = new AtomicLong();
+
+    private final AtomicLong numDropped = new AtomicLong();
+
+    private final Handler<T> handler;
+    private final WaitStrategy waitStrategy;
+    private final Thread[] workers;
+    private volatile boolean running = true;
+
+    public ReceiveStage(String name, int capacity, int numWorkers, WaitStrategy waitStrategy, Handler<T> handler) {
+        this(name, capacity, numWorkers, waitStrategy, handler, null);
+    }
+
+    public ReceiveStage(String name, int capacity, int numWorkers, WaitStrategy waitStrategy, Handler<T> handler,
+            ThreadFactory threadFactory) {
+        // Round up to a power of two so a slot index is a simple mask of the sequence
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Object[size];
+        this.slotSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slotSequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.handler = handler;
+        this.waitStrategy = waitStrategy;
+
+        this.workers = new Thread[Math.max(1, numWorkers)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = threadFactory != null
+                    ? threadFactory.newThread(this::work)
+                    : new Thread(this::work, name + "-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    // Must only be called from the single producer thread
+    public boolean offer(T message) {
+        long sequence = tail;
+        int index = (int) sequence & mask;
+        if (slotSequences.get(index) != sequence) {
+            // The slot still holds a message no worker has taken yet
+            numDropped.incrementAndGet();
+            return false;
+        }
+        slots[index] = message;
+        slotSequences.lazySet(index, sequence + 1);
+        tail = sequence + 1;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T poll() {
+        while (true) {
+            long sequence = head.get();
+            int index = (int) sequence & mask;
+            long slotSequence = slotSequences.get(index);
+            if (slotSequence < sequence + 1) {
+                // Nothing was written there yet
+                return null;
+            }
+            if (slotSequence == sequence + 1 && head.compareAndSet(sequence, sequence + 1)) {
+                T message = (T) slots[index];
+                slots[index] = null;
+                // Hand the slot back to the producer for its next lap around the ring
+                slotSequences.lazySet(index, sequence + slots.length);
+                return message;
+            }
+        }
+    }
+
+    private void work() {
+        while (running) {
+            T message = poll();
+            if (message == null) {
+                idle();
+                continue;
+            }
+            try {
+                handler.handle(message);
+            } catch (RuntimeException e) {
+                logger.error("Processing a received message failed.", e);
+            }
+        }
+    }
+
+    private void idle() {
+        switch (waitStrategy) {
+        case BUSY_SPIN:
+            break;
+        case YIELD:
+            Thread.yield();
+            break;
+        default:
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    // Messages waiting for a worker, may be slightly stale while messages are flowing
+    public long getOccupancy() {
+        return Math.max(0, tail - head.get());
+    }
+
+    public long getNumDropped() {
+        return numDropped.get();
+    }
+
+    public void resetStats() {
+        numDropped.set(0);
+    }
+}
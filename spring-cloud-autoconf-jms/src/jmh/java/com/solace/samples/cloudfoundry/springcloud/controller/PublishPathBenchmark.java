@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.springcloud.controller;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.solace.samples.cloudfoundry.common.LatencyStamp;
+import com.solace.samples.cloudfoundry.common.MessageStats;
+import com.solace.samples.cloudfoundry.springcloud.model.SimpleMessage;
+
+/**
+ * The steps of POST /message: binding the JSON body, then convertAndSend
+ * through a JmsTemplate over a CachingConnectionFactory, set up the way
+ * ProducerConfiguration does. The messages go to an in-memory ActiveMQ broker
+ * in the same JVM, so no Solace PubSub+ service is needed to run it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublishPathBenchmark {
+
+    private static final String MESSAGE_JSON = "{\"topic\": \"benchmark/topic\", \"body\": \"TEST_MESSAGE\"}";
+
+    // Built like the one Spring MVC binds request bodies with
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private SimpleMessage message;
+
+    private BrokerService broker;
+    private CachingConnectionFactory connectionFactory;
+    private JmsTemplate jmsTemplate;
+    private LatencyStamp latencyStamp;
+
+    @Setup
+    public void setup() throws Exception {
+        message = objectMapper.readValue(MESSAGE_JSON, SimpleMessage.class);
+
+        broker = new BrokerService();
+        broker.setBrokerName("benchmark");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+
+        // Sends do not wait for the broker, only the client side of the send is measured
+        connectionFactory = new CachingConnectionFactory(
+                new ActiveMQConnectionFactory("vm://benchmark?create=false&jms.useAsyncSend=true"));
+        jmsTemplate = new JmsTemplate(connectionFactory);
+        jmsTemplate.setPubSubDomain(true);
+        latencyStamp = new LatencyStamp(new MessageStats(1, 100));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        connectionFactory.destroy();
+        broker.stop();
+    }
+
+    @Benchmark
+    public SimpleMessage readSimpleMessage() throws IOException {
+        return objectMapper.readValue(MESSAGE_JSON, SimpleMessage.class);
+    }
+
+    @Benchmark
+    public String writeSimpleMessage() throws IOException {
+        return objectMapper.writeValueAsString(message);
+    }
+
+    @Benchmark
+    public void convertAndSend() {
+        jmsTemplate.convertAndSend(message.getTopic(), message.getBody(), this::stampLatency);
+    }
+
+    private Message stampLatency(Message message) throws JMSException {
+        message.setStringProperty(LatencyStamp.SENDER_ID_PROPERTY, latencyStamp.getSenderId());
+        message.setLongProperty(LatencyStamp.SEND_NANOS_PROPERTY, System.nanoTime());
+        message.setLongProperty(LatencyStamp.SEND_TIME_MICROS_PROPERTY, LatencyStamp.currentTimeMicros());
+        return message;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.springcloud.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.JMSException;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solace.samples.cloudfoundry.common.LastValueCache;
+import com.solace.samples.cloudfoundry.common.LatencyStamp;
+import com.solace.samples.cloudfoundry.common.MessageStats;
+import com.solace.samples.cloudfoundry.common.ReceivedMessageHistory;
+
+/**
+ * The work SimpleMessageListener.onMessage does for every message, on a
+ * TextMessage as the listener container hands it over. The components are
+ * sized with the controller defaults.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceivePathBenchmark {
+
+    private static final String TOPIC = "benchmark/topic";
+
+    @Param({ "64", "1024" })
+    private int payloadSize;
+
+    private MessageStats messageStats;
+    private LatencyStamp latencyStamp;
+    private ReceivedMessageHistory receivedMessageHistory;
+    private LastValueCache lastValueCache;
+    private ActiveMQTextMessage receivedMessage;
+
+    @Setup
+    public void setup() throws JMSException {
+        messageStats = new MessageStats(1, 100);
+        latencyStamp = new LatencyStamp(messageStats);
+        receivedMessageHistory = new ReceivedMessageHistory(4096, 2048);
+        lastValueCache = new LastValueCache(50000, 33554432);
+
+        char[] text = new char[payloadSize];
+        Arrays.fill(text, 'x');
+        receivedMessage = new ActiveMQTextMessage();
+        receivedMessage.setJMSDestination(new ActiveMQTopic(TOPIC));
+        receivedMessage.setText(new String(text));
+        receivedMessage.setStringProperty(LatencyStamp.SENDER_ID_PROPERTY, latencyStamp.getSenderId());
+        receivedMessage.setLongProperty(LatencyStamp.SEND_NANOS_PROPERTY, System.nanoTime());
+        receivedMessage.setLongProperty(LatencyStamp.SEND_TIME_MICROS_PROPERTY, LatencyStamp.currentTimeMicros());
+    }
+
+    @Benchmark
+    public void onMessage() throws JMSException {
+        messageStats.recordReceived(receivedMessage.getJMSDestination().toString());
+        if (receivedMessage.propertyExists(LatencyStamp.SENDER_ID_PROPERTY)) {
+            latencyStamp.record(receivedMessage.getStringProperty(LatencyStamp.SENDER_ID_PROPERTY),
+                    receivedMessage.getLongProperty(LatencyStamp.SEND_NANOS_PROPERTY),
+                    receivedMessage.getLongProperty(LatencyStamp.SEND_TIME_MICROS_PROPERTY));
+        }
+
+        String topic = receivedMessage.getJMSDestination().toString();
+        String text = receivedMessage.getText();
+        byte[] payload = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        long timestamp = System.currentTimeMillis();
+        receivedMessageHistory.add(topic, payload, timestamp);
+        lastValueCache.put(topic, payload, timestamp);
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.jms.support.destination.JndiDestinationResolver;
 import org.springframework.jndi.JndiObjectFactoryBean;
 import org.springframework.jndi.JndiTemplate;
 
+import javax.jms.ConnectionFactory;
 import javax.naming.NamingException;
 
 @EnableJms
@@ -30,6 +31,9 @@ public class JndiConsumerConfiguration {
         JndiObjectFactoryBean factoryBean = new JndiObjectFactoryBean();
         factoryBean.setJndiTemplate(jndiTemplate);
         factoryBean.setJndiName(connectionFactoryJndiName);
+        // Looked up on first use rather than while the application starts, the lookup connects to the service
+        factoryBean.setLookupOnStartup(false);
+        factoryBean.setProxyInterface(ConnectionFactory.class);
 
         // following ensures all the properties are injected before returning
         try {
@@ -29,6 +29,9 @@ public class JndiProducerConfiguration {
         JndiObjectFactoryBean factoryBean = new JndiObjectFactoryBean();
         factoryBean.setJndiTemplate(jndiTemplate);
         factoryBean.setJndiName(connectionFactoryJndiName);
+        // Looked up on first use rather than while the application starts, the lookup connects to the service
+        factoryBean.setLookupOnStartup(false);
+        factoryBean.setProxyInterface(ConnectionFactory.class);
 
 		// following ensures all the properties are injected before returning
 		try {
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.springcloud.controller;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.solace.samples.cloudfoundry.springcloud.model.LoadTestRequest;
+
+/**
+ * Publishes at a fixed rate for a fixed duration through the producer the
+ * application already uses, and measures what was achieved.
+ *
+ * The schedule is open loop: message i is due at start + i / rate whatever
+ * happened to the messages before it, and its latency is measured from that
+ * due time rather than from when it was actually sent. A publisher that
+ * stalls therefore shows up in the latency of every message that waited
+ * behind it instead of silently lowering the rate (coordinated omission).
+ * The messages are dealt round robin to the publishing threads.
+ */
+public class LoadTest {
+
+    private static final Log logger = LogFactory.getLog(LoadTest.class);
+
+    public static final int MAX_CONCURRENCY = 64;
+    public static final int MAX_DURATION_IN_SECONDS = 3600;
+    public static final int MAX_TOPICS = 10000;
+    public static final int MAX_MESSAGE_SIZE = 10 * 1024 * 1024;
+
+    private static final long HIGHEST_TRACKABLE_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+    // Sends the progress of every load test being watched
+    private static final ScheduledExecutorService progressScheduler = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "loadtest-progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    public interface Publisher {
+        void publish(String topic, String body) throws Exception;
+    }
+
+    private final String id = UUID.randomUUID().toString();
+    private final LoadTestRequest request;
+    private final Publisher publisher;
+
+    private final String[] topics;
+    private final String body;
+    private final long numMessages;
+    private final double intervalNanos;
+
+    private final LongAdder numSent = new LongAdder();
+    private final LongAdder numFailed = new LongAdder();
+    private final Recorder latency = new Recorder(HIGHEST_TRACKABLE_LATENCY_NANOS, 3);
+    private final Histogram latencyTotal = new Histogram(HIGHEST_TRACKABLE_LATENCY_NANOS, 3);
+    private Histogram latencyInterval;
+    private volatile String lastError;
+
+    private final AtomicInteger numRunning = new AtomicInteger();
+    private volatile long startNanos;
+    private volatile long endNanos;
+    // Only set once endNanos is
+    private volatile boolean done;
+
+    // Returns null when the request is valid, otherwise what is wrong with it
+    public static String validate(LoadTestRequest request) {
+        if (!(request.getRate() > 0)) {
+            return "rate must be greater than 0";
+        }
+        if (request.getMessageSize() < 0 || request.getMessageSize() > MAX_MESSAGE_SIZE) {
+            return "messageSize must be between 0 and " + MAX_MESSAGE_SIZE;
+        }
+        if (request.getTopicPattern() == null || request.getTopicPattern().isEmpty()) {
+            return "topicPattern must not be empty";
+        }
+        if (request.getNumTopics() < 1 || request.getNumTopics() > MAX_TOPICS) {
+            return "numTopics must be between 1 and " + MAX_TOPICS;
+        }
+        if (request.getDurationInSeconds() < 1 || request.getDurationInSeconds() > MAX_DURATION_IN_SECONDS) {
+            return "durationInSeconds must be between 1 and " + MAX_DURATION_IN_SECONDS;
+        }
+        if (request.getConcurrency() < 1 || request.getConcurrency() > MAX_CONCURRENCY) {
+            return "concurrency must be between 1 and " + MAX_CONCURRENCY;
+        }
+        return null;
+    }
+
+    public LoadTest(LoadTestRequest request, Publisher publisher) {
+        this.request = request;
+        this.publisher = publisher;
+
+        this.topics = new String[request.getNumTopics()];
+        for (int i = 0; i < topics.length; i++) {
+            topics[i] = request.getTopicPattern().replace("{n}", Integer.toString(i));
+        }
+        char[] chars = new char[request.getMessageSize()];
+        Arrays.fill(chars, 'x');
+        this.body = new String(chars);
+
+        this.numMessages = (long) Math.ceil(request.getRate() * request.getDurationInSeconds());
+        this.intervalNanos = 1e9 / request.getRate();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void start() {
+        startNanos = System.nanoTime();
+        int concurrency = request.getConcurrency();
+        numRunning.set(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            final int first = i;
+            Thread thread = new Thread(() -> publish(first, concurrency), "loadtest-" + id + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void publish(long first, int step) {
+        try {
+            for (long i = first; i < numMessages; i += step) {
+                long dueNanos = startNanos + (long) (i * intervalNanos);
+                long delayNanos;
+                while ((delayNanos = dueNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delayNanos);
+                }
+                try {
+                    publisher.publish(topics[(int) (i % topics.length)], body);
+                    numSent.increment();
+                } catch (Exception e) {
+                    numFailed.increment();
+                    lastError = e.getMessage();
+                }
+                latency.recordValue(Math.min(System.nanoTime() - dueNanos, HIGHEST_TRACKABLE_LATENCY_NANOS));
+            }
+        } finally {
+            if (numRunning.decrementAndGet() == 0) {
+                endNanos = System.nanoTime();
+                done = true;
+                logger.info("Load test " + id + " finished: " + getStatus());
+            }
+        }
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public long getRemainingMillis() {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        return Math.max(0, TimeUnit.SECONDS.toMillis(request.getDurationInSeconds()) - elapsedNanos / 1_000_000);
+    }
+
+    public JSONObject getStatus() {
+        boolean finished = done;
+        long elapsedNanos = (finished ? endNanos : System.nanoTime()) - startNanos;
+        long sent = numSent.sum();
+        Histogram histogram;
+        synchronized (this) {
+            latencyInterval = latency.getIntervalHistogram(latencyInterval);
+            latencyTotal.add(latencyInterval);
+            histogram = latencyTotal.copy();
+        }
+
+        JSONObject statusJson = new JSONObject();
+        statusJson.put("id", id);
+        statusJson.put("state", finished ? "COMPLETED" : "RUNNING");
+        statusJson.put("targetRate", request.getRate());
+        statusJson.put("messageSize", request.getMessageSize());
+        statusJson.put("concurrency", request.getConcurrency());
+        statusJson.put("elapsedSeconds", elapsedNanos / 1e9);
+        statusJson.put("numMsgsScheduled", numMessages);
+        statusJson.put("numMsgsSent", sent);
+        statusJson.put("numMsgsFailed", numFailed.sum());
+        statusJson.put("achievedRate", elapsedNanos > 0 ? sent * 1e9 / elapsedNanos : 0);
+        if (lastError != null) {
+            statusJson.put("lastError", lastError);
+        }
+
+        // From the time each message was due, not from when it was actually sent
+        JSONObject latencyJson = new JSONObject();
+        latencyJson.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+        latencyJson.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+        latencyJson.put("p99.9", histogram.getValueAtPercentile(99.9) / 1000.0);
+        latencyJson.put("max", histogram.getMaxValue() / 1000.0);
+        statusJson.put("latencyMicros", latencyJson);
+        return statusJson;
+    }
+
+    // Sends a progress event every second until the test is over, then a result event
+    public void stream(SseEmitter emitter) {
+        progressScheduler.execute(() -> sendProgress(emitter));
+    }
+
+    private void sendProgress(SseEmitter emitter) {
+        boolean finished = done;
+        try {
+            emitter.send(SseEmitter.event()
+                    .name(finished ? "result" : "progress")
+                    .data(getStatus().toString(), MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away
+            return;
+        }
+        if (finished) {
+            emitter.complete();
+        } else {
+            progressScheduler.schedule(() -> sendProgress(emitter), PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -19,8 +19,14 @@
 
 package com.solace.samples.cloudfoundry.springcloud.controller;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.annotation.PostConstruct;
 import javax.jms.ConnectionFactory;
@@ -28,23 +34,41 @@ import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.jms.TextMessage;
+import javax.servlet.http.HttpServletRequest;
 
 import com.solace.services.core.model.SolaceServiceCredentials;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.listener.DefaultMessageListenerContainer;
 import org.springframework.jms.support.destination.JndiDestinationResolver;
 import org.springframework.jndi.JndiObjectFactoryBean;
+import org.springframework.util.AntPathMatcher;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import com.solace.samples.cloudfoundry.common.LastValueCache;
+import com.solace.samples.cloudfoundry.common.LatencyStamp;
+import com.solace.samples.cloudfoundry.common.MessagePush;
+import com.solace.samples.cloudfoundry.common.MessageStats;
+import com.solace.samples.cloudfoundry.common.ReceivedMessageHistory;
+import com.solace.samples.cloudfoundry.common.SharedSubscriptions;
+import com.solace.samples.cloudfoundry.springcloud.model.LoadTestRequest;
 import com.solace.samples.cloudfoundry.springcloud.model.SimpleMessage;
 import com.solace.samples.cloudfoundry.springcloud.model.SimpleSubscription;
 import com.solacesystems.jms.SpringSolJmsJndiTemplateCloudFactory;
@@ -54,12 +78,18 @@ public class SolaceController {
 
 	private static final Log logger = LogFactory.getLog(SolaceController.class);
 
+	// The most received messages returned by a single GET /messages
+	private static final int MAX_HISTORY_PAGE_SIZE = 1000;
+
 	@Autowired
 	private JndiDestinationResolver jndiDestinationResolver;
 
 	@Autowired
 	private JndiObjectFactoryBean connectionFactory;
 
+	@Autowired
+	private BackgroundConnector solaceConnector;
+
     @Autowired
     private JmsTemplate jmsTemplate;
 
@@ -79,12 +109,75 @@ public class SolaceController {
 	@Autowired
 	SpringSolJmsJndiTemplateCloudFactory springSolJmsJndiTemplateCloudFactory;
 
-	private TextMessage lastReceivedMessage;
+	private ReceivedMessageHistory receivedMessageHistory;
+
+	// Number of received messages kept, and the space each of them may take
+	@Value("${SOLACE_MESSAGE_HISTORY_SIZE:4096}")
+	private int messageHistorySize;
+	@Value("${SOLACE_MESSAGE_HISTORY_ENTRY_MAX_BYTES:2048}")
+	private int messageHistoryEntryMaxBytes;
+
+	private LastValueCache lastValueCache;
+
+	// Bounds of the cache holding the last message received on each topic
+	@Value("${SOLACE_LAST_VALUE_CACHE_MAX_TOPICS:50000}")
+	private int lastValueCacheMaxTopics;
+	@Value("${SOLACE_LAST_VALUE_CACHE_MAX_BYTES:33554432}")
+	private long lastValueCacheMaxBytes;
+
     private HashMap<String, DefaultMessageListenerContainer> listenerContainersMap = new HashMap<String, DefaultMessageListenerContainer>();
 
+	// Only there on a modern JDK, where the listener containers consume on virtual threads
+	@Autowired(required = false)
+	@Qualifier("listenerTaskExecutor")
+	private TaskExecutor listenerTaskExecutor;
+
+	// Topics subscribed through POST /subscriptions, without a listener container each
+	private TopicConsumers topicConsumers;
+
+	private SharedSubscriptions sharedSubscriptions;
+
+	// Share the subscriptions between the instances of the application, each message goes to only one of them.
+	// The group defaults to the Cloud Foundry application name.
+	@Value("${SOLACE_SHARED_SUBSCRIPTIONS:false}")
+	private boolean sharedSubscriptionsEnabled;
+	@Value("${SOLACE_SHARED_SUBSCRIPTION_GROUP:${vcap.application.name:}}")
+	private String sharedSubscriptionGroup;
+	@Value("${CF_INSTANCE_INDEX:0}")
+	private String instanceIndex;
+
 	// Stats
-	private final AtomicInteger numMessagesReceived = new AtomicInteger();
-	private final AtomicInteger numMessagesSent = new AtomicInteger();
+	private MessageStats messageStats;
+
+	// Topics are counted per prefix made of their first levels, up to a maximum number of prefixes
+	@Value("${SOLACE_STATS_TOPIC_PREFIX_LEVELS:1}")
+	private int statsTopicPrefixLevels;
+	@Value("${SOLACE_STATS_MAX_TOPIC_PREFIXES:100}")
+	private int statsMaxTopicPrefixes;
+
+	private LatencyStamp latencyStamp;
+
+	// Stamp sent messages so the receiver can measure their end-to-end latency. Off by default, the
+	// stamp adds properties to every message sent.
+	@Value("${SOLACE_STAMP_LATENCY:false}")
+	private boolean stampLatency;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private MessagePush messagePush;
+
+	// Load tests started by POST /loadtest, the oldest ones are forgotten
+	private static final int MAX_LOAD_TESTS = 20;
+	// How long a client may keep watching a load test after its end
+	private static final long LOAD_TEST_STREAM_GRACE_MILLIS = 30000;
+	private final Map<String, LoadTest> loadTests = Collections.synchronizedMap(new LinkedHashMap<String, LoadTest>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, LoadTest> eldest) {
+			return size() > MAX_LOAD_TESTS;
+		}
+	});
 
     // JMS Message listener helpers
 
@@ -92,12 +185,20 @@ public class SolaceController {
 		@Override
         public void onMessage(Message message) {
 
-			numMessagesReceived.incrementAndGet();
+			messageStats.recordReceived(getTopicName(message));
+			sharedSubscriptions.recordReceived();
+			recordEndToEndLatency(message);
 
 			if (message instanceof TextMessage) {
-				lastReceivedMessage = (TextMessage) message;
 				try {
-					logger.info("Received message : " + lastReceivedMessage.getText());
+					String topic = message.getJMSDestination().toString();
+					String text = ((TextMessage) message).getText();
+					byte[] payload = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+					long timestamp = System.currentTimeMillis();
+					long sequence = receivedMessageHistory.add(topic, payload, timestamp);
+					lastValueCache.put(topic, payload, timestamp);
+					messagePush.publish(sequence, topic, payload, timestamp);
+					logger.info("Received message : " + text);
 				} catch (JMSException e) {
 					logger.error("Error getting text of the received TextMessage: " + e);
 				}
@@ -116,6 +217,14 @@ public class SolaceController {
         lc.setDestinationName(destination);
         lc.setMessageListener(new SimpleMessageListener());
         lc.setPubSubDomain(true);
+        if (sharedSubscriptions.isEnabled()) {
+            // Consumes through a JMS 2.0 shared consumer, the instances of the application take turns
+            lc.setSubscriptionShared(true);
+            lc.setSubscriptionName(sharedSubscriptions.getSubscriptionName(destination));
+        }
+        if (listenerTaskExecutor != null) {
+            lc.setTaskExecutor(listenerTaskExecutor);
+        }
         lc.initialize();
         return lc;
     }
@@ -126,6 +235,21 @@ public class SolaceController {
 		// Show available services
 		logger.info("************* Init Called ************");
 
+		receivedMessageHistory = new ReceivedMessageHistory(messageHistorySize, messageHistoryEntryMaxBytes);
+		lastValueCache = new LastValueCache(lastValueCacheMaxTopics, lastValueCacheMaxBytes);
+		messageStats = new MessageStats(statsTopicPrefixLevels, statsMaxTopicPrefixes);
+		messageStats.bindTo(meterRegistry);
+		latencyStamp = new LatencyStamp(messageStats);
+		sharedSubscriptions = new SharedSubscriptions(sharedSubscriptionsEnabled, sharedSubscriptionGroup,
+				instanceIndex);
+		sharedSubscriptions.bindTo(meterRegistry);
+		if (sharedSubscriptions.isEnabled()) {
+			logger.info("Sharing the subscriptions in group " + sharedSubscriptions.getGroup() + " as instance "
+					+ sharedSubscriptions.getInstanceIndex());
+		}
+		topicConsumers = new TopicConsumers((ConnectionFactory) connectionFactory.getObject(), jndiDestinationResolver,
+				new SimpleMessageListener(), sharedSubscriptions);
+
 		logger.info(String.format("SpringSolJmsJndiTemplateCloudFactory discovered %s solace-pubsub service(s)",
 				springSolJmsJndiTemplateCloudFactory.getSolaceServiceCredentials().size()));
 
@@ -138,6 +262,9 @@ public class SolaceController {
 					discoveredSolaceMessagingService.getMsgVpnName()));
 		}
 
+		// The connection factory is looked up on first use, do it off the startup path and find out
+		// whether the service can be reached, see BackgroundConnector
+		solaceConnector.start(() -> ((ConnectionFactory) connectionFactory.getObject()).createConnection().close());
 	}
 
     // REST services
@@ -147,8 +274,9 @@ public class SolaceController {
 
 		logger.info("Sending message on topic: " + message.getTopic() + " with body: " + message.getBody());
 		try {
-			this.jmsTemplate.convertAndSend(message.getTopic(), message.getBody());
-			numMessagesSent.incrementAndGet();
+			long publishStartNanos = System.nanoTime();
+			this.jmsTemplate.convertAndSend(message.getTopic(), message.getBody(), this::stampLatency);
+			messageStats.recordSent(message.getTopic(), System.nanoTime() - publishStartNanos);
 
 		} catch (Exception e) {
 			logger.error("Service Creation failed.", e);
@@ -160,19 +288,15 @@ public class SolaceController {
 	@RequestMapping(value = "/message", method = RequestMethod.GET)
 	public ResponseEntity<SimpleMessage> getLastMessageReceived() {
 
+		ReceivedMessageHistory.Entry lastReceivedMessage = receivedMessageHistory.getLatest();
 		if (lastReceivedMessage != null) {
 			logger.info("Sending the lastReceivedMessage");
 
 			// Return the last received message if it exists.
 			SimpleMessage receivedMessage = new SimpleMessage();
 
-			try {
-				receivedMessage.setTopic(lastReceivedMessage.getJMSDestination().toString());
-				receivedMessage.setBody(lastReceivedMessage.getText());
-			} catch (JMSException e) {
-				logger.error("Unable to extract message details.", e);
-				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-			}
+			receivedMessage.setTopic(lastReceivedMessage.getTopic());
+			receivedMessage.setBody(new String(lastReceivedMessage.getPayload(), StandardCharsets.UTF_8));
 			return new ResponseEntity<>(receivedMessage, HttpStatus.OK);
 		} else {
 			logger.info("Sorry did not find a lastReceivedMessage");
@@ -181,13 +305,94 @@ public class SolaceController {
 
 	}
 
+	// Pushes every message received on a topic starting with topicPrefix as a server-sent event
+	@RequestMapping(value = "/message/stream", method = RequestMethod.GET)
+	public ResponseEntity<SseEmitter> streamReceivedMessages(
+			@RequestParam(value = "topicPrefix", defaultValue = "") String topicPrefix,
+			@RequestParam(value = "overflow", defaultValue = "") String overflow) {
+
+		MessagePush.OverflowPolicy overflowPolicy;
+		try {
+			overflowPolicy = messagePush.getOverflowPolicy(overflow);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+
+		// Kept open until the client goes away
+		SseEmitter emitter = new SseEmitter(0L);
+		MessagePush.Client client = messagePush.subscribe(topicPrefix, overflowPolicy, new MessagePush.Sink() {
+			@Override
+			public void send(String messageJson) throws IOException {
+				emitter.send(SseEmitter.event().name("message").data(messageJson, MediaType.APPLICATION_JSON));
+			}
+
+			@Override
+			public void close() {
+				emitter.complete();
+			}
+		});
+		if (client == null) {
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		emitter.onCompletion(client::close);
+		emitter.onTimeout(client::close);
+		emitter.onError(e -> client.close());
+		return new ResponseEntity<>(emitter, HttpStatus.OK);
+	}
+
+	// Topics contain '/', so the topic is everything in the path after /message/
+	@RequestMapping(value = "/message/**", method = RequestMethod.GET)
+	public ResponseEntity<SimpleMessage> getLastMessageReceivedOnTopic(HttpServletRequest request) {
+
+		String topic = new AntPathMatcher().extractPathWithinPattern(
+				(String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE),
+				(String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE));
+
+		LastValueCache.Value lastValue = lastValueCache.get(topic);
+		if (lastValue == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		SimpleMessage receivedMessage = new SimpleMessage();
+		receivedMessage.setTopic(lastValue.getTopic());
+		receivedMessage.setBody(new String(lastValue.getPayload(), StandardCharsets.UTF_8));
+		return new ResponseEntity<>(receivedMessage, HttpStatus.OK);
+	}
+
+	@RequestMapping(value = "/messages", method = RequestMethod.GET)
+	public ResponseEntity<String> getReceivedMessages(@RequestParam(value = "since", defaultValue = "0") long since,
+			@RequestParam(value = "topicPrefix", defaultValue = "") String topicPrefix,
+			@RequestParam(value = "limit", defaultValue = "100") int limit) {
+
+		ReceivedMessageHistory.Page page = receivedMessageHistory.query(since, topicPrefix,
+				Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE)));
+
+		JSONArray messagesJson = new JSONArray();
+		for (ReceivedMessageHistory.Entry entry : page.getEntries()) {
+			JSONObject messageJson = new JSONObject();
+			messageJson.put("sequence", entry.getSequence());
+			messageJson.put("timestamp", entry.getTimestamp());
+			messageJson.put("topic", entry.getTopic());
+			messageJson.put("body", new String(entry.getPayload(), StandardCharsets.UTF_8));
+			messageJson.put("truncated", entry.isTruncated());
+			messagesJson.put(messageJson);
+		}
+
+		// Pass nextSince back as since to get the following page
+		JSONObject pageJson = new JSONObject();
+		pageJson.put("messages", messagesJson);
+		pageJson.put("nextSince", page.getNextSince());
+		pageJson.put("oldestSequence", page.getOldestSequence());
+		return new ResponseEntity<>(pageJson.toString(), HttpStatus.OK);
+	}
+
 	@RequestMapping(value = "/subscription", method = RequestMethod.POST)
 	public ResponseEntity<String> addSubscription(@RequestBody SimpleSubscription subscription) {
 		String subscriptionTopic = subscription.getSubscription();
 
 		logger.info("Adding a subscription to topic: " + subscriptionTopic);
 
-		if ( this.listenerContainersMap.containsKey(subscriptionTopic) ) {
+		if ( this.listenerContainersMap.containsKey(subscriptionTopic) || topicConsumers.isSubscribed(subscriptionTopic) ) {
 			// Already subscribed
 			logger.error("Already subscribed to topic " + subscriptionTopic);
 			return new ResponseEntity<>("{'description': 'Already subscribed'}", HttpStatus.BAD_REQUEST);
@@ -217,6 +422,16 @@ public class SolaceController {
 		logger.info("Deleting a subscription to topic: " + subscriptionTopic);
 
 		if ( !this.listenerContainersMap.containsKey(subscriptionTopic) ) {
+			// Maybe subscribed through POST /subscriptions
+			try {
+				if (topicConsumers.unsubscribe(subscriptionTopic)) {
+					logger.info("Finished Deleting a subscription to topic: " + subscriptionTopic);
+					return new ResponseEntity<>("{}", HttpStatus.OK);
+				}
+			} catch (JMSException e) {
+				logger.error("Deleting a subscription failed.", e);
+				return new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST);
+			}
 			// Not subscribed
 			logger.error("Not subscribed to topic " + subscriptionTopic);
 			return new ResponseEntity<>("{'description': 'Was not subscribed'}", HttpStatus.BAD_REQUEST);
@@ -236,22 +451,228 @@ public class SolaceController {
 		return new ResponseEntity<>("{}", HttpStatus.OK);
 	}
 
+	// Subscribes to many topics at once, over one connection rather than a listener container per topic
+	@RequestMapping(value = "/subscriptions", method = RequestMethod.POST)
+	public ResponseEntity<String> addSubscriptions(@RequestBody List<SimpleSubscription> subscriptions) {
+		List<String> topics = getSubscriptionTopics(subscriptions);
+		logger.info("Adding " + topics.size() + " subscriptions");
+
+		String[] errors = new String[topics.size()];
+		for (int i = 0; i < topics.size(); i++) {
+			if (topics.get(i) == null || topics.get(i).isEmpty()) {
+				errors[i] = "subscription is missing";
+			} else if (this.listenerContainersMap.containsKey(topics.get(i))) {
+				errors[i] = "Already subscribed";
+			}
+		}
+
+		try {
+			topicConsumers.subscribe(topics, errors);
+		} catch (JMSException e) {
+			logger.error("Adding subscriptions failed.", e);
+			return new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST);
+		}
+		logger.info("Finished Adding " + topics.size() + " subscriptions");
+		return subscriptionsResult(topics, errors);
+	}
+
+	@RequestMapping(value = "/subscriptions", method = RequestMethod.DELETE)
+	public ResponseEntity<String> deleteSubscriptions(@RequestBody List<SimpleSubscription> subscriptions) {
+		List<String> topics = getSubscriptionTopics(subscriptions);
+		logger.info("Deleting " + topics.size() + " subscriptions");
+
+		String[] errors = new String[topics.size()];
+		for (int i = 0; i < topics.size(); i++) {
+			String topic = topics.get(i);
+			try {
+				// Subscribed either on its own or as part of a batch
+				DefaultMessageListenerContainer listenercontainer = this.listenerContainersMap.remove(topic);
+				if (listenercontainer != null) {
+					listenercontainer.stop();
+					listenercontainer.destroy();
+				} else if (!topicConsumers.unsubscribe(topic)) {
+					errors[i] = "Was not subscribed";
+				}
+			} catch (Exception e) {
+				logger.error("Deleting a subscription to topic " + topic + " failed.", e);
+				errors[i] = e.getMessage();
+			}
+		}
+		logger.info("Finished Deleting " + topics.size() + " subscriptions");
+		return subscriptionsResult(topics, errors);
+	}
+
+	private List<String> getSubscriptionTopics(List<SimpleSubscription> subscriptions) {
+		List<String> topics = new ArrayList<>(subscriptions.size());
+		for (SimpleSubscription subscription : subscriptions) {
+			topics.add(subscription.getSubscription());
+		}
+		return topics;
+	}
+
+	// Reported like a batch of messages, the results tell which subscriptions failed
+	private ResponseEntity<String> subscriptionsResult(List<String> topics, String[] errors) {
+		JSONArray resultsJson = new JSONArray();
+		int numSucceeded = 0;
+		for (int i = 0; i < topics.size(); i++) {
+			JSONObject resultJson = new JSONObject();
+			resultJson.put("index", i);
+			resultJson.put("subscription", topics.get(i));
+			resultJson.put("succeeded", errors[i] == null);
+			if (errors[i] != null) {
+				resultJson.put("description", errors[i]);
+			} else {
+				numSucceeded++;
+			}
+			resultsJson.put(resultJson);
+		}
+
+		JSONObject responseJson = new JSONObject();
+		responseJson.put("numSucceeded", numSucceeded);
+		responseJson.put("numFailed", topics.size() - numSucceeded);
+		responseJson.put("results", resultsJson);
+
+		HttpStatus status = HttpStatus.OK;
+		if (numSucceeded == 0 && !topics.isEmpty()) {
+			status = HttpStatus.BAD_REQUEST;
+		} else if (numSucceeded < topics.size()) {
+			status = HttpStatus.MULTI_STATUS;
+		}
+		return new ResponseEntity<>(responseJson.toString(), status);
+	}
+
+	@RequestMapping(value = "/loadtest", method = RequestMethod.POST)
+	public ResponseEntity<String> startLoadTest(@RequestBody LoadTestRequest request) {
+
+		String error = LoadTest.validate(request);
+		if (error != null) {
+			return new ResponseEntity<>("{'description': '" + error + "'}", HttpStatus.BAD_REQUEST);
+		}
+
+		LoadTest loadTest = new LoadTest(request, this::publishLoadTestMessage);
+		loadTests.put(loadTest.getId(), loadTest);
+		logger.info("Starting load test " + loadTest.getId() + " at " + request.getRate() + " msgs/s for "
+				+ request.getDurationInSeconds() + "s over " + request.getConcurrency() + " thread(s)");
+		loadTest.start();
+		return new ResponseEntity<>(loadTest.getStatus().toString(), HttpStatus.ACCEPTED);
+	}
+
+	// Streams the progress of the load test as server-sent events, the last one holds the result
+	@RequestMapping(value = "/loadtest/{id}", method = RequestMethod.GET)
+	public ResponseEntity<SseEmitter> getLoadTest(@PathVariable("id") String id) {
+
+		LoadTest loadTest = loadTests.get(id);
+		if (loadTest == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		SseEmitter emitter = new SseEmitter(loadTest.getRemainingMillis() + LOAD_TEST_STREAM_GRACE_MILLIS);
+		loadTest.stream(emitter);
+		return new ResponseEntity<>(emitter, HttpStatus.OK);
+	}
+
+	// Publishes like sendMessage does, on behalf of a load test thread
+	private void publishLoadTestMessage(String topicName, String body) {
+		long publishStartNanos = System.nanoTime();
+		this.jmsTemplate.convertAndSend(topicName, body, this::stampLatency);
+		messageStats.recordSent(topicName, System.nanoTime() - publishStartNanos);
+	}
+
 	@RequestMapping(value = "/status", method = RequestMethod.GET)
 	public ResponseEntity<String> getStatus() {
 
 		logger.info("Received request for getStatus");
 
 		JSONObject statusJson = new JSONObject();
-		statusJson.put("numMsgsSent", numMessagesSent.get());
-		statusJson.put("numMsgsReceived", numMessagesReceived.get());
+		// Taken from a single generation of the statistics, never half reset
+		MessageStats.Snapshot stats = messageStats.snapshot();
+		statusJson.put("numMsgsSent", stats.getNumSent());
+		statusJson.put("numMsgsReceived", stats.getNumReceived());
+		statusJson.put("publishLatencyMicros", latencyStatus(stats.getPublishLatency()));
+		JSONObject endToEndLatencyJson = new JSONObject();
+		endToEndLatencyJson.put("loopback", latencyStatus(stats.getLoopbackLatency()));
+		endToEndLatencyJson.put("crossInstance", latencyStatus(stats.getCrossInstanceLatency()));
+		endToEndLatencyJson.put("numClockSkewed", stats.getNumClockSkewed());
+		statusJson.put("endToEndLatencyMicros", endToEndLatencyJson);
+		statusJson.put("topicPrefixes", topicPrefixesStatus(stats));
+		JSONObject lastValueCacheJson = new JSONObject();
+		lastValueCacheJson.put("numTopics", lastValueCache.getNumTopics());
+		lastValueCacheJson.put("numBytes", lastValueCache.getNumBytes());
+		lastValueCacheJson.put("numEvicted", lastValueCache.getNumEvicted());
+		statusJson.put("lastValueCache", lastValueCacheJson);
+
+		JSONObject pushJson = new JSONObject();
+		pushJson.put("numClients", messagePush.getNumClients());
+		pushJson.put("numPushed", messagePush.getNumPushed());
+		pushJson.put("numDropped", messagePush.getNumDropped());
+		statusJson.put("push", pushJson);
+		if (sharedSubscriptions.isEnabled()) {
+			// This instance's part of the messages of the group, since it started
+			JSONObject sharedSubscriptionsJson = new JSONObject();
+			sharedSubscriptionsJson.put("group", sharedSubscriptions.getGroup());
+			sharedSubscriptionsJson.put("instanceIndex", sharedSubscriptions.getInstanceIndex());
+			sharedSubscriptionsJson.put("numMsgsReceived", sharedSubscriptions.getNumReceived());
+			statusJson.put("sharedSubscriptions", sharedSubscriptionsJson);
+		}
 		return new ResponseEntity<>(statusJson.toString(), HttpStatus.OK);
 	}
 
+	private JSONObject latencyStatus(MessageStats.LatencySnapshot latency) {
+		JSONObject latencyJson = new JSONObject();
+		latencyJson.put("count", latency.getCount());
+		latencyJson.put("p50", latency.getNanos(50) / 1000.0);
+		latencyJson.put("p99", latency.getNanos(99) / 1000.0);
+		latencyJson.put("p99.9", latency.getNanos(99.9) / 1000.0);
+		latencyJson.put("max", latency.getMaxNanos() / 1000.0);
+		return latencyJson;
+	}
+
+	private JSONArray topicPrefixesStatus(MessageStats.Snapshot stats) {
+		JSONArray topicPrefixesJson = new JSONArray();
+		stats.getTopicPrefixes().forEach((topicPrefix, counts) -> {
+			JSONObject topicPrefixJson = new JSONObject();
+			topicPrefixJson.put("topicPrefix", topicPrefix);
+			topicPrefixJson.put("numMsgsSent", counts[0]);
+			topicPrefixJson.put("numMsgsReceived", counts[1]);
+			topicPrefixesJson.put(topicPrefixJson);
+		});
+		return topicPrefixesJson;
+	}
+
+	private Message stampLatency(Message message) throws JMSException {
+		if (stampLatency) {
+			message.setStringProperty(LatencyStamp.SENDER_ID_PROPERTY, latencyStamp.getSenderId());
+			message.setLongProperty(LatencyStamp.SEND_NANOS_PROPERTY, System.nanoTime());
+			message.setLongProperty(LatencyStamp.SEND_TIME_MICROS_PROPERTY, LatencyStamp.currentTimeMicros());
+		}
+		return message;
+	}
+
+	private void recordEndToEndLatency(Message message) {
+		try {
+			if (message.propertyExists(LatencyStamp.SENDER_ID_PROPERTY)) {
+				latencyStamp.record(message.getStringProperty(LatencyStamp.SENDER_ID_PROPERTY),
+						message.getLongProperty(LatencyStamp.SEND_NANOS_PROPERTY),
+						message.getLongProperty(LatencyStamp.SEND_TIME_MICROS_PROPERTY));
+			}
+		} catch (JMSException e) {
+			logger.error("Error getting the send time of the received message: " + e);
+		}
+	}
+
+	private String getTopicName(Message message) {
+		try {
+			return message.getJMSDestination().toString();
+		} catch (JMSException e) {
+			return null;
+		}
+	}
+
 	@RequestMapping(value = "/status", method = RequestMethod.DELETE)
 	public ResponseEntity<String> resetStats() {
-		numMessagesReceived.set(0);
-		numMessagesSent.set(0);
-		lastReceivedMessage = null;
+		messageStats.reset();
+		receivedMessageHistory.clear();
+		lastValueCache.clear();
 		return new ResponseEntity<>("{}", HttpStatus.OK);
 	}
 
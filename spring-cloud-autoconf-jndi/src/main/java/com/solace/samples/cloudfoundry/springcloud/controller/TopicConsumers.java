@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.springcloud.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.jms.Topic;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jms.support.destination.DestinationResolver;
+
+import com.solace.samples.cloudfoundry.common.SharedSubscriptions;
+
+/**
+ * Consumes many topics without a DefaultMessageListenerContainer, and the
+ * connection and polling thread that come with it, per topic.
+ *
+ * The topics of one call to subscribe() share a connection and a session,
+ * each topic being a consumer delivering to the common listener. A JMS
+ * session must not be used by another thread once it delivers messages, so
+ * the connection is only started after all the consumers of the batch exist,
+ * and later batches get a connection of their own.
+ *
+ * With shared subscriptions, each topic is consumed through a shared consumer
+ * instead, so that the instances of the application split its messages.
+ */
+public class TopicConsumers {
+
+    private static final Log logger = LogFactory.getLog(TopicConsumers.class);
+
+    private static class Batch {
+        private final Connection connection;
+        // Consumers still open, the connection is closed with the last one
+        private int numConsumers;
+
+        private Batch(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private static class Consumer {
+        private final Batch batch;
+        private final MessageConsumer consumer;
+
+        private Consumer(Batch batch, MessageConsumer consumer) {
+            this.batch = batch;
+            this.consumer = consumer;
+        }
+    }
+
+    private final ConnectionFactory connectionFactory;
+    private final DestinationResolver destinationResolver;
+    private final MessageListener listener;
+    private final SharedSubscriptions sharedSubscriptions;
+
+    private final Map<String, Consumer> consumers = new HashMap<>();
+
+    public TopicConsumers(ConnectionFactory connectionFactory, DestinationResolver destinationResolver,
+            MessageListener listener, SharedSubscriptions sharedSubscriptions) {
+        this.connectionFactory = connectionFactory;
+        this.destinationResolver = destinationResolver;
+        this.listener = listener;
+        this.sharedSubscriptions = sharedSubscriptions;
+    }
+
+    public synchronized boolean isSubscribed(String topic) {
+        return consumers.containsKey(topic);
+    }
+
+    public synchronized int getNumTopics() {
+        return consumers.size();
+    }
+
+    // Subscribes to the topics that have no error yet, and sets the error of those that fail
+    public synchronized void subscribe(List<String> topics, String[] errors) throws JMSException {
+        Connection connection = connectionFactory.createConnection();
+        Batch batch = new Batch(connection);
+        Session session;
+        try {
+            connection.setExceptionListener(e -> logger.error("A connection of topic consumers failed.", e));
+            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        } catch (JMSException e) {
+            connection.close();
+            throw e;
+        }
+
+        for (int i = 0; i < topics.size(); i++) {
+            String topic = topics.get(i);
+            if (errors[i] != null) {
+                continue;
+            }
+            if (consumers.containsKey(topic)) {
+                errors[i] = "Already subscribed";
+                continue;
+            }
+            try {
+                Destination destination = destinationResolver.resolveDestinationName(session, topic, true);
+                MessageConsumer consumer = sharedSubscriptions.isEnabled()
+                        ? session.createSharedConsumer((Topic) destination, sharedSubscriptions.getSubscriptionName(topic))
+                        : session.createConsumer(destination);
+                consumer.setMessageListener(listener);
+                consumers.put(topic, new Consumer(batch, consumer));
+                batch.numConsumers++;
+            } catch (JMSException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+
+        if (batch.numConsumers > 0) {
+            connection.start();
+        } else {
+            connection.close();
+        }
+    }
+
+    // Returns false when the topic was not subscribed here
+    public synchronized boolean unsubscribe(String topic) throws JMSException {
+        Consumer consumer = consumers.remove(topic);
+        if (consumer == null) {
+            return false;
+        }
+        try {
+            // Closing a consumer is allowed while its session is delivering
+            consumer.consumer.close();
+        } finally {
+            if (--consumer.batch.numConsumers == 0) {
+                consumer.batch.connection.close();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.springcloud.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.solacesystems.jcsmp.BytesMessage;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.TextMessage;
+import com.solacesystems.jcsmp.Topic;
+
+/**
+ * Provides the Topic and TextMessage or BytesMessage used to publish a message
+ * without allocating new ones on every request.
+ *
+ * Topics are kept in a bounded cache keyed by name, and every publishing
+ * thread reuses its own TextMessage and BytesMessage. Reusing a message is
+ * only safe for Direct messages, which the producer no longer references once
+ * send returns.
+ *
+ * Binary payloads are read from the request body straight into the array the
+ * BytesMessage carries. When the length of the body is not known up front,
+ * they are first read into a buffer the thread keeps for its next requests.
+ */
+public class PublishPipeline {
+
+    // Larger buffers are not kept for the next request of the thread
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private final int maxCachedTopics;
+    private final ConcurrentHashMap<String, Topic> topics;
+
+    private final ThreadLocal<TextMessage> textMessages = new ThreadLocal<TextMessage>() {
+        @Override
+        protected TextMessage initialValue() {
+            return JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
+        }
+    };
+
+    private final ThreadLocal<BytesMessage> bytesMessages = new ThreadLocal<BytesMessage>() {
+        @Override
+        protected BytesMessage initialValue() {
+            return JCSMPFactory.onlyInstance().createMessage(BytesMessage.class);
+        }
+    };
+
+    private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[INITIAL_BUFFER_SIZE];
+        }
+    };
+
+    public PublishPipeline(int maxCachedTopics) {
+        this.maxCachedTopics = Math.max(1, maxCachedTopics);
+        this.topics = new ConcurrentHashMap<>(Math.min(this.maxCachedTopics, 1024));
+    }
+
+    public Topic getTopic(String topicName) {
+        Topic topic = topics.get(topicName);
+        if (topic != null) {
+            return topic;
+        }
+
+        // Evict an arbitrary entry to make room, the cache only has to stay bounded
+        if (topics.size() >= maxCachedTopics) {
+            Iterator<String> cachedNames = topics.keySet().iterator();
+            if (cachedNames.hasNext()) {
+                cachedNames.next();
+                cachedNames.remove();
+            }
+        }
+
+        topic = JCSMPFactory.onlyInstance().createTopic(topicName);
+        Topic cachedTopic = topics.putIfAbsent(topicName, topic);
+        return cachedTopic != null ? cachedTopic : topic;
+    }
+
+    // The returned message belongs to the calling thread and is only valid until
+    // that thread calls getTextMessage again.
+    public TextMessage getTextMessage(String text) {
+        TextMessage msg = textMessages.get();
+        msg.reset();
+        msg.setText(text);
+        return msg;
+    }
+
+    // Reads the payload from the stream, length being -1 when unknown, and returns the message
+    // carrying it, or null when the payload is longer than maxLength. Same validity as above.
+    public BytesMessage getBytesMessage(InputStream payload, long length, int maxLength) throws IOException {
+        byte[] data = length >= 0 ? readFully(payload, length, maxLength) : readToEnd(payload, maxLength);
+        if (data == null) {
+            return null;
+        }
+        BytesMessage msg = bytesMessages.get();
+        msg.reset();
+        msg.setData(data);
+        return msg;
+    }
+
+    private static byte[] readFully(InputStream in, long length, int maxLength) throws IOException {
+        if (length > maxLength) {
+            return null;
+        }
+        byte[] data = new byte[(int) length];
+        int offset = 0;
+        while (offset < data.length) {
+            int read = in.read(data, offset, data.length - offset);
+            if (read < 0) {
+                throw new IOException("The request body ended after " + offset + " of " + length + " bytes");
+            }
+            offset += read;
+        }
+        return data;
+    }
+
+    private byte[] readToEnd(InputStream in, int maxLength) throws IOException {
+        byte[] buffer = buffers.get();
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) >= 0) {
+            length += read;
+            if (length > maxLength) {
+                return null;
+            }
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(2L * buffer.length, maxLength + 1L));
+                if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+                    buffers.set(buffer);
+                }
+            }
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    public int getNumCachedTopics() {
+        return topics.size();
+    }
+}
@@ -19,10 +19,18 @@
 
 package com.solace.samples.cloudfoundry.springcloud.controller;
 
+import com.solace.samples.cloudfoundry.common.LastValueCache;
+import com.solace.samples.cloudfoundry.common.LatencyStamp;
+import com.solace.samples.cloudfoundry.common.MessagePush;
+import com.solace.samples.cloudfoundry.common.MessageStats;
+import com.solace.samples.cloudfoundry.common.ReceivedMessageHistory;
+import com.solace.samples.cloudfoundry.common.SharedSubscriptions;
+import com.solace.samples.cloudfoundry.springcloud.model.LoadTestRequest;
 import com.solace.samples.cloudfoundry.springcloud.model.SimpleMessage;
 import com.solace.samples.cloudfoundry.springcloud.model.SimpleSubscription;
 import com.solace.services.core.model.SolaceServiceCredentials;
 import com.solace.spring.cloud.core.SolaceServiceCredentialsFactory;
+import com.solacesystems.jcsmp.BytesMessage;
 import com.solacesystems.jcsmp.BytesXMLMessage;
 import com.solacesystems.jcsmp.JCSMPChannelProperties;
 import com.solacesystems.jcsmp.JCSMPException;
@@ -30,35 +38,118 @@ import com.solacesystems.jcsmp.JCSMPFactory;
 import com.solacesystems.jcsmp.JCSMPProperties;
 import com.solacesystems.jcsmp.JCSMPSession;
 import com.solacesystems.jcsmp.JCSMPStreamingPublishEventHandler;
+import com.solacesystems.jcsmp.SDTException;
+import com.solacesystems.jcsmp.SDTMap;
 import com.solacesystems.jcsmp.TextMessage;
 import com.solacesystems.jcsmp.Topic;
+import com.solacesystems.jcsmp.XMLMessage;
 import com.solacesystems.jcsmp.XMLMessageConsumer;
 import com.solacesystems.jcsmp.XMLMessageListener;
 import com.solacesystems.jcsmp.XMLMessageProducer;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.json.JSONArray;
 import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.AntPathMatcher;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
 
 @RestController
 public class SolaceController {
 
     private static final Log logger = LogFactory.getLog(SolaceController.class);
 
-    private JCSMPSession session;
-    private XMLMessageProducer producer;
-    private TextMessage lastReceivedMessage;
+    // The most received messages returned by a single GET /messages
+    private static final int MAX_HISTORY_PAGE_SIZE = 1000;
+
+    // Set by the connector thread, before it reports the connection as ready
+    private volatile JCSMPSession session;
+    private volatile XMLMessageProducer producer;
+    private volatile ProducerPool producerPool;
+
+    @Autowired
+    private BackgroundConnector solaceConnector;
+
+    private ReceivedMessageHistory receivedMessageHistory;
+
+    // Number of received messages kept, and the space each of them may take
+    @Value("${SOLACE_MESSAGE_HISTORY_SIZE:4096}")
+    private int messageHistorySize;
+    @Value("${SOLACE_MESSAGE_HISTORY_ENTRY_MAX_BYTES:2048}")
+    private int messageHistoryEntryMaxBytes;
+
+    private LastValueCache lastValueCache;
+
+    // Bounds of the cache holding the last message received on each topic
+    @Value("${SOLACE_LAST_VALUE_CACHE_MAX_TOPICS:50000}")
+    private int lastValueCacheMaxTopics;
+    @Value("${SOLACE_LAST_VALUE_CACHE_MAX_BYTES:33554432}")
+    private long lastValueCacheMaxBytes;
+
+    private PublishPipeline publishPipeline;
+
+    // Upper bound of the number of Topics kept for reuse by the publish path
+    @Value("${SOLACE_TOPIC_CACHE_SIZE:10000}")
+    private int topicCacheSize;
+
+    // The largest body POST /message/{topic} accepts, the service rejects larger messages anyway
+    @Value("${SOLACE_MAX_BINARY_PAYLOAD_BYTES:31457280}")
+    private int maxBinaryPayloadBytes;
+
+    // Number of sessions publishing is spread over, each with its own producer and I/O thread
+    @Value("${SOLACE_PRODUCER_POOL_SIZE:1}")
+    private int producerPoolSize;
+
+    // "loopback" connects to an in-memory broker instead of the Solace PubSub+ service
+    private static final String LOOPBACK_SESSION_FACTORY = "loopback";
+    @Value("${SOLACE_SESSION_FACTORY:solace}")
+    private String sessionFactoryType;
+    @Value("${SOLACE_LOOPBACK_LATENCY_MICROS:0}")
+    private long loopbackLatencyMicros;
+    @Value("${SOLACE_LOOPBACK_ACK_LATENCY_MICROS:0}")
+    private long loopbackAckLatencyMicros;
+    @Value("${SOLACE_LOOPBACK_ACK_FAILURE_RATE:0}")
+    private double loopbackAckFailureRate;
+
+    private ReceiveStage<BytesXMLMessage> receiveStage;
+
+    // Only there on a modern JDK, where the receive workers run on virtual threads
+    @Autowired(required = false)
+    @Qualifier("receiveThreadFactory")
+    private ThreadFactory receiveThreadFactory;
+
+    // Ring buffer between the API dispatch thread and the workers processing received messages
+    @Value("${SOLACE_RECEIVE_BUFFER_SIZE:8192}")
+    private int receiveBufferSize;
+    @Value("${SOLACE_RECEIVE_WORKERS:1}")
+    private int receiveWorkers;
+    // One of BUSY_SPIN, YIELD or PARK
+    @Value("${SOLACE_RECEIVE_WAIT_STRATEGY:PARK}")
+    private String receiveWaitStrategy;
 
     // Optionally provided LDAP_CLIENTUSERNAME
     @Value("${ldap.clientUsername:}")
@@ -79,8 +170,48 @@ public class SolaceController {
     private int connectRetriesPerHost;
 
     // Stats
-    private final AtomicInteger numMessagesReceived = new AtomicInteger();
-    private final AtomicInteger numMessagesSent = new AtomicInteger();
+    private MessageStats messageStats;
+
+    // Topics are counted per prefix made of their first levels, up to a maximum number of prefixes
+    @Value("${SOLACE_STATS_TOPIC_PREFIX_LEVELS:1}")
+    private int statsTopicPrefixLevels;
+    @Value("${SOLACE_STATS_MAX_TOPIC_PREFIXES:100}")
+    private int statsMaxTopicPrefixes;
+
+    private LatencyStamp latencyStamp;
+
+    // Stamp sent messages so the receiver can measure their end-to-end latency. Off by default, the
+    // stamp is a map of properties allocated for every message sent.
+    @Value("${SOLACE_STAMP_LATENCY:false}")
+    private boolean stampLatency;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MessagePush messagePush;
+
+    private SharedSubscriptions sharedSubscriptions;
+
+    // Share the subscriptions between the instances of the application, each message goes to only one of them.
+    // The group defaults to the Cloud Foundry application name.
+    @Value("${SOLACE_SHARED_SUBSCRIPTIONS:false}")
+    private boolean sharedSubscriptionsEnabled;
+    @Value("${SOLACE_SHARED_SUBSCRIPTION_GROUP:${vcap.application.name:}}")
+    private String sharedSubscriptionGroup;
+    @Value("${CF_INSTANCE_INDEX:0}")
+    private String instanceIndex;
+
+    // Load tests started by POST /loadtest, the oldest ones are forgotten
+    private static final int MAX_LOAD_TESTS = 20;
+    // How long a client may keep watching a load test after its end
+    private static final long LOAD_TEST_STREAM_GRACE_MILLIS = 30000;
+    private final Map<String, LoadTest> loadTests = Collections.synchronizedMap(new LinkedHashMap<String, LoadTest>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LoadTest> eldest) {
+            return size() > MAX_LOAD_TESTS;
+        }
+    });
 
     private class SimplePublisherEventHandler implements JCSMPStreamingPublishEventHandler {
         @Override
@@ -99,15 +230,8 @@ public class SolaceController {
 
         @Override
         public void onReceive(BytesXMLMessage receivedMessage) {
-
-            numMessagesReceived.incrementAndGet();
-
-            if (receivedMessage instanceof TextMessage) {
-                lastReceivedMessage = (TextMessage) receivedMessage;
-                logger.info("Received message : " + lastReceivedMessage.getText());
-            } else {
-                logger.error("Received message that was not a TextMessage: " + receivedMessage.dump());
-            }
+            // Only hand the message over, it is processed by the receive workers
+            receiveStage.offer(receivedMessage);
         }
 
         @Override
@@ -116,18 +240,104 @@ public class SolaceController {
         }
     }
 
+    // Runs on a receive worker for every message handed over by the SimpleMessageListener
+    private void processReceivedMessage(BytesXMLMessage receivedMessage) {
+
+        messageStats.recordReceived(receivedMessage.getDestination().getName());
+        recordEndToEndLatency(receivedMessage);
+
+        String topic = receivedMessage.getDestination().getName();
+        byte[] payload;
+        if (receivedMessage instanceof TextMessage) {
+            String text = ((TextMessage) receivedMessage).getText();
+            payload = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            logger.info("Received message : " + text);
+        } else if (receivedMessage instanceof BytesMessage) {
+            // Kept as the bytes received, never decoded
+            byte[] data = ((BytesMessage) receivedMessage).getData();
+            payload = data != null ? data : new byte[0];
+            logger.info("Received binary message of " + payload.length + " bytes");
+        } else {
+            logger.error("Received message that was neither a TextMessage nor a BytesMessage: " + receivedMessage.dump());
+            return;
+        }
+        sharedSubscriptions.recordReceived();
+
+        long timestamp = System.currentTimeMillis();
+        long sequence = receivedMessageHistory.add(topic, payload, timestamp);
+        lastValueCache.put(topic, payload, timestamp);
+        messagePush.publish(sequence, topic, payload, timestamp);
+    }
+
+    private void stampLatency(XMLMessage msg) {
+        if (!stampLatency) {
+            return;
+        }
+        SDTMap properties = JCSMPFactory.onlyInstance().createMap();
+        try {
+            properties.putString(LatencyStamp.SENDER_ID_PROPERTY, latencyStamp.getSenderId());
+            properties.putLong(LatencyStamp.SEND_NANOS_PROPERTY, System.nanoTime());
+            properties.putLong(LatencyStamp.SEND_TIME_MICROS_PROPERTY, LatencyStamp.currentTimeMicros());
+        } catch (SDTException e) {
+            logger.error("Could not stamp the message with its send time.", e);
+            return;
+        }
+        msg.setProperties(properties);
+    }
+
+    private void recordEndToEndLatency(BytesXMLMessage receivedMessage) {
+        SDTMap properties = receivedMessage.getProperties();
+        if (properties == null || !properties.containsKey(LatencyStamp.SENDER_ID_PROPERTY)) {
+            return;
+        }
+        try {
+            latencyStamp.record(properties.getString(LatencyStamp.SENDER_ID_PROPERTY),
+                    properties.getLong(LatencyStamp.SEND_NANOS_PROPERTY),
+                    properties.getLong(LatencyStamp.SEND_TIME_MICROS_PROPERTY));
+        } catch (SDTException e) {
+            logger.error("Could not read the send time of the received message.", e);
+        }
+    }
+
     @PostConstruct
     public void init() {
 
         // Connect to Solace
         logger.info("************* Init Called ************");
 
+        receivedMessageHistory = new ReceivedMessageHistory(messageHistorySize, messageHistoryEntryMaxBytes);
+        lastValueCache = new LastValueCache(lastValueCacheMaxTopics, lastValueCacheMaxBytes);
+        messageStats = new MessageStats(statsTopicPrefixLevels, statsMaxTopicPrefixes);
+        messageStats.bindTo(meterRegistry);
+        latencyStamp = new LatencyStamp(messageStats);
+        sharedSubscriptions = new SharedSubscriptions(sharedSubscriptionsEnabled, sharedSubscriptionGroup,
+                instanceIndex);
+        sharedSubscriptions.bindTo(meterRegistry);
+        if (sharedSubscriptions.isEnabled()) {
+            logger.info("Sharing the subscriptions in group " + sharedSubscriptions.getGroup() + " as instance "
+                    + sharedSubscriptions.getInstanceIndex());
+        }
+
+        publishPipeline = new PublishPipeline(topicCacheSize);
+        receiveStage = new ReceiveStage<>("solace-receive", receiveBufferSize, receiveWorkers,
+                ReceiveStage.WaitStrategy.valueOf(receiveWaitStrategy.toUpperCase()), this::processReceivedMessage,
+                receiveThreadFactory);
+
+        if (LOOPBACK_SESSION_FACTORY.equalsIgnoreCase(sessionFactoryType)) {
+            logger.info("Connecting to an in-memory loopback broker instead of Solace PubSub+");
+            SessionFactory loopbackSessionFactory = new LoopbackSessionFactory(loopbackLatencyMicros,
+                    loopbackAckLatencyMicros, loopbackAckFailureRate);
+            solaceConnector.start(() -> connect(loopbackSessionFactory));
+            return;
+        }
+
         SolaceServiceCredentials solaceServiceCredentials;
         List<SolaceServiceCredentials> solaceServiceCredentialsList = SolaceServiceCredentialsFactory.getAllFromCloudFoundry();
 
         if (solaceServiceCredentialsList.size() == 0) {
             logger.error("Did not find instance of 'solace-pubsub' service");
             logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Did not find instance of 'solace-pubsub' service");
             return;
         } else {
             solaceServiceCredentials = solaceServiceCredentialsList.get(0);
@@ -154,6 +364,7 @@ public class SolaceController {
         } else {
             logger.error("Did not find credentials to use, Neither Solace PubSub+ provided credentials (clientUsername, clientPassword), nor LDAP provided credentials (LDAP_CLIENTUSERNAME , LDAP_CLIENTPASSWORD) ");
             logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Did not find credentials to use");
             return;
         }
 
@@ -169,25 +380,43 @@ public class SolaceController {
             channelProperties.setConnectRetriesPerHost(connectRetriesPerHost);
         }
 
-        try {
-            session = JCSMPFactory.onlyInstance().createSession(properties);
-            session.connect();
-        } catch (Exception e) {
-            logger.error("Error connecting and setting up session.", e);
-            logger.info("************* Aborting Solace initialization!! ************");
-            return;
-        }
+        // Startup goes on while the connector thread connects, see BackgroundConnector
+        SessionFactory solaceSessionFactory = new SolaceSessionFactory(properties);
+        solaceConnector.start(() -> connect(solaceSessionFactory));
+    }
 
+    // Connects the session the controller consumes with and the producer stripes. Runs on the
+    // connector thread, which tries again when this throws, so nothing opened is left behind.
+    private void connect(SessionFactory sessionFactory) throws Exception {
+        JCSMPSession newSession = sessionFactory.createSession();
+        ProducerPool newProducerPool = null;
         try {
-            final XMLMessageConsumer cons = session.getMessageConsumer(new SimpleMessageListener());
+            newSession.connect();
+
+            final XMLMessageConsumer cons = newSession.getMessageConsumer(new SimpleMessageListener());
             cons.start();
 
-            producer = session.getMessageProducer(new SimplePublisherEventHandler());
+            final SimplePublisherEventHandler publisherEventHandler = new SimplePublisherEventHandler();
+            XMLMessageProducer newProducer = newSession.getMessageProducer(publisherEventHandler);
 
-            logger.info("************* Solace initialized correctly!! ************");
+            // The session above is the first stripe, add the others the same way
+            newProducerPool = new ProducerPool(newSession, newProducer);
+            for (int i = 1; i < producerPoolSize; i++) {
+                newProducerPool.addStripe(sessionFactory::createSession, publisherEventHandler);
+            }
+            logger.info("Publishing over " + newProducerPool.getSize() + " session(s)");
+
+            session = newSession;
+            producer = newProducer;
+            producerPool = newProducerPool;
         } catch (Exception e) {
-            logger.error("Error creating the consumer and producer.", e);
+            if (newProducerPool != null) {
+                newProducerPool.close();
+            }
+            newSession.closeSession();
+            throw e;
         }
+        logger.info("************* Solace initialized correctly!! ************");
     }
 
     @RequestMapping(value = "/message", method = RequestMethod.POST)
@@ -199,14 +428,17 @@ public class SolaceController {
                     HttpStatus.BAD_REQUEST);
         }
 
-        logger.info("Sending message on topic: " + message.getTopic() + " with body: " + message.getBody());
+        if (logger.isDebugEnabled()) {
+            logger.debug("Sending message on topic: " + message.getTopic() + " with body: " + message.getBody());
+        }
 
-        final Topic topic = JCSMPFactory.onlyInstance().createTopic(message.getTopic());
-        TextMessage msg = JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
-        msg.setText(message.getBody());
+        final Topic topic = publishPipeline.getTopic(message.getTopic());
+        TextMessage msg = publishPipeline.getTextMessage(message.getBody());
+        stampLatency(msg);
         try {
-            producer.send(msg, topic);
-            numMessagesSent.incrementAndGet();
+            long publishStartNanos = System.nanoTime();
+            producerPool.send(msg, topic);
+            messageStats.recordSent(message.getTopic(), System.nanoTime() - publishStartNanos);
 
         } catch (JCSMPException e) {
             logger.error("Service Creation failed.", e);
@@ -215,17 +447,63 @@ public class SolaceController {
         return new ResponseEntity<>("{}", HttpStatus.OK);
     }
 
+    // Publishes the request body as is in a BytesMessage, without going through a String
+    @RequestMapping(value = "/message/**", method = RequestMethod.POST, consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<String> sendBinaryMessage(HttpServletRequest request) {
+
+        if (session == null || session.isClosed()) {
+            logger.error("Session was null or closed, Could not send message");
+            return new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST);
+        }
+
+        String topicName = getTopicFromPath(request);
+        if (topicName.isEmpty()) {
+            return new ResponseEntity<>("{'description': 'The topic is missing from the path'}", HttpStatus.BAD_REQUEST);
+        }
+
+        BytesMessage msg;
+        try {
+            msg = publishPipeline.getBytesMessage(request.getInputStream(), request.getContentLengthLong(),
+                    maxBinaryPayloadBytes);
+        } catch (IOException e) {
+            logger.error("Reading the message body failed.", e);
+            return new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST);
+        }
+        if (msg == null) {
+            return new ResponseEntity<>("{'description': 'The message body is larger than " + maxBinaryPayloadBytes
+                    + " bytes'}", HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Sending binary message on topic: " + topicName);
+        }
+
+        stampLatency(msg);
+        try {
+            long publishStartNanos = System.nanoTime();
+            producerPool.send(msg, publishPipeline.getTopic(topicName));
+            messageStats.recordSent(topicName, System.nanoTime() - publishStartNanos);
+
+        } catch (JCSMPException e) {
+            logger.error("Message post failed.", e);
+            return new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>("{}", HttpStatus.OK);
+    }
+
     @RequestMapping(value = "/message", method = RequestMethod.GET)
     public ResponseEntity<SimpleMessage> getLastMessageReceived() {
 
+        ReceivedMessageHistory.Entry lastReceivedMessage = receivedMessageHistory.getLatest();
         if (lastReceivedMessage != null) {
             logger.info("Sending the lastReceivedMessage");
 
             // Return the last received message if it exists.
             SimpleMessage receivedMessage = new SimpleMessage();
 
-            receivedMessage.setTopic(lastReceivedMessage.getDestination().getName());
-            receivedMessage.setBody(lastReceivedMessage.getText());
+            receivedMessage.setTopic(lastReceivedMessage.getTopic());
+            receivedMessage.setBody(new String(lastReceivedMessage.getPayload(), StandardCharsets.UTF_8));
             return new ResponseEntity<>(receivedMessage, HttpStatus.OK);
         } else {
             logger.info("Sorry did not find a lastReceivedMessage");
@@ -234,12 +512,101 @@ public class SolaceController {
 
     }
 
+    // Pushes every message received on a topic starting with topicPrefix as a server-sent event
+    @RequestMapping(value = "/message/stream", method = RequestMethod.GET)
+    public ResponseEntity<SseEmitter> streamReceivedMessages(
+            @RequestParam(value = "topicPrefix", defaultValue = "") String topicPrefix,
+            @RequestParam(value = "overflow", defaultValue = "") String overflow) {
+
+        MessagePush.OverflowPolicy overflowPolicy;
+        try {
+            overflowPolicy = messagePush.getOverflowPolicy(overflow);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        // Kept open until the client goes away
+        SseEmitter emitter = new SseEmitter(0L);
+        MessagePush.Client client = messagePush.subscribe(topicPrefix, overflowPolicy, new MessagePush.Sink() {
+            @Override
+            public void send(String messageJson) throws IOException {
+                emitter.send(SseEmitter.event().name("message").data(messageJson, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        });
+        if (client == null) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        emitter.onCompletion(client::close);
+        emitter.onTimeout(client::close);
+        emitter.onError(e -> client.close());
+        return new ResponseEntity<>(emitter, HttpStatus.OK);
+    }
+
+    // Topics contain '/', so the topic is everything in the path after /message/
+    @RequestMapping(value = "/message/**", method = RequestMethod.GET)
+    public ResponseEntity<SimpleMessage> getLastMessageReceivedOnTopic(HttpServletRequest request) {
+
+        LastValueCache.Value lastValue = lastValueCache.get(getTopicFromPath(request));
+        if (lastValue == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        SimpleMessage receivedMessage = new SimpleMessage();
+        receivedMessage.setTopic(lastValue.getTopic());
+        receivedMessage.setBody(new String(lastValue.getPayload(), StandardCharsets.UTF_8));
+        return new ResponseEntity<>(receivedMessage, HttpStatus.OK);
+    }
+
+    // The topic is the rest of the path, it may contain slashes
+    private String getTopicFromPath(HttpServletRequest request) {
+        return new AntPathMatcher().extractPathWithinPattern(
+                (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE),
+                (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE));
+    }
+
+    @RequestMapping(value = "/messages", method = RequestMethod.GET)
+    public ResponseEntity<String> getReceivedMessages(@RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "topicPrefix", defaultValue = "") String topicPrefix,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+
+        ReceivedMessageHistory.Page page = receivedMessageHistory.query(since, topicPrefix,
+                Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE)));
+
+        JSONArray messagesJson = new JSONArray();
+        for (ReceivedMessageHistory.Entry entry : page.getEntries()) {
+            JSONObject messageJson = new JSONObject();
+            messageJson.put("sequence", entry.getSequence());
+            messageJson.put("timestamp", entry.getTimestamp());
+            messageJson.put("topic", entry.getTopic());
+            messageJson.put("body", new String(entry.getPayload(), StandardCharsets.UTF_8));
+            messageJson.put("truncated", entry.isTruncated());
+            messagesJson.put(messageJson);
+        }
+
+        // Pass nextSince back as since to get the following page
+        JSONObject pageJson = new JSONObject();
+        pageJson.put("messages", messagesJson);
+        pageJson.put("nextSince", page.getNextSince());
+        pageJson.put("oldestSequence", page.getOldestSequence());
+        return new ResponseEntity<>(pageJson.toString(), HttpStatus.OK);
+    }
+
+    // Shared between the instances of the application when they share their subscriptions
+    private Topic createSubscriptionTopic(String subscription) {
+        return JCSMPFactory.onlyInstance().createTopic(sharedSubscriptions.getBrokerSubscription(subscription));
+    }
+
     @RequestMapping(value = "/subscription", method = RequestMethod.POST)
     public ResponseEntity<String> addSubscription(@RequestBody SimpleSubscription subscription) {
         String subscriptionTopic = subscription.getSubscription();
         logger.info("Adding a subscription to topic: " + subscriptionTopic);
 
-        final Topic topic = JCSMPFactory.onlyInstance().createTopic(subscriptionTopic);
+        final Topic topic = createSubscriptionTopic(subscriptionTopic);
         try {
             boolean waitForConfirm = true;
             session.addSubscription(topic, waitForConfirm);
@@ -259,7 +626,7 @@ public class SolaceController {
 
     @RequestMapping(value = "/subscription/{subscriptionName}", method = RequestMethod.DELETE)
     public ResponseEntity<String> deleteSubscription(@PathVariable("subscriptionName") String subscriptionTopic) {
-        final Topic topic = JCSMPFactory.onlyInstance().createTopic(subscriptionTopic);
+        final Topic topic = createSubscriptionTopic(subscriptionTopic);
         logger.info("Deleting a subscription to topic: " + subscriptionTopic);
 
         try {
@@ -273,22 +640,254 @@ public class SolaceController {
         return new ResponseEntity<>("{}", HttpStatus.OK);
     }
 
+    @RequestMapping(value = "/subscriptions", method = RequestMethod.POST)
+    public ResponseEntity<String> addSubscriptions(@RequestBody List<SimpleSubscription> subscriptions) {
+        return updateSubscriptions(subscriptions, true);
+    }
+
+    @RequestMapping(value = "/subscriptions", method = RequestMethod.DELETE)
+    public ResponseEntity<String> deleteSubscriptions(@RequestBody List<SimpleSubscription> subscriptions) {
+        return updateSubscriptions(subscriptions, false);
+    }
+
+    // Adds or removes many subscriptions for the cost of a single round trip to the broker. Only the
+    // last one waits for a confirm, and as the broker handles them in order that confirms the batch.
+    // The results hold what the API rejected, the broker reports its own failures of unconfirmed
+    // subscriptions to the session event handler.
+    private ResponseEntity<String> updateSubscriptions(List<SimpleSubscription> subscriptions, boolean add) {
+
+        if (session == null || session.isClosed()) {
+            logger.error("Session was null or closed, Could not update subscriptions");
+            return new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST);
+        }
+
+        List<String> topics = getSubscriptionTopics(subscriptions);
+        logger.info((add ? "Adding " : "Deleting ") + topics.size() + " subscriptions");
+
+        String[] errors = new String[topics.size()];
+        for (int i = 0; i < topics.size(); i++) {
+            if (topics.get(i) == null || topics.get(i).isEmpty()) {
+                errors[i] = "subscription is missing";
+            }
+        }
+
+        Topic[] subscriptionTopics = new Topic[topics.size()];
+        int last = -1;
+        for (int i = 0; i < topics.size(); i++) {
+            if (errors[i] != null) {
+                continue;
+            }
+            try {
+                subscriptionTopics[i] = createSubscriptionTopic(topics.get(i));
+                last = i;
+            } catch (RuntimeException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+
+        for (int i = 0; i <= last; i++) {
+            if (subscriptionTopics[i] == null) {
+                continue;
+            }
+            boolean waitForConfirm = i == last;
+            try {
+                if (add) {
+                    session.addSubscription(subscriptionTopics[i], waitForConfirm);
+                } else {
+                    session.removeSubscription(subscriptionTopics[i], waitForConfirm);
+                }
+            } catch (JCSMPException e) {
+                logger.error((add ? "Adding" : "Deleting") + " a subscription to topic " + topics.get(i) + " failed.", e);
+                errors[i] = e.getMessage();
+            }
+        }
+
+        boolean confirmed = last >= 0 && errors[last] == null;
+        logger.info("Finished " + (add ? "Adding " : "Deleting ") + topics.size() + " subscriptions, confirmed: " + confirmed);
+        return subscriptionsResult(topics, errors, confirmed);
+    }
+
+    private List<String> getSubscriptionTopics(List<SimpleSubscription> subscriptions) {
+        List<String> topics = new ArrayList<>(subscriptions.size());
+        for (SimpleSubscription subscription : subscriptions) {
+            topics.add(subscription.getSubscription());
+        }
+        return topics;
+    }
+
+    // Reported like a batch of messages, the results tell which subscriptions failed
+    private ResponseEntity<String> subscriptionsResult(List<String> topics, String[] errors, boolean confirmed) {
+        JSONArray resultsJson = new JSONArray();
+        int numSucceeded = 0;
+        for (int i = 0; i < topics.size(); i++) {
+            JSONObject resultJson = new JSONObject();
+            resultJson.put("index", i);
+            resultJson.put("subscription", topics.get(i));
+            resultJson.put("succeeded", errors[i] == null);
+            if (errors[i] != null) {
+                resultJson.put("description", errors[i]);
+            } else {
+                numSucceeded++;
+            }
+            resultsJson.put(resultJson);
+        }
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("numSucceeded", numSucceeded);
+        responseJson.put("numFailed", topics.size() - numSucceeded);
+        // Whether the broker confirmed the batch, the subscriptions before a failed confirm may or may not be in place
+        responseJson.put("confirmed", confirmed);
+        responseJson.put("results", resultsJson);
+
+        HttpStatus status = HttpStatus.OK;
+        if (numSucceeded == 0 && !topics.isEmpty()) {
+            status = HttpStatus.BAD_REQUEST;
+        } else if (numSucceeded < topics.size()) {
+            status = HttpStatus.MULTI_STATUS;
+        }
+        return new ResponseEntity<>(responseJson.toString(), status);
+    }
+
+    @RequestMapping(value = "/loadtest", method = RequestMethod.POST)
+    public ResponseEntity<String> startLoadTest(@RequestBody LoadTestRequest request) {
+
+        String error = LoadTest.validate(request);
+        if (error != null) {
+            return new ResponseEntity<>("{'description': '" + error + "'}", HttpStatus.BAD_REQUEST);
+        }
+
+        if (session == null || session.isClosed()) {
+            logger.error("Session was null or closed, Could not start the load test");
+            return new ResponseEntity<>("{'description': 'Somehow the session is not connected, please see logs'}",
+                    HttpStatus.BAD_REQUEST);
+        }
+
+        LoadTest loadTest = new LoadTest(request, this::publishLoadTestMessage);
+        loadTests.put(loadTest.getId(), loadTest);
+        logger.info("Starting load test " + loadTest.getId() + " at " + request.getRate() + " msgs/s for "
+                + request.getDurationInSeconds() + "s over " + request.getConcurrency() + " thread(s)");
+        loadTest.start();
+        return new ResponseEntity<>(loadTest.getStatus().toString(), HttpStatus.ACCEPTED);
+    }
+
+    // Streams the progress of the load test as server-sent events, the last one holds the result
+    @RequestMapping(value = "/loadtest/{id}", method = RequestMethod.GET)
+    public ResponseEntity<SseEmitter> getLoadTest(@PathVariable("id") String id) {
+
+        LoadTest loadTest = loadTests.get(id);
+        if (loadTest == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        SseEmitter emitter = new SseEmitter(loadTest.getRemainingMillis() + LOAD_TEST_STREAM_GRACE_MILLIS);
+        loadTest.stream(emitter);
+        return new ResponseEntity<>(emitter, HttpStatus.OK);
+    }
+
+    // Publishes like sendMessage does, on behalf of a load test thread
+    private void publishLoadTestMessage(String topicName, String body) throws JCSMPException {
+        final Topic topic = publishPipeline.getTopic(topicName);
+        TextMessage msg = publishPipeline.getTextMessage(body);
+        stampLatency(msg);
+        long publishStartNanos = System.nanoTime();
+        producerPool.send(msg, topic);
+        messageStats.recordSent(topicName, System.nanoTime() - publishStartNanos);
+    }
+
     @RequestMapping(value = "/status", method = RequestMethod.GET)
     public ResponseEntity<String> getStatus() {
 
         logger.info("Received request for getStatus");
 
         JSONObject statusJson = new JSONObject();
-        statusJson.put("numMsgsSent", numMessagesSent.get());
-        statusJson.put("numMsgsReceived", numMessagesReceived.get());
+        // Taken from a single generation of the statistics, never half reset
+        MessageStats.Snapshot stats = messageStats.snapshot();
+        statusJson.put("numMsgsSent", stats.getNumSent());
+        statusJson.put("numMsgsReceived", stats.getNumReceived());
+        statusJson.put("publishLatencyMicros", latencyStatus(stats.getPublishLatency()));
+        JSONObject endToEndLatencyJson = new JSONObject();
+        endToEndLatencyJson.put("loopback", latencyStatus(stats.getLoopbackLatency()));
+        endToEndLatencyJson.put("crossInstance", latencyStatus(stats.getCrossInstanceLatency()));
+        endToEndLatencyJson.put("numClockSkewed", stats.getNumClockSkewed());
+        statusJson.put("endToEndLatencyMicros", endToEndLatencyJson);
+        statusJson.put("topicPrefixes", topicPrefixesStatus(stats));
+        JSONObject lastValueCacheJson = new JSONObject();
+        lastValueCacheJson.put("numTopics", lastValueCache.getNumTopics());
+        lastValueCacheJson.put("numBytes", lastValueCache.getNumBytes());
+        lastValueCacheJson.put("numEvicted", lastValueCache.getNumEvicted());
+        statusJson.put("lastValueCache", lastValueCacheJson);
+
+        JSONObject pushJson = new JSONObject();
+        pushJson.put("numClients", messagePush.getNumClients());
+        pushJson.put("numPushed", messagePush.getNumPushed());
+        pushJson.put("numDropped", messagePush.getNumDropped());
+        statusJson.put("push", pushJson);
+        if (producerPool != null) {
+            statusJson.put("producerPool", producerPoolStatus());
+        }
+        if (receiveStage != null) {
+            JSONObject receiveStageJson = new JSONObject();
+            receiveStageJson.put("capacity", receiveStage.getCapacity());
+            receiveStageJson.put("occupancy", receiveStage.getOccupancy());
+            receiveStageJson.put("numMsgsDropped", receiveStage.getNumDropped());
+            statusJson.put("receiveStage", receiveStageJson);
+        }
+        if (sharedSubscriptions.isEnabled()) {
+            // This instance's part of the messages of the group, since it started
+            JSONObject sharedSubscriptionsJson = new JSONObject();
+            sharedSubscriptionsJson.put("group", sharedSubscriptions.getGroup());
+            sharedSubscriptionsJson.put("instanceIndex", sharedSubscriptions.getInstanceIndex());
+            sharedSubscriptionsJson.put("numMsgsReceived", sharedSubscriptions.getNumReceived());
+            statusJson.put("sharedSubscriptions", sharedSubscriptionsJson);
+        }
         return new ResponseEntity<>(statusJson.toString(), HttpStatus.OK);
     }
 
+    private JSONArray producerPoolStatus() {
+        JSONArray stripesJson = new JSONArray();
+        for (int i = 0; i < producerPool.getSize(); i++) {
+            JSONObject stripeJson = new JSONObject();
+            stripeJson.put("stripe", i);
+            stripeJson.put("closed", producerPool.isClosed(i));
+            stripeJson.put("numInFlightSends", producerPool.getNumInFlightSends(i));
+            stripeJson.put("numMsgsSent", producerPool.getNumSent(i));
+            stripeJson.put("sendRatePerSecond", producerPool.getSendRate(i));
+            stripesJson.put(stripeJson);
+        }
+        return stripesJson;
+    }
+
+    private JSONObject latencyStatus(MessageStats.LatencySnapshot latency) {
+        JSONObject latencyJson = new JSONObject();
+        latencyJson.put("count", latency.getCount());
+        latencyJson.put("p50", latency.getNanos(50) / 1000.0);
+        latencyJson.put("p99", latency.getNanos(99) / 1000.0);
+        latencyJson.put("p99.9", latency.getNanos(99.9) / 1000.0);
+        latencyJson.put("max", latency.getMaxNanos() / 1000.0);
+        return latencyJson;
+    }
+
+    private JSONArray topicPrefixesStatus(MessageStats.Snapshot stats) {
+        JSONArray topicPrefixesJson = new JSONArray();
+        stats.getTopicPrefixes().forEach((topicPrefix, counts) -> {
+            JSONObject topicPrefixJson = new JSONObject();
+            topicPrefixJson.put("topicPrefix", topicPrefix);
+            topicPrefixJson.put("numMsgsSent", counts[0]);
+            topicPrefixJson.put("numMsgsReceived", counts[1]);
+            topicPrefixesJson.put(topicPrefixJson);
+        });
+        return topicPrefixesJson;
+    }
+
     @RequestMapping(value = "/status", method = RequestMethod.DELETE)
     public ResponseEntity<String> resetStats() {
-        numMessagesReceived.set(0);
-        numMessagesSent.set(0);
-        lastReceivedMessage = null;
+        messageStats.reset();
+        if (receiveStage != null) {
+            receiveStage.resetStats();
+        }
+        receivedMessageHistory.clear();
+        lastValueCache.clear();
         return new ResponseEntity<>("{}", HttpStatus.OK);
     }
 
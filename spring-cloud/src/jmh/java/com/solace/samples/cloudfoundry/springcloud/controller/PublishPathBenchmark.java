@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.springcloud.controller;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.solace.samples.cloudfoundry.springcloud.model.SimpleMessage;
+import com.solacesystems.jcsmp.JCSMPFactory;
+import com.solacesystems.jcsmp.TextMessage;
+import com.solacesystems.jcsmp.Topic;
+
+/**
+ * The steps of POST /message up to the send: binding the JSON body, creating
+ * the Topic and creating and filling the TextMessage.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublishPathBenchmark {
+
+    private static final String MESSAGE_JSON = "{\"topic\": \"benchmark/topic\", \"body\": \"TEST_MESSAGE\"}";
+
+    // Built like the one Spring MVC binds request bodies with
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private SimpleMessage message;
+
+    @Setup
+    public void setup() throws IOException {
+        message = objectMapper.readValue(MESSAGE_JSON, SimpleMessage.class);
+    }
+
+    @Benchmark
+    public SimpleMessage readSimpleMessage() throws IOException {
+        return objectMapper.readValue(MESSAGE_JSON, SimpleMessage.class);
+    }
+
+    @Benchmark
+    public String writeSimpleMessage() throws IOException {
+        return objectMapper.writeValueAsString(message);
+    }
+
+    @Benchmark
+    public Topic createTopic() {
+        return JCSMPFactory.onlyInstance().createTopic(message.getTopic());
+    }
+
+    @Benchmark
+    public TextMessage createTextMessage() {
+        TextMessage msg = JCSMPFactory.onlyInstance().createMessage(TextMessage.class);
+        msg.setText(message.getBody());
+        return msg;
+    }
+}
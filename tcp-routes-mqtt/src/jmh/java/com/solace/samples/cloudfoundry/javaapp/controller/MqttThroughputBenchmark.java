@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import com.solace.samples.cloudfoundry.javaapp.Application;
+import com.solace.samples.cloudfoundry.javaapp.model.SimpleMessage;
+import com.solace.samples.cloudfoundry.javaapp.model.SimpleSubscription;
+
+import io.moquette.BrokerConstants;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+
+/**
+ * Throughput and latency of POST /message against an embedded MQTT broker on
+ * localhost, for every QoS, payload size and client persistence, to measure
+ * what the Paho client configuration costs before deploying it.
+ *
+ * Every trial starts the broker and the whole application, with a SERVICE_KEY
+ * pointing at the broker. The application subscribes to the topic it publishes
+ * to, so the end-to-end latency of the messages it gets back is printed from
+ * GET /status at the end of the trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MqttThroughputBenchmark {
+
+    private static final String TOPIC = "benchmark/topic";
+    private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    @Param({ "0", "1", "2" })
+    private int qos;
+
+    @Param({ "100", "4096", "65536" })
+    private int payloadSize;
+
+    // SOLACE_MQTT_PERSISTENCE, where the client keeps its QoS 1 and 2 messages in flight
+    @Param({ "memory", "file" })
+    private String persistence;
+
+    private Server broker;
+    private ConfigurableApplicationContext application;
+    private RestTemplate restTemplate;
+    private String baseUrl;
+    private SimpleMessage message;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        int brokerPort = findFreePort();
+        Properties brokerProperties = new Properties();
+        brokerProperties.setProperty(BrokerConstants.HOST_PROPERTY_NAME, "localhost");
+        brokerProperties.setProperty(BrokerConstants.PORT_PROPERTY_NAME, Integer.toString(brokerPort));
+        brokerProperties.setProperty(BrokerConstants.WEB_SOCKET_PORT_PROPERTY_NAME, BrokerConstants.DISABLED_PORT_BIND);
+        brokerProperties.setProperty(BrokerConstants.ALLOW_ANONYMOUS_PROPERTY_NAME, "true");
+        // Keep the broker in memory, and let it take the largest payloads
+        brokerProperties.setProperty(BrokerConstants.PERSISTENT_STORE_PROPERTY_NAME, "");
+        brokerProperties.setProperty(BrokerConstants.NETTY_MAX_BYTES_PROPERTY_NAME, Integer.toString(1024 * 1024));
+        broker = new Server();
+        broker.startServer(new MemoryConfig(brokerProperties));
+
+        JSONObject serviceKey = new JSONObject();
+        serviceKey.put("publicMqttUris", new JSONArray().put("tcp://localhost:" + brokerPort));
+        serviceKey.put("clientUsername", "benchmark");
+        serviceKey.put("clientPassword", "benchmark");
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("SERVICE_KEY", serviceKey.toString());
+        properties.put("SOLACE_MQTT_QOS", qos);
+        properties.put("SOLACE_MQTT_PERSISTENCE", persistence);
+        properties.put("SOLACE_STAMP_LATENCY", true);
+        // The controller logs every message it receives
+        properties.put("logging.level.com.solace.samples", "WARN");
+        application = new SpringApplicationBuilder(Application.class).properties(properties).run();
+
+        restTemplate = new RestTemplate();
+        baseUrl = "http://localhost:" + ((WebServerApplicationContext) application).getWebServer().getPort();
+        try {
+            // The client connects in the background, POST calls are answered 503 until it has
+            awaitStarted(baseUrl + "/actuator/health/readiness");
+        } catch (Exception e) {
+            // JMH skips the tear down of a trial that failed to set up
+            application.close();
+            broker.stopServer();
+            throw e;
+        }
+
+        SimpleSubscription subscription = new SimpleSubscription();
+        subscription.setSubscription(TOPIC);
+        restTemplate.postForEntity(baseUrl + "/subscription", subscription, String.class);
+
+        char[] body = new char[payloadSize];
+        Arrays.fill(body, 'x');
+        message = new SimpleMessage();
+        message.setTopic(TOPIC);
+        message.setBody(new String(body));
+    }
+
+    @TearDown
+    public void tearDown() {
+        String status = restTemplate.getForObject(baseUrl + "/status", String.class);
+        System.out.println("End-to-end latency: "
+                + new JSONObject(status).getJSONObject("endToEndLatencyMicros").getJSONObject("loopback"));
+        application.close();
+        broker.stopServer();
+    }
+
+    @Benchmark
+    public String sendMessage() {
+        return restTemplate.postForObject(baseUrl + "/message", message, String.class);
+    }
+
+    private static void awaitStarted(String readinessUrl) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(readinessUrl).openConnection();
+                try {
+                    if (connection.getResponseCode() == 200) {
+                        return;
+                    }
+                } finally {
+                    connection.disconnect();
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(250);
+        }
+        throw new IllegalStateException("The application did not start within " + STARTUP_TIMEOUT_MILLIS + " ms");
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solace.samples.cloudfoundry.common.LastValueCache;
+import com.solace.samples.cloudfoundry.common.LatencyStamp;
+import com.solace.samples.cloudfoundry.common.MessageStats;
+import com.solace.samples.cloudfoundry.common.ReceivedMessageHistory;
+
+/**
+ * The work the MqttCallback's messageArrived does for every message, logging
+ * aside. The components are sized with the controller defaults.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceivePathBenchmark {
+
+    private static final String TOPIC = "benchmark/topic";
+
+    @Param({ "64", "1024" })
+    private int payloadSize;
+
+    // Whether the sender appended the latency trailer
+    @Param({ "false", "true" })
+    private boolean stamped;
+
+    private MessageStats messageStats;
+    private LatencyStamp latencyStamp;
+    private ReceivedMessageHistory receivedMessageHistory;
+    private LastValueCache lastValueCache;
+    private MqttMessage receivedMessage;
+
+    @Setup
+    public void setup() {
+        messageStats = new MessageStats(1, 100);
+        latencyStamp = new LatencyStamp(messageStats);
+        receivedMessageHistory = new ReceivedMessageHistory(4096, 2048);
+        lastValueCache = new LastValueCache(50000, 33554432);
+
+        byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        receivedMessage = new MqttMessage(stamped ? latencyStamp.appendTrailer(payload) : payload);
+    }
+
+    @Benchmark
+    public long messageArrived() {
+        messageStats.recordReceived(TOPIC);
+        byte[] payload = receivedMessage.getPayload();
+        int payloadLength = latencyStamp.recordTrailer(payload);
+        if (payloadLength < payload.length) {
+            payload = Arrays.copyOf(payload, payloadLength);
+        }
+        long timestamp = System.currentTimeMillis();
+        long sequence = receivedMessageHistory.add(TOPIC, payload, timestamp);
+        lastValueCache.put(TOPIC, payload, timestamp);
+        return sequence;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.solace.samples.cloudfoundry.javaapp.controller;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * Connects to the messaging service on a background thread, so the application
+ * starts listening right away instead of blocking its startup on the broker,
+ * and reports through a health indicator whether it is connected yet.
+ *
+ * A failed attempt is tried again after a wait that doubles up to a maximum,
+ * the retries configured on the API itself still happen within each attempt.
+ * Until an attempt succeeds the health indicator reports OUT_OF_SERVICE and
+ * the endpoints that need the connection answer 503 with a Retry-After header.
+ * A configuration that can never connect is reported DOWN instead.
+ */
+public class BackgroundConnector implements HealthIndicator {
+
+    private static final Log logger = LogFactory.getLog(BackgroundConnector.class);
+
+    // Sets up the connection, and closes whatever it opened before throwing
+    public interface Connection {
+        void connect() throws Exception;
+    }
+
+    public enum State {
+        NOT_STARTED, CONNECTING, CONNECTED, FAILED
+    }
+
+    private final long retryWaitMillis;
+    private final long maxRetryWaitMillis;
+
+    // Written by the connector thread only, after the connection it reports on is in place
+    private volatile State state = State.NOT_STARTED;
+    private volatile int numAttempts;
+    private volatile String lastError;
+    private volatile long startNanos;
+    private volatile long connectedNanos;
+    private volatile long nextAttemptNanos;
+
+    private Thread thread;
+
+    public BackgroundConnector(long retryWaitMillis, long maxRetryWaitMillis) {
+        this.retryWaitMillis = Math.max(1, retryWaitMillis);
+        this.maxRetryWaitMillis = Math.max(this.retryWaitMillis, maxRetryWaitMillis);
+    }
+
+    public synchronized void start(Connection connection) {
+        if (state != State.NOT_STARTED) {
+            throw new IllegalStateException("The connector was already started");
+        }
+        startNanos = System.nanoTime();
+        state = State.CONNECTING;
+        thread = new Thread(() -> run(connection), "solace-connector");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // For a configuration that will never connect, no attempt is made
+    public synchronized void fail(String reason) {
+        lastError = reason;
+        state = State.FAILED;
+    }
+
+    private void run(Connection connection) {
+        long waitMillis = retryWaitMillis;
+        while (!Thread.currentThread().isInterrupted()) {
+            numAttempts++;
+            try {
+                connection.connect();
+                connectedNanos = System.nanoTime();
+                state = State.CONNECTED;
+                logger.info("Connected after " + numAttempts + " attempt(s) in "
+                        + TimeUnit.NANOSECONDS.toMillis(connectedNanos - startNanos) + " ms");
+                return;
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                lastError = String.valueOf(e.getMessage());
+                logger.error("Connection attempt " + numAttempts + " failed, trying again in " + waitMillis + " ms", e);
+            }
+            nextAttemptNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+            try {
+                Thread.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            waitMillis = Math.min(waitMillis * 2, maxRetryWaitMillis);
+        }
+    }
+
+    public boolean isConnected() {
+        return state == State.CONNECTED;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // Seconds a client should wait before trying again, until the next attempt or at least one
+    public long getRetryAfterSeconds() {
+        long remainingNanos = nextAttemptNanos - System.nanoTime();
+        return Math.max(1, (remainingNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Override
+    public Health health() {
+        State current = state;
+        Health.Builder builder;
+        switch (current) {
+        case CONNECTED:
+            builder = Health.up().withDetail("connectMillis",
+                    TimeUnit.NANOSECONDS.toMillis(connectedNanos - startNanos));
+            break;
+        case FAILED:
+            builder = Health.down();
+            break;
+        default:
+            builder = Health.outOfService();
+        }
+        builder.withDetail("state", current.name()).withDetail("numAttempts", numAttempts);
+        if (lastError != null) {
+            builder.withDetail("lastError", lastError);
+        }
+        return builder.build();
+    }
+
+    // Called by Spring when the context closes, gives up on an attempt still waiting
+    public synchronized void close() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
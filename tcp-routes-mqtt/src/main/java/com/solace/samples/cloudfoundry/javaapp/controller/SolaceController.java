@@ -19,42 +19,137 @@
 
 package com.solace.samples.cloudfoundry.javaapp.controller;
 
+import com.solace.samples.cloudfoundry.common.LastValueCache;
+import com.solace.samples.cloudfoundry.common.LatencyStamp;
+import com.solace.samples.cloudfoundry.common.MessagePush;
+import com.solace.samples.cloudfoundry.common.MessageStats;
+import com.solace.samples.cloudfoundry.common.ReceivedMessageHistory;
+import com.solace.samples.cloudfoundry.common.SharedSubscriptions;
+import com.solace.samples.cloudfoundry.javaapp.model.LoadTestRequest;
 import com.solace.samples.cloudfoundry.javaapp.model.SimpleMessage;
 import com.solace.samples.cloudfoundry.javaapp.model.SimpleSubscription;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.AntPathMatcher;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.annotation.PostConstruct;
-
+import javax.servlet.http.HttpServletRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
 
 @RestController
 public class SolaceController {
 
     private static final Log logger = LogFactory.getLog(SolaceController.class);
 
-    private SimpleMessage lastReceivedMessage;
+    // The most received messages returned by a single GET /messages
+    private static final int MAX_HISTORY_PAGE_SIZE = 1000;
+
+    private ReceivedMessageHistory receivedMessageHistory;
+
+    // Number of received messages kept, and the space each of them may take
+    @Value("${SOLACE_MESSAGE_HISTORY_SIZE:4096}")
+    private int messageHistorySize;
+    @Value("${SOLACE_MESSAGE_HISTORY_ENTRY_MAX_BYTES:2048}")
+    private int messageHistoryEntryMaxBytes;
+
+    private LastValueCache lastValueCache;
+
+    // Bounds of the cache holding the last message received on each topic
+    @Value("${SOLACE_LAST_VALUE_CACHE_MAX_TOPICS:50000}")
+    private int lastValueCacheMaxTopics;
+    @Value("${SOLACE_LAST_VALUE_CACHE_MAX_BYTES:33554432}")
+    private long lastValueCacheMaxBytes;
+
     private SimpleMqttCallback simpleMqttCallback = new SimpleMqttCallback();
 
     // Stats
-    private final AtomicInteger numMessagesReceived = new AtomicInteger();
-    private final AtomicInteger numMessagesSent = new AtomicInteger();
+    private MessageStats messageStats;
+
+    // Topics are counted per prefix made of their first levels, up to a maximum number of prefixes
+    @Value("${SOLACE_STATS_TOPIC_PREFIX_LEVELS:1}")
+    private int statsTopicPrefixLevels;
+    @Value("${SOLACE_STATS_MAX_TOPIC_PREFIXES:100}")
+    private int statsMaxTopicPrefixes;
+
+    private LatencyStamp latencyStamp;
+
+    // MQTT has no message properties, the stamp is a trailer that other subscribers would see in the payload
+    @Value("${SOLACE_STAMP_LATENCY:false}")
+    private boolean stampLatency;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MessagePush messagePush;
+
+    // Load tests started by POST /loadtest, the oldest ones are forgotten
+    private static final int MAX_LOAD_TESTS = 20;
+    // How long a client may keep watching a load test after its end
+    private static final long LOAD_TEST_STREAM_GRACE_MILLIS = 30000;
+    private final Map<String, LoadTest> loadTests = Collections.synchronizedMap(new LinkedHashMap<String, LoadTest>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, LoadTest> eldest) {
+            return size() > MAX_LOAD_TESTS;
+        }
+    });
 
     private MqttClient mqttClient;
 
+    @Autowired
+    private BackgroundConnector solaceConnector;
+
+    // The credentials of the service, from the environment or any other property source
+    @Value("${SERVICE_KEY:}")
+    private String serviceKey;
+
+    // Quality of service of the messages published and of the subscriptions added
+    @Value("${SOLACE_MQTT_QOS:0}")
+    private int mqttQos;
+
+    // Where the client keeps its QoS 1 and 2 messages in flight, "file" (the Paho default) or "memory"
+    @Value("${SOLACE_MQTT_PERSISTENCE:file}")
+    private String mqttPersistence;
+
+    private SharedSubscriptions sharedSubscriptions;
+
+    // Share the subscriptions between the instances of the application, each message goes to only one of them.
+    // The group defaults to the Cloud Foundry application name.
+    @Value("${SOLACE_SHARED_SUBSCRIPTIONS:false}")
+    private boolean sharedSubscriptionsEnabled;
+    @Value("${SOLACE_SHARED_SUBSCRIPTION_GROUP:${vcap.application.name:}}")
+    private String sharedSubscriptionGroup;
+    @Value("${CF_INSTANCE_INDEX:0}")
+    private String instanceIndex;
+
     class SimpleMqttCallback implements MqttCallback {
 
 		@Override
@@ -65,13 +160,19 @@ public class SolaceController {
 		@Override
 		public void messageArrived(String topic, MqttMessage message) throws Exception {
 			logger.info("Received message : " + message);
-			numMessagesReceived.incrementAndGet();
-			synchronized (simpleMqttCallback) {
-				lastReceivedMessage = new SimpleMessage();
-				lastReceivedMessage.setTopic(topic);
-				lastReceivedMessage.setBody(new String(message.getPayload()));
+			messageStats.recordReceived(topic);
+			sharedSubscriptions.recordReceived();
+			// Keep the payload without the latency trailer, if there is one
+			byte[] payload = message.getPayload();
+			int payloadLength = latencyStamp.recordTrailer(payload);
+			if (payloadLength < payload.length) {
+				payload = Arrays.copyOf(payload, payloadLength);
 			}
-			logger.info("Received message kept: " + lastReceivedMessage);
+			long timestamp = System.currentTimeMillis();
+			long sequence = receivedMessageHistory.add(topic, payload, timestamp);
+			lastValueCache.put(topic, payload, timestamp);
+			messagePush.publish(sequence, topic, payload, timestamp);
+			logger.info("Received message kept with sequence: " + sequence);
 
 		}
 
@@ -87,15 +188,27 @@ public class SolaceController {
         // Connect to Solace
         logger.info("************* Init Called ************");
 
-        // Look for Service Keys Data..
+        receivedMessageHistory = new ReceivedMessageHistory(messageHistorySize, messageHistoryEntryMaxBytes);
+        lastValueCache = new LastValueCache(lastValueCacheMaxTopics, lastValueCacheMaxBytes);
+        messageStats = new MessageStats(statsTopicPrefixLevels, statsMaxTopicPrefixes);
+        messageStats.bindTo(meterRegistry);
+        latencyStamp = new LatencyStamp(messageStats);
+        sharedSubscriptions = new SharedSubscriptions(sharedSubscriptionsEnabled, sharedSubscriptionGroup,
+                instanceIndex);
+        sharedSubscriptions.bindTo(meterRegistry);
+        if (sharedSubscriptions.isEnabled()) {
+            logger.info("Sharing the subscriptions in group " + sharedSubscriptions.getGroup() + " as instance "
+                    + sharedSubscriptions.getInstanceIndex());
+        }
 
-        String serviceKey = System.getenv("SERVICE_KEY");
+        // Look for Service Keys Data..
 
         logger.info(serviceKey);
 
         if (serviceKey == null || serviceKey.equals("") || serviceKey.equals("{}")) {
             logger.error("The SERVICE_KEY variable wasn't set in the environment. Aborting connection.");
             logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("The SERVICE_KEY variable wasn't set in the environment");
             return;
         }
 
@@ -105,6 +218,7 @@ public class SolaceController {
         } catch(JSONException e) {
         	logger.error("Unable to read the SERVICE_KEY content as a JSON structure. Aborting connection.",e);
             logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Unable to read the SERVICE_KEY content as a JSON structure");
             return;
         }
 
@@ -113,18 +227,21 @@ public class SolaceController {
         if( ! solaceCredentials.has("publicMqttUris") ) {
         	logger.error("Unable to find publicMqttUris in the SERVICE_KEY. Aborting connection.");
             logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Unable to find publicMqttUris in the SERVICE_KEY");
             return;
         }
 
         if( ! solaceCredentials.has("clientUsername") ) {
         	logger.error("Unable to find clientUsername in the SERVICE_KEY. Aborting connection.");
             logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Unable to find clientUsername in the SERVICE_KEY");
             return;
         }
 
         if( ! solaceCredentials.has("clientPassword") ) {
         	logger.error("Unable to find clientPassword in the SERVICE_KEY. Aborting connection.");
             logger.info("************* Aborting Solace initialization!! ************");
+            solaceConnector.fail("Unable to find clientPassword in the SERVICE_KEY");
             return;
         }
 
@@ -136,6 +253,7 @@ public class SolaceController {
             if( hostsArray == null || hostsArray.length() == 0  ) {
     	    	logger.error("Did not find any entries in the  publicMqttUris array from the SERVICE_KEY. Aborting connection.");
     	        logger.info("************* Aborting Solace initialization!! ************");
+    	        solaceConnector.fail("Did not find any entries in the  publicMqttUris array from the SERVICE_KEY");
     	        return;
             }
             mqttServerURIs = new String[hostsArray.length()];
@@ -145,16 +263,20 @@ public class SolaceController {
         } catch(JSONException e) {
 	    	logger.error("Unable to read publicMqttUris array from the SERVICE_KEY. Aborting connection.",e);
 	        logger.info("************* Aborting Solace initialization!! ************");
+	        solaceConnector.fail("Unable to read publicMqttUris array from the SERVICE_KEY");
 	        return;
         }
 
 
         // Create a client using the first server URL, and random client Id.
 		try {
-			mqttClient = new MqttClient(mqttServerURIs[0], UUID.randomUUID().toString());
+			MqttClientPersistence persistence = "memory".equalsIgnoreCase(mqttPersistence)
+					? new MemoryPersistence() : new MqttDefaultFilePersistence();
+			mqttClient = new MqttClient(mqttServerURIs[0], UUID.randomUUID().toString(), persistence);
 		} catch (MqttException e) {
 			logger.error("Unable to create an MqttClient. Aborting connection.",e);
 	        logger.info("************* Aborting Solace initialization!! ************");
+	        solaceConnector.fail("Unable to create an MqttClient");
 	        return;
 	    }
 
@@ -166,13 +288,8 @@ public class SolaceController {
 
 		mqttClient.setCallback(simpleMqttCallback);
 
-		try {
-			mqttClient.connect(connOpts);
-		} catch (MqttException e) {
-			logger.error("Unable to connecting using the MqttClient and its connection options. Aborting connection.",e);
-	        logger.info("************* Aborting Solace initialization!! ************");
-	        return;
-		}
+		// Startup goes on while the connector thread connects, see BackgroundConnector
+		solaceConnector.start(() -> mqttClient.connect(connOpts));
 
     }
 
@@ -191,10 +308,12 @@ public class SolaceController {
 				"Sending message on topic: " + message.getTopic() + " with body: " + message.getBody());
 
 		try {
-			MqttMessage mqttMessage = new MqttMessage(message.getBody().getBytes());
-			mqttMessage.setQos(0);
+			byte[] payload = message.getBody().getBytes();
+			MqttMessage mqttMessage = new MqttMessage(stampLatency ? latencyStamp.appendTrailer(payload) : payload);
+			mqttMessage.setQos(mqttQos);
+			long publishStartNanos = System.nanoTime();
 			mqttClient.publish(message.getTopic(), mqttMessage);
-			numMessagesSent.incrementAndGet();
+			messageStats.recordSent(message.getTopic(), System.nanoTime() - publishStartNanos);
 		} catch (MqttException e) {
 			logger.error("sendMessage failed.", e);
             return new ResponseEntity<>("{'description': '" + e.getMessage() + "'}", HttpStatus.BAD_REQUEST);
@@ -205,10 +324,14 @@ public class SolaceController {
     @RequestMapping(value = "/message", method = RequestMethod.GET)
     public ResponseEntity<SimpleMessage> getLastMessageReceived() {
 
+        ReceivedMessageHistory.Entry lastReceivedMessage = receivedMessageHistory.getLatest();
         if (lastReceivedMessage != null) {
             logger.info("Sending the lastReceivedMessage");
             // Return the last received message if it exists.
-            return new ResponseEntity<>(lastReceivedMessage, HttpStatus.OK);
+            SimpleMessage receivedMessage = new SimpleMessage();
+            receivedMessage.setTopic(lastReceivedMessage.getTopic());
+            receivedMessage.setBody(new String(lastReceivedMessage.getPayload(), StandardCharsets.UTF_8));
+            return new ResponseEntity<>(receivedMessage, HttpStatus.OK);
         } else {
             logger.info("Sorry did not find a lastReceivedMessage");
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
@@ -216,6 +339,87 @@ public class SolaceController {
 
     }
 
+    // Pushes every message received on a topic starting with topicPrefix as a server-sent event
+    @RequestMapping(value = "/message/stream", method = RequestMethod.GET)
+    public ResponseEntity<SseEmitter> streamReceivedMessages(
+            @RequestParam(value = "topicPrefix", defaultValue = "") String topicPrefix,
+            @RequestParam(value = "overflow", defaultValue = "") String overflow) {
+
+        MessagePush.OverflowPolicy overflowPolicy;
+        try {
+            overflowPolicy = messagePush.getOverflowPolicy(overflow);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        // Kept open until the client goes away
+        SseEmitter emitter = new SseEmitter(0L);
+        MessagePush.Client client = messagePush.subscribe(topicPrefix, overflowPolicy, new MessagePush.Sink() {
+            @Override
+            public void send(String messageJson) throws IOException {
+                emitter.send(SseEmitter.event().name("message").data(messageJson, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        });
+        if (client == null) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+        emitter.onCompletion(client::close);
+        emitter.onTimeout(client::close);
+        emitter.onError(e -> client.close());
+        return new ResponseEntity<>(emitter, HttpStatus.OK);
+    }
+
+    // Topics contain '/', so the topic is everything in the path after /message/
+    @RequestMapping(value = "/message/**", method = RequestMethod.GET)
+    public ResponseEntity<SimpleMessage> getLastMessageReceivedOnTopic(HttpServletRequest request) {
+
+        String topic = new AntPathMatcher().extractPathWithinPattern(
+                (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE),
+                (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE));
+
+        LastValueCache.Value lastValue = lastValueCache.get(topic);
+        if (lastValue == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        SimpleMessage receivedMessage = new SimpleMessage();
+        receivedMessage.setTopic(lastValue.getTopic());
+        receivedMessage.setBody(new String(lastValue.getPayload(), StandardCharsets.UTF_8));
+        return new ResponseEntity<>(receivedMessage, HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/messages", method = RequestMethod.GET)
+    public ResponseEntity<String> getReceivedMessages(@RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "topicPrefix", defaultValue = "") String topicPrefix,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+
+        ReceivedMessageHistory.Page page = receivedMessageHistory.query(since, topicPrefix,
+                Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE)));
+
+        JSONArray messagesJson = new JSONArray();
+        for (ReceivedMessageHistory.Entry entry : page.getEntries()) {
+            JSONObject messageJson = new JSONObject();
+            messageJson.put("sequence", entry.getSequence());
+            messageJson.put("timestamp", entry.getTimestamp());
+            messageJson.put("topic", entry.getTopic());
+            messageJson.put("body", new String(entry.getPayload(), StandardCharsets.UTF_8));
+            messageJson.put("truncated", entry.isTruncated());
+            messagesJson.put(messageJson);
+        }
+
+        // Pass nextSince back as since to get the following page
+        JSONObject pageJson = new JSONObject();
+        pageJson.put("messages", messagesJson);
+        pageJson.put("nextSince", page.getNextSince());
+        pageJson.put("oldestSequence", page.getOldestSequence());
+        return new ResponseEntity<>(pageJson.toString(), HttpStatus.OK);
+    }
+
     @RequestMapping(value = "/subscription", method = RequestMethod.POST)
     public ResponseEntity<String> addSubscription(@RequestBody SimpleSubscription subscription) {
         String subscriptionTopic = subscription.getSubscription();
@@ -223,7 +427,7 @@ public class SolaceController {
 
         try {
         	if( mqttClient != null )
-        		mqttClient.subscribe(subscriptionTopic);
+        		mqttClient.subscribe(sharedSubscriptions.getMqttSubscription(subscriptionTopic), mqttQos);
         	else
         		return new ResponseEntity<>("{'description': 'Unable to perform operation, the MqttClient was not initialized'}", HttpStatus.INTERNAL_SERVER_ERROR);
             logger.info("Finishing Adding a subscription to topic: " + subscriptionTopic);
@@ -246,7 +450,7 @@ public class SolaceController {
         logger.info("Deleting a subscription to topic: " + subscriptionTopic);
 		try {
             if( mqttClient != null )
-        		mqttClient.unsubscribe(subscriptionTopic);
+        		mqttClient.unsubscribe(sharedSubscriptions.getMqttSubscription(subscriptionTopic));
         	else
         		return new ResponseEntity<>("{'description': 'Unable to perform operation, the MqttClient was not initialized'}", HttpStatus.INTERNAL_SERVER_ERROR);
             logger.info("Finished Deleting a subscription to topic: " + subscriptionTopic);
@@ -258,22 +462,118 @@ public class SolaceController {
         return new ResponseEntity<>("{}", HttpStatus.OK);
     }
 
+    @RequestMapping(value = "/loadtest", method = RequestMethod.POST)
+    public ResponseEntity<String> startLoadTest(@RequestBody LoadTestRequest request) {
+
+        String error = LoadTest.validate(request);
+        if (error != null) {
+            return new ResponseEntity<>("{'description': '" + error + "'}", HttpStatus.BAD_REQUEST);
+        }
+
+        if (mqttClient == null || !mqttClient.isConnected()) {
+            logger.error("mqttClient was not connected, Could not start the load test");
+            return new ResponseEntity<>("{'description': 'Unable to perform operation, the MqttClient was not connected!'}",
+                    HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+
+        LoadTest loadTest = new LoadTest(request, this::publishLoadTestMessage);
+        loadTests.put(loadTest.getId(), loadTest);
+        logger.info("Starting load test " + loadTest.getId() + " at " + request.getRate() + " msgs/s for "
+                + request.getDurationInSeconds() + "s over " + request.getConcurrency() + " thread(s)");
+        loadTest.start();
+        return new ResponseEntity<>(loadTest.getStatus().toString(), HttpStatus.ACCEPTED);
+    }
+
+    // Streams the progress of the load test as server-sent events, the last one holds the result
+    @RequestMapping(value = "/loadtest/{id}", method = RequestMethod.GET)
+    public ResponseEntity<SseEmitter> getLoadTest(@PathVariable("id") String id) {
+
+        LoadTest loadTest = loadTests.get(id);
+        if (loadTest == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+
+        SseEmitter emitter = new SseEmitter(loadTest.getRemainingMillis() + LOAD_TEST_STREAM_GRACE_MILLIS);
+        loadTest.stream(emitter);
+        return new ResponseEntity<>(emitter, HttpStatus.OK);
+    }
+
+    // Publishes like sendMessage does, on behalf of a load test thread
+    private void publishLoadTestMessage(String topicName, String body) throws MqttException {
+        byte[] payload = body.getBytes();
+        MqttMessage mqttMessage = new MqttMessage(stampLatency ? latencyStamp.appendTrailer(payload) : payload);
+        mqttMessage.setQos(mqttQos);
+        long publishStartNanos = System.nanoTime();
+        mqttClient.publish(topicName, mqttMessage);
+        messageStats.recordSent(topicName, System.nanoTime() - publishStartNanos);
+    }
+
     @RequestMapping(value = "/status", method = RequestMethod.GET)
     public ResponseEntity<String> getStatus() {
 
         logger.info("Received request for getStatus");
 
         JSONObject statusJson = new JSONObject();
-        statusJson.put("numMsgsSent", numMessagesSent.get());
-        statusJson.put("numMsgsReceived", numMessagesReceived.get());
+        // Taken from a single generation of the statistics, never half reset
+        MessageStats.Snapshot stats = messageStats.snapshot();
+        statusJson.put("numMsgsSent", stats.getNumSent());
+        statusJson.put("numMsgsReceived", stats.getNumReceived());
+        statusJson.put("publishLatencyMicros", latencyStatus(stats.getPublishLatency()));
+        JSONObject endToEndLatencyJson = new JSONObject();
+        endToEndLatencyJson.put("loopback", latencyStatus(stats.getLoopbackLatency()));
+        endToEndLatencyJson.put("crossInstance", latencyStatus(stats.getCrossInstanceLatency()));
+        endToEndLatencyJson.put("numClockSkewed", stats.getNumClockSkewed());
+        statusJson.put("endToEndLatencyMicros", endToEndLatencyJson);
+        statusJson.put("topicPrefixes", topicPrefixesStatus(stats));
+        JSONObject lastValueCacheJson = new JSONObject();
+        lastValueCacheJson.put("numTopics", lastValueCache.getNumTopics());
+        lastValueCacheJson.put("numBytes", lastValueCache.getNumBytes());
+        lastValueCacheJson.put("numEvicted", lastValueCache.getNumEvicted());
+        statusJson.put("lastValueCache", lastValueCacheJson);
+
+        JSONObject pushJson = new JSONObject();
+        pushJson.put("numClients", messagePush.getNumClients());
+        pushJson.put("numPushed", messagePush.getNumPushed());
+        pushJson.put("numDropped", messagePush.getNumDropped());
+        statusJson.put("push", pushJson);
+        if (sharedSubscriptions.isEnabled()) {
+            // This instance's part of the messages of the group, since it started
+            JSONObject sharedSubscriptionsJson = new JSONObject();
+            sharedSubscriptionsJson.put("group", sharedSubscriptions.getGroup());
+            sharedSubscriptionsJson.put("instanceIndex", sharedSubscriptions.getInstanceIndex());
+            sharedSubscriptionsJson.put("numMsgsReceived", sharedSubscriptions.getNumReceived());
+            statusJson.put("sharedSubscriptions", sharedSubscriptionsJson);
+        }
         return new ResponseEntity<>(statusJson.toString(), HttpStatus.OK);
     }
 
+    private JSONObject latencyStatus(MessageStats.LatencySnapshot latency) {
+        JSONObject latencyJson = new JSONObject();
+        latencyJson.put("count", latency.getCount());
+        latencyJson.put("p50", latency.getNanos(50) / 1000.0);
+        latencyJson.put("p99", latency.getNanos(99) / 1000.0);
+        latencyJson.put("p99.9", latency.getNanos(99.9) / 1000.0);
+        latencyJson.put("max", latency.getMaxNanos() / 1000.0);
+        return latencyJson;
+    }
+
+    private JSONArray topicPrefixesStatus(MessageStats.Snapshot stats) {
+        JSONArray topicPrefixesJson = new JSONArray();
+        stats.getTopicPrefixes().forEach((topicPrefix, counts) -> {
+            JSONObject topicPrefixJson = new JSONObject();
+            topicPrefixJson.put("topicPrefix", topicPrefix);
+            topicPrefixJson.put("numMsgsSent", counts[0]);
+            topicPrefixJson.put("numMsgsReceived", counts[1]);
+            topicPrefixesJson.put(topicPrefixJson);
+        });
+        return topicPrefixesJson;
+    }
+
     @RequestMapping(value = "/status", method = RequestMethod.DELETE)
     public ResponseEntity<String> resetStats() {
-        numMessagesReceived.set(0);
-        numMessagesSent.set(0);
-        lastReceivedMessage = null;
+        messageStats.reset();
+        receivedMessageHistory.clear();
+        lastValueCache.clear();
         return new ResponseEntity<>("{}", HttpStatus.OK);
     }
 